@@ -1,7 +1,7 @@
 package com.innerfunction.json;
 
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -9,19 +9,26 @@ import java.util.Iterator;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import ns.foundation.NSArray;
 import ns.foundation.NSKeyValueCodingAdditions;
 import ns.foundation.NSKeyValueObserving;
 import ns.foundation.NSObserver;
 import ns.foundation.NSSet;
+import ns.foundation._NSFoundationCollection.NullHandling;
 
 @SuppressWarnings("rawtypes")
 public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware, NSKeyValueObserving.KeyValueObservingProxyCacheAware {
     
     private static final long serialVersionUID = 3957988303675231981L;
 
-    private Object nskvProxyCacheKey = new Object();
+    /**
+     * The key of the array's KVO proxy; created when first needed, which is when an observer is
+     * first added. Until then the array has no proxy, and changes don't need to be notified.
+     */
+    private volatile Object nskvProxyCacheKey;
 
     /**
      * Constructs an empty JSONArray.
@@ -42,7 +49,23 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
     }
     
     public Object getNSKVProxyCacheKey() {
-        return nskvProxyCacheKey;
+        Object key = nskvProxyCacheKey;
+        if( key == null ) {
+            synchronized( this ) {
+                key = nskvProxyCacheKey;
+                if( key == null ) {
+                    key = nskvProxyCacheKey = new Object();
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * @return true if observers may have been added to the array.
+     */
+    private boolean isObservable() {
+        return nskvProxyCacheKey != null;
     }
 
     /**
@@ -90,6 +113,22 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
         return toJSONString(this);
     }
 
+    /**
+     * Convert the array to JSON text, encoded as UTF-8.
+     * @see JSONValue#toJSONBytes(Object)
+     */
+    public byte[] toJSONBytes(){
+        return JSONValue.toJSONBytes(this);
+    }
+
+    /**
+     * Write the array as JSON text to a stream, encoded as UTF-8.
+     * @see JSONValue#writeJSONBytes(Object, OutputStream)
+     */
+    public void writeJSONBytes(OutputStream out) throws IOException{
+        JSONValue.writeJSONBytes(this, out);
+    }
+
     /**
      * Returns a string representation of this array. This is equivalent to
      * calling {@link JSONArray#toJSONString()}.
@@ -101,6 +140,9 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
     @SuppressWarnings("unchecked")
     @Override
     public boolean add(Object item) {
+        if( !isObservable() ) {
+            return super.add( item );
+        }
         String key = Integer.toString( size() );
         willChangeValueForKey( key );
         boolean result = super.add( item );
@@ -156,7 +198,7 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
     public Object remove(int idx) {
         String key = Integer.toString( idx );
         willChangeValueForKey( key );
-        Object result = remove( idx );
+        Object result = super.remove( idx );
         didChangeValueForKey( key );
         return result;
     }
@@ -275,6 +317,89 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
         return value instanceof Number ? (Number)value : null;
     }
     
+    /**
+     * Get a number element as a long.
+     * @throws ClassCastException if the element isn't a number.
+     * @throws NullPointerException if the element is null.
+     */
+    public long getLong(int idx) {
+        return ((Number)get( idx )).longValue();
+    }
+
+    /**
+     * Get a number element as a double.
+     * @see #getLong(int)
+     */
+    public double getDouble(int idx) {
+        return ((Number)get( idx )).doubleValue();
+    }
+
+    /**
+     * Copy the array's elements to an array of longs. The elements are stored boxed, as in any
+     * JSONArray; to read a large array of numbers without boxing them, parse it with a
+     * {@link com.innerfunction.json.parser.PrimitiveContentHandler}.
+     * @throws ClassCastException if an element isn't a number.
+     * @throws NullPointerException if an element is null.
+     */
+    public long[] toLongArray() {
+        long[] array = new long[size()];
+        for( int i = 0; i < array.length; i++ ) {
+            array[i] = ((Number)get( i )).longValue();
+        }
+        return array;
+    }
+
+    /**
+     * Copy the array's elements to an array of doubles.
+     * @see #toLongArray()
+     */
+    public double[] toDoubleArray() {
+        double[] array = new double[size()];
+        for( int i = 0; i < array.length; i++ ) {
+            array[i] = ((Number)get( i )).doubleValue();
+        }
+        return array;
+    }
+
+    /**
+     * Copy the values of a key in each of the array's objects to an array of longs; e.g. to
+     * scan one field of an array of records.
+     * @throws ClassCastException if an element isn't an object, or a value isn't a number.
+     * @throws NullPointerException if a value is null, or an object doesn't have the key.
+     */
+    public long[] toLongArray(String key) {
+        long[] array = new long[size()];
+        for( int i = 0; i < array.length; i++ ) {
+            array[i] = ((Number)((Map)get( i )).get( key )).longValue();
+        }
+        return array;
+    }
+
+    /**
+     * Copy the values of a key in each of the array's objects to an array of doubles.
+     * @see #toLongArray(String)
+     */
+    public double[] toDoubleArray(String key) {
+        double[] array = new double[size()];
+        for( int i = 0; i < array.length; i++ ) {
+            array[i] = ((Number)((Map)get( i )).get( key )).doubleValue();
+        }
+        return array;
+    }
+
+    /**
+     * Copy the values of a key in each of the array's objects to an array of strings. Values
+     * which aren't strings are copied as null.
+     * @throws ClassCastException if an element isn't an object.
+     */
+    public String[] toStringArray(String key) {
+        String[] array = new String[size()];
+        for( int i = 0; i < array.length; i++ ) {
+            array[i] = JSONValue.stringValue( ((Map)get( i )).get( key ) );
+        }
+        return array;
+    }
+    
     @Override
     public Number resolveNumber(String path) {
         Object value = valueForKeyPath( path );
@@ -284,18 +409,18 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
     @Override
     public String getString(String name) {
         Object value = get( name );
-        return value instanceof String ? (String)value : null;
+        return JSONValue.stringValue( value );
     }
 
     public String getString(int idx) {
         Object value = get( idx );
-        return value instanceof String ? (String)value : null;
+        return JSONValue.stringValue( value );
     }
     
     @Override
     public String resolveString(String path) {
         Object value = valueForKeyPath( path );
-        return value instanceof String ? (String)value : null;
+        return JSONValue.stringValue( value );
     }
     
     @Override
@@ -337,8 +462,16 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
         NSKeyValueCodingAdditions.DefaultImplementation.takeValueForKeyPath( this, value, keyPath );
     }
 
+    /**
+     * Get the value for a key path. A key path which starts with an NSArray operator, such as
+     * @sum.price or @count, is computed by the operator over the array's elements, skipping any
+     * null elements.
+     */
     @Override
     public Object valueForKeyPath(String keyPath) {
+        if( keyPath != null && keyPath.startsWith("@") ) {
+            return valueForOperatorKeyPath( keyPath );
+        }
         Object flattenedKeyPresent = get( keyPath );
         if( flattenedKeyPresent != null ) {
             return flattenedKeyPresent;
@@ -346,6 +479,21 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
         return NSKeyValueCodingAdditions.DefaultImplementation.valueForKeyPath( this, keyPath );
     }
 
+    /**
+     * @return The value of an operator key path, or null if there is no operator with its name.
+     */
+    @SuppressWarnings("unchecked")
+    private Object valueForOperatorKeyPath(String keyPath) {
+        int idx = keyPath.indexOf('.');
+        String operatorName = idx < 0 ? keyPath.substring( 1 ) : keyPath.substring( 1, idx );
+        String operatorPath = idx < 0 ? "" : keyPath.substring( idx + 1 );
+        NSArray.Operator operator = NSArray.operatorForKey( operatorName );
+        if( operator == null ) {
+            return null;
+        }
+        return operator.compute( NSArray.asNSArray( this, NullHandling.CheckAndSkip ), operatorPath );
+    }
+
     @Override
     public Object valueForKey(String key) {
         Object value = get( key );
@@ -388,12 +536,16 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
     
     @Override
     public void didChangeValuesAtIndexForKey(EnumSet<Changes> change, NSSet<Integer> indexes, String key) {
-        NSKeyValueObserving.DefaultImplementation.didChangeValuesAtIndexForKey( this, change, indexes, key );
+        if( isObservable() ) {
+            NSKeyValueObserving.DefaultImplementation.didChangeValuesAtIndexForKey( this, change, indexes, key );
+        }
     }
     
     @Override
     public void didChangeValueForKey(String key) {
-        NSKeyValueObserving.DefaultImplementation.didChangeValueForKey( this, key );
+        if( isObservable() ) {
+            NSKeyValueObserving.DefaultImplementation.didChangeValueForKey( this, key );
+        }
     }
     
     @Override
@@ -403,12 +555,16 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
     
     @Override
     public void willChangeValuesAtIndexForKey(EnumSet<Changes> change, NSSet<Integer> indexes, String key) {
-        NSKeyValueObserving.DefaultImplementation.willChangeValuesAtIndexForKey( this, change, indexes, key );
+        if( isObservable() ) {
+            NSKeyValueObserving.DefaultImplementation.willChangeValuesAtIndexForKey( this, change, indexes, key );
+        }
     }
     
     @Override
     public void willChangeValueForKey(String key) {
-        NSKeyValueObserving.DefaultImplementation.willChangeValueForKey( this, key );
+        if( isObservable() ) {
+            NSKeyValueObserving.DefaultImplementation.willChangeValueForKey( this, key );
+        }
     }
     
     @Override
@@ -426,14 +582,16 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
      * @return JSON text, or "null" if list is null.
      */
     public static String toJSONString(Collection collection){
-        final StringWriter writer = new StringWriter();
+        final StringBuilderWriter writer = StringBuilderWriter.obtain();
         
         try {
             writeJSONString(collection, writer);
             return writer.toString();
         } catch(IOException e){
-            // This should never happen for a StringWriter
+            // This should never happen for a StringBuilderWriter
             throw new RuntimeException(e);
+        } finally {
+            writer.recycle();
         }
     }
 
@@ -444,11 +602,11 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
             out.write("[]");
         } else {
             out.write("[");
-            out.write(String.valueOf(array[0]));
+            NumberWriter.writeLong(array[0], out);
             
             for(int i = 1; i < array.length; i++){
                 out.write(",");
-                out.write(String.valueOf(array[i]));
+                NumberWriter.writeLong(array[i], out);
             }
             
             out.write("]");
@@ -456,14 +614,16 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
     }
     
     public static String toJSONString(byte[] array){
-        final StringWriter writer = new StringWriter();
+        final StringBuilderWriter writer = StringBuilderWriter.obtain();
         
         try {
             writeJSONString(array, writer);
             return writer.toString();
         } catch(IOException e){
-            // This should never happen for a StringWriter
+            // This should never happen for a StringBuilderWriter
             throw new RuntimeException(e);
+        } finally {
+            writer.recycle();
         }
     }
     
@@ -474,11 +634,11 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
             out.write("[]");
         } else {
             out.write("[");
-            out.write(String.valueOf(array[0]));
+            NumberWriter.writeLong(array[0], out);
             
             for(int i = 1; i < array.length; i++){
                 out.write(",");
-                out.write(String.valueOf(array[i]));
+                NumberWriter.writeLong(array[i], out);
             }
             
             out.write("]");
@@ -486,14 +646,16 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
     }
     
     public static String toJSONString(short[] array){
-        final StringWriter writer = new StringWriter();
+        final StringBuilderWriter writer = StringBuilderWriter.obtain();
         
         try {
             writeJSONString(array, writer);
             return writer.toString();
         } catch(IOException e){
-            // This should never happen for a StringWriter
+            // This should never happen for a StringBuilderWriter
             throw new RuntimeException(e);
+        } finally {
+            writer.recycle();
         }
     }
     
@@ -504,11 +666,11 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
             out.write("[]");
         } else {
             out.write("[");
-            out.write(String.valueOf(array[0]));
+            NumberWriter.writeLong(array[0], out);
             
             for(int i = 1; i < array.length; i++){
                 out.write(",");
-                out.write(String.valueOf(array[i]));
+                NumberWriter.writeLong(array[i], out);
             }
             
             out.write("]");
@@ -516,14 +678,16 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
     }
     
     public static String toJSONString(int[] array){
-        final StringWriter writer = new StringWriter();
+        final StringBuilderWriter writer = StringBuilderWriter.obtain();
         
         try {
             writeJSONString(array, writer);
             return writer.toString();
         } catch(IOException e){
-            // This should never happen for a StringWriter
+            // This should never happen for a StringBuilderWriter
             throw new RuntimeException(e);
+        } finally {
+            writer.recycle();
         }
     }
     
@@ -534,11 +698,11 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
             out.write("[]");
         } else {
             out.write("[");
-            out.write(String.valueOf(array[0]));
+            NumberWriter.writeLong(array[0], out);
             
             for(int i = 1; i < array.length; i++){
                 out.write(",");
-                out.write(String.valueOf(array[i]));
+                NumberWriter.writeLong(array[i], out);
             }
             
             out.write("]");
@@ -546,14 +710,16 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
     }
     
     public static String toJSONString(long[] array){
-        final StringWriter writer = new StringWriter();
+        final StringBuilderWriter writer = StringBuilderWriter.obtain();
         
         try {
             writeJSONString(array, writer);
             return writer.toString();
         } catch(IOException e){
-            // This should never happen for a StringWriter
+            // This should never happen for a StringBuilderWriter
             throw new RuntimeException(e);
+        } finally {
+            writer.recycle();
         }
     }
     
@@ -564,11 +730,11 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
             out.write("[]");
         } else {
             out.write("[");
-            out.write(String.valueOf(array[0]));
+            NumberWriter.writeFloat(array[0], out);
             
             for(int i = 1; i < array.length; i++){
                 out.write(",");
-                out.write(String.valueOf(array[i]));
+                NumberWriter.writeFloat(array[i], out);
             }
             
             out.write("]");
@@ -576,14 +742,16 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
     }
     
     public static String toJSONString(float[] array){
-        final StringWriter writer = new StringWriter();
+        final StringBuilderWriter writer = StringBuilderWriter.obtain();
         
         try {
             writeJSONString(array, writer);
             return writer.toString();
         } catch(IOException e){
-            // This should never happen for a StringWriter
+            // This should never happen for a StringBuilderWriter
             throw new RuntimeException(e);
+        } finally {
+            writer.recycle();
         }
     }
     
@@ -594,11 +762,11 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
             out.write("[]");
         } else {
             out.write("[");
-            out.write(String.valueOf(array[0]));
+            NumberWriter.writeDouble(array[0], out);
             
             for(int i = 1; i < array.length; i++){
                 out.write(",");
-                out.write(String.valueOf(array[i]));
+                NumberWriter.writeDouble(array[i], out);
             }
             
             out.write("]");
@@ -606,14 +774,16 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
     }
     
     public static String toJSONString(double[] array){
-        final StringWriter writer = new StringWriter();
+        final StringBuilderWriter writer = StringBuilderWriter.obtain();
         
         try {
             writeJSONString(array, writer);
             return writer.toString();
         } catch(IOException e){
-            // This should never happen for a StringWriter
+            // This should never happen for a StringBuilderWriter
             throw new RuntimeException(e);
+        } finally {
+            writer.recycle();
         }
     }
     
@@ -636,14 +806,16 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
     }
     
     public static String toJSONString(boolean[] array){
-        final StringWriter writer = new StringWriter();
+        final StringBuilderWriter writer = StringBuilderWriter.obtain();
         
         try {
             writeJSONString(array, writer);
             return writer.toString();
         } catch(IOException e){
-            // This should never happen for a StringWriter
+            // This should never happen for a StringBuilderWriter
             throw new RuntimeException(e);
+        } finally {
+            writer.recycle();
         }
     }
     
@@ -666,14 +838,16 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
     }
     
     public static String toJSONString(char[] array){
-        final StringWriter writer = new StringWriter();
+        final StringBuilderWriter writer = StringBuilderWriter.obtain();
         
         try {
             writeJSONString(array, writer);
             return writer.toString();
         } catch(IOException e){
-            // This should never happen for a StringWriter
+            // This should never happen for a StringBuilderWriter
             throw new RuntimeException(e);
+        } finally {
+            writer.recycle();
         }
     }
     
@@ -696,14 +870,16 @@ public class JSONArray extends ArrayList implements JSONAware, JSONStreamAware,
     }
     
     public static String toJSONString(Object[] array){
-        final StringWriter writer = new StringWriter();
+        final StringBuilderWriter writer = StringBuilderWriter.obtain();
         
         try {
             writeJSONString(array, writer);
             return writer.toString();
         } catch(IOException e){
-            // This should never happen for a StringWriter
+            // This should never happen for a StringBuilderWriter
             throw new RuntimeException(e);
+        } finally {
+            writer.recycle();
         }
     }
     
@@ -0,0 +1,79 @@
+package com.innerfunction.json;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Writes records as UTF-8 encoded newline delimited JSON (NDJSON, or JSON Lines): one JSON
+ * value per line.
+ * Records are written through a single buffer which is reused for every record, rather than
+ * each record being converted to a string first. Line breaks within string values are escaped
+ * by the serializer, so each record occupies exactly one line.
+ * A writer is not thread-safe.
+ *
+ * @see com.innerfunction.json.parser.JSONLinesReader
+ */
+public class JSONLinesWriter implements Closeable, Flushable {
+
+    /** The size of the output buffer, in chars. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Writer out;
+
+    /**
+     * Create a writer for an output stream.
+     */
+    public JSONLinesWriter(OutputStream out) {
+        this.out = new BufferedWriter( new OutputStreamWriter( out, UTF8 ), BUFFER_SIZE );
+    }
+
+    /**
+     * Create a writer for a file. The file is replaced if it exists.
+     */
+    public JSONLinesWriter(File file) throws IOException {
+        this( new FileOutputStream( file ) );
+    }
+
+    /**
+     * Create a writer for a file.
+     * @param append - If true, records are added to the end of an existing file.
+     */
+    public JSONLinesWriter(File file, boolean append) throws IOException {
+        this( new FileOutputStream( file, append ) );
+    }
+
+    /**
+     * Write a record, followed by a line break.
+     * @param record - A JSONAware, or any other value accepted by {@link JSONValue#writeJSONString(Object, Writer)}.
+     */
+    public void write(Object record) throws IOException {
+        JSONValue.writeJSONString( record, out );
+        out.write( '\n' );
+    }
+
+    /**
+     * Write the buffered records to the output stream, and flush the stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Write the buffered records and close the output stream.
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
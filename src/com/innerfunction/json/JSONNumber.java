@@ -0,0 +1,132 @@
+package com.innerfunction.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * A number which keeps the text it was parsed from.
+ * The text is only decoded when the number's value is first needed, and the number is written
+ * back to JSON text exactly as it was read. Parsers create these when lazy numbers are enabled;
+ * see {@link com.innerfunction.json.parser.JSONParser#setLazyNumbers(boolean)}.
+ *
+ * The value of an integer is a Long, or a BigInteger if it doesn't fit a long; the value of a
+ * number with a fraction or an exponent is a Double. A JSONNumber is equal to any JSONNumber with
+ * an equal value, and has the same hash code as its value. It isn't equal to another Number,
+ * since a Number can't be equal to it; compare {@link #value()} with the Number instead.
+ */
+public class JSONNumber extends Number implements JSONStreamAware {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The number's text. */
+    private final char[] text;
+    /** The decoded value, once needed. */
+    private transient Number value;
+
+    /**
+     * @param text - The text of a JSON number.
+     */
+    public JSONNumber(String text) {
+        this.text = text.toCharArray();
+    }
+
+    /**
+     * @param chars - An array containing the text of a JSON number; the text is copied.
+     * @param offset - The offset of the text.
+     * @param length - The length of the text.
+     */
+    public JSONNumber(char[] chars, int offset, int length) {
+        this.text = new char[length];
+        System.arraycopy( chars, offset, text, 0, length );
+    }
+
+    /**
+     * @return true if the number has neither a fraction nor an exponent.
+     */
+    public boolean isInteger() {
+        for( char ch : text ) {
+            if( ch == '.' || ch == 'e' || ch == 'E' ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The number's value; a Long, BigInteger or Double.
+     */
+    public Number value() {
+        if( value == null ) {
+            String s = new String( text );
+            if( !isInteger() ) {
+                value = Double.valueOf( s );
+            }
+            else if( text.length <= 18 ) {
+                value = Long.valueOf( s );
+            }
+            else {
+                BigInteger bigValue = new BigInteger( s );
+                value = bigValue.bitLength() < 64 ? (Number)Long.valueOf( bigValue.longValue() ) : bigValue;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return The number's exact value.
+     */
+    public BigDecimal bigDecimalValue() {
+        return new BigDecimal( text );
+    }
+
+    @Override
+    public int intValue() {
+        return value().intValue();
+    }
+
+    @Override
+    public long longValue() {
+        return value().longValue();
+    }
+
+    @Override
+    public float floatValue() {
+        return value().floatValue();
+    }
+
+    @Override
+    public double doubleValue() {
+        return value().doubleValue();
+    }
+
+    @Override
+    public void writeJSONString(Writer out) throws IOException {
+        out.write( text );
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if( obj == this ) {
+            return true;
+        }
+        if( !(obj instanceof JSONNumber) ) {
+            return false;
+        }
+        return value().equals( ((JSONNumber)obj).value() );
+    }
+
+    @Override
+    public int hashCode() {
+        return value().hashCode();
+    }
+
+    /**
+     * @return The number's text.
+     */
+    @Override
+    public String toString() {
+        return new String( text );
+    }
+}
@@ -1,7 +1,7 @@
 package com.innerfunction.json;
 
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -19,14 +19,34 @@ public class JSONObject extends HashMap implements Map, JSONAware, JSONStreamAwa
 
     private static final long serialVersionUID = -503443796854799292L;
 
-    private Object nskvProxyCacheKey = new Object();
+    /**
+     * The key of the object's KVO proxy; created when first needed, which is when an observer is
+     * first added. Until then the object has no proxy, and changes don't need to be notified.
+     */
+    private volatile Object nskvProxyCacheKey;
 
     public JSONObject() {
         super();
     }
     
     public Object getNSKVProxyCacheKey() {
-        return nskvProxyCacheKey;
+        Object key = nskvProxyCacheKey;
+        if( key == null ) {
+            synchronized( this ) {
+                key = nskvProxyCacheKey;
+                if( key == null ) {
+                    key = nskvProxyCacheKey = new Object();
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * @return true if observers may have been added to the object.
+     */
+    private boolean isObservable() {
+        return nskvProxyCacheKey != null;
     }
     
     /**
@@ -47,6 +67,22 @@ public class JSONObject extends HashMap implements Map, JSONAware, JSONStreamAwa
     public String toJSONString(){
         return toJSONString(this);
     }
+
+    /**
+     * Convert the object to JSON text, encoded as UTF-8.
+     * @see JSONValue#toJSONBytes(Object)
+     */
+    public byte[] toJSONBytes(){
+        return JSONValue.toJSONBytes(this);
+    }
+
+    /**
+     * Write the object as JSON text to a stream, encoded as UTF-8.
+     * @see JSONValue#writeJSONBytes(Object, OutputStream)
+     */
+    public void writeJSONBytes(OutputStream out) throws IOException{
+        JSONValue.writeJSONBytes(this, out);
+    }
     
     public String toString(){
         return toJSONString();
@@ -155,13 +191,13 @@ public class JSONObject extends HashMap implements Map, JSONAware, JSONStreamAwa
     @Override
     public String getString(String name) {
         Object value = get( name );
-        return value instanceof String ? (String)value : null;
+        return JSONValue.stringValue( value );
     }
     
     @Override
     public String resolveString(String path) {
         Object value = valueForKeyPath( path );
-        return value instanceof String ? (String)value : null;
+        return JSONValue.stringValue( value );
     }
     
     @Override
@@ -246,12 +282,16 @@ public class JSONObject extends HashMap implements Map, JSONAware, JSONStreamAwa
 
     @Override
     public void didChangeValuesAtIndexForKey(EnumSet<Changes> change, NSSet<Integer> indexes, String key) {
-        NSKeyValueObserving.DefaultImplementation.didChangeValuesAtIndexForKey( this, change, indexes, key );
+        if( isObservable() ) {
+            NSKeyValueObserving.DefaultImplementation.didChangeValuesAtIndexForKey( this, change, indexes, key );
+        }
     }
 
     @Override
     public void didChangeValueForKey(String key) {
-        NSKeyValueObserving.DefaultImplementation.didChangeValueForKey( this, key );
+        if( isObservable() ) {
+            NSKeyValueObserving.DefaultImplementation.didChangeValueForKey( this, key );
+        }
     }
 
     @Override
@@ -261,12 +301,16 @@ public class JSONObject extends HashMap implements Map, JSONAware, JSONStreamAwa
 
     @Override
     public void willChangeValuesAtIndexForKey(EnumSet<Changes> change, NSSet<Integer> indexes, String key) {
-        NSKeyValueObserving.DefaultImplementation.willChangeValuesAtIndexForKey( this, change, indexes, key );
+        if( isObservable() ) {
+            NSKeyValueObserving.DefaultImplementation.willChangeValuesAtIndexForKey( this, change, indexes, key );
+        }
     }
 
     @Override
     public void willChangeValueForKey(String key) {
-        NSKeyValueObserving.DefaultImplementation.willChangeValueForKey( this, key );
+        if( isObservable() ) {
+            NSKeyValueObserving.DefaultImplementation.willChangeValueForKey( this, key );
+        }
     }
 
     @Override
@@ -300,7 +344,7 @@ public class JSONObject extends HashMap implements Map, JSONAware, JSONStreamAwa
                 out.write(',');
             Map.Entry entry=(Map.Entry)iter.next();
             out.write('\"');
-            out.write(escape(String.valueOf(entry.getKey())));
+            JSONValue.escape(String.valueOf(entry.getKey()), out);
             out.write('\"');
             out.write(':');
             JSONValue.writeJSONString(entry.getValue(), out);
@@ -318,29 +362,40 @@ public class JSONObject extends HashMap implements Map, JSONAware, JSONStreamAwa
      * @return JSON text, or "null" if map is null.
      */
     public static String toJSONString(Map map){
-        final StringWriter writer = new StringWriter();
+        final StringBuilderWriter writer = StringBuilderWriter.obtain();
         
         try {
             writeJSONString(map, writer);
             return writer.toString();
         } catch (IOException e) {
-            // This should never happen with a StringWriter
+            // This should never happen with a StringBuilderWriter
             throw new RuntimeException(e);
+        } finally {
+            writer.recycle();
         }
     }
     
     public static String toString(String key,Object value){
-        StringBuffer sb = new StringBuffer();
-        sb.append('\"');
-        if(key == null)
-            sb.append("null");
-        else
-            JSONValue.escape(key, sb);
-        sb.append('\"').append(':');
-        
-        sb.append(JSONValue.toJSONString(value));
+        final StringBuilderWriter writer = StringBuilderWriter.obtain();
         
-        return sb.toString();
+        try {
+            writer.write('\"');
+            if(key == null)
+                writer.write("null");
+            else
+                JSONValue.escape(key, writer);
+            writer.write('\"');
+            writer.write(':');
+            
+            JSONValue.writeJSONString(value, writer);
+            
+            return writer.toString();
+        } catch (IOException e) {
+            // This should never happen with a StringBuilderWriter
+            throw new RuntimeException(e);
+        } finally {
+            writer.recycle();
+        }
     }
     
     /**
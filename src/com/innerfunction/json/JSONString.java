@@ -0,0 +1,189 @@
+package com.innerfunction.json;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A string value which is a view of the text it was parsed from.
+ * Parsers create these when string views are enabled, for string values which contain no escape
+ * sequences and can be read directly from input which the caller retains - a byte array or a
+ * string; see {@link com.innerfunction.json.parser.JSONParser#setStringViews(boolean)}. The
+ * value's characters are only copied into a String when {@link #toString()} is first called,
+ * and the value is written back to JSON text by copying its characters, without escaping them.
+ * The input must not be modified while views of it are in use.
+ *
+ * A JSONString is equal to any JSONString with the same characters, and has the same hash code
+ * as the String with those characters. It isn't equal to a String; use
+ * {@link String#contentEquals(CharSequence)}, or compare toString(), to compare it with one.
+ */
+public final class JSONString implements CharSequence, JSONStreamAware {
+
+    /** The size of the buffer used to write the characters of a byte array view. */
+    private static final int WRITE_BUFFER_SIZE = 256;
+
+    /** The viewed characters; either ASCII bytes, or a character sequence. */
+    private final byte[] bytes;
+    private final CharSequence chars;
+    private final int offset;
+    private final int length;
+    /** The value as a String, once needed. */
+    private String string;
+    private int hash;
+
+    /**
+     * Create a view of a range of bytes, each of which is an ASCII character.
+     * @param ascii - The bytes; these aren't copied.
+     * @param offset - The offset of the first character.
+     * @param length - The number of characters.
+     */
+    public JSONString(byte[] ascii, int offset, int length) {
+        if( offset < 0 || length < 0 || offset + length > ascii.length ) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.bytes = ascii;
+        this.chars = null;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Create a view of a range of a character sequence.
+     * @param chars - The characters; these aren't copied.
+     * @param offset - The offset of the first character.
+     * @param length - The number of characters.
+     */
+    public JSONString(CharSequence chars, int offset, int length) {
+        if( offset < 0 || length < 0 || offset + length > chars.length() ) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.bytes = null;
+        this.chars = chars;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if( index < 0 || index >= length ) {
+            throw new StringIndexOutOfBoundsException( index );
+        }
+        return bytes != null ? (char)bytes[offset + index] : chars.charAt( offset + index );
+    }
+
+    /**
+     * @return A view of a range of the value's characters.
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if( start < 0 || end > length || start > end ) {
+            throw new StringIndexOutOfBoundsException();
+        }
+        if( bytes != null ) {
+            return new JSONString( bytes, offset + start, end - start );
+        }
+        return new JSONString( chars, offset + start, end - start );
+    }
+
+    /**
+     * Write the value as a JSON string. The characters are copied as they are, unless the value
+     * contains quotes, backslashes or control characters, when they are escaped as for a String.
+     */
+    @Override
+    public void writeJSONString(Writer out) throws IOException {
+        out.write('"');
+        if( needsEscape() ) {
+            JSONValue.escape( toString(), out );
+        }
+        else if( string != null ) {
+            out.write( string );
+        }
+        else if( bytes == null && chars instanceof String ) {
+            out.write( (String)chars, offset, length );
+        }
+        else {
+            char[] buffer = new char[Math.min( length, WRITE_BUFFER_SIZE )];
+            for( int i = 0; i < length; ) {
+                int count = Math.min( length - i, buffer.length );
+                for( int n = 0; n < count; n++ ) {
+                    buffer[n] = charAt( i + n );
+                }
+                out.write( buffer, 0, count );
+                i += count;
+            }
+        }
+        out.write('"');
+    }
+
+    /**
+     * @return true if any of the value's characters must be escaped in JSON text.
+     */
+    private boolean needsEscape() {
+        for( int i = 0; i < length; i++ ) {
+            char ch = bytes != null ? (char)bytes[offset + i] : chars.charAt( offset + i );
+            if( ch < 0x20 || ch == '"' || ch == '\\' ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if( obj == this ) {
+            return true;
+        }
+        if( !(obj instanceof JSONString) ) {
+            return false;
+        }
+        JSONString other = (JSONString)obj;
+        if( other.length != length ) {
+            return false;
+        }
+        for( int i = 0; i < length; i++ ) {
+            if( other.charAt( i ) != charAt( i ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if( h == 0 ) {
+            for( int i = 0; i < length; i++ ) {
+                h = 31 * h + charAt( i );
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * @return The value's characters, as a String; created on first use.
+     */
+    @Override
+    public String toString() {
+        if( string == null ) {
+            if( bytes != null ) {
+                char[] c = new char[length];
+                for( int i = 0; i < length; i++ ) {
+                    c[i] = (char)bytes[offset + i];
+                }
+                string = new String( c );
+            }
+            else if( chars instanceof String ) {
+                string = ((String)chars).substring( offset, offset + length );
+            }
+            else {
+                string = chars.subSequence( offset, offset + length ).toString();
+            }
+        }
+        return string;
+    }
+}
@@ -1,14 +1,20 @@
 package com.innerfunction.json;
 
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
-import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
-import android.annotation.SuppressLint;
+import java.util.Set;
 import com.innerfunction.json.parser.JSONParser;
 import com.innerfunction.json.parser.ParseException;
 
@@ -26,17 +32,29 @@ public class JSONValue {
         if( value instanceof Number ) {
             return Type.Number;
         }
-        if( value instanceof String ) {
+        if( value instanceof String || value instanceof JSONString ) {
             return Type.String;
         }
-        if( value instanceof JSONArray ) {
+        if( value instanceof JSONArray || (value instanceof JSONAware && value instanceof List) ) {
             return Type.Array;
         }
-        if( value instanceof JSONObject ) {
+        if( value instanceof JSONObject || (value instanceof JSONAware && value instanceof Map) ) {
             return Type.Object;
         }
         return Type.Other;
     }
+
+    /**
+     * Get a string value as a String.
+     * @return The value, or null if the value isn't a string.
+     */
+    public static String stringValue(Object value) {
+        if( value instanceof String ) {
+            return (String)value;
+        }
+        return value instanceof JSONString ? value.toString() : null;
+    }
+
     /**
      * Parse JSON text into java object from the input source. 
      * Please use parseWithException() if you don't want to ignore the exception.
@@ -59,7 +77,7 @@ public class JSONValue {
      */
     public static Object parse(Reader in){
         try{
-            JSONParser parser=new JSONParser();
+            JSONParser parser=JSONParser.threadLocal();
             return parser.parse(in);
         }
         catch(Exception e){
@@ -94,8 +112,10 @@ public class JSONValue {
     
     /**
      * Parse JSON text into java object from the input source.
+     * Uses the calling thread's reusable parser instance.
      * 
      * @see org.json.simple.parser.JSONParser
+     * @see com.innerfunction.json.parser.JSONParser#threadLocal()
      * 
      * @param in
      * @return Instance of the following:
@@ -110,14 +130,59 @@ public class JSONValue {
      * @throws ParseException
      */
     public static Object parseWithException(Reader in) throws IOException, ParseException{
-        JSONParser parser=new JSONParser();
+        JSONParser parser=JSONParser.threadLocal();
         return parser.parse(in);
     }
     
     public static Object parseWithException(String s) throws ParseException{
-        JSONParser parser=new JSONParser();
+        JSONParser parser=JSONParser.threadLocal();
         return parser.parse(s);
     }
+    
+    /**
+     * Parse UTF-8 encoded JSON text into java object.
+     * 
+     * @see com.innerfunction.json.parser.JSONParser#parse(byte[])
+     */
+    public static Object parseWithException(byte[] bytes) throws ParseException{
+        JSONParser parser=JSONParser.threadLocal();
+        return parser.parse(bytes);
+    }
+    
+    /**
+     * Parse UTF-8 encoded JSON text into java object from an input stream.
+     * 
+     * @see com.innerfunction.json.parser.JSONParser#parse(InputStream)
+     */
+    public static Object parseWithException(InputStream in) throws IOException, ParseException{
+        JSONParser parser=JSONParser.threadLocal();
+        return parser.parse(in);
+    }
+    
+    /**
+     * Parse UTF-8 encoded JSON text into java object from a file, which is memory mapped.
+     * 
+     * @see com.innerfunction.json.parser.JSONParser#parse(File)
+     */
+    public static Object parseWithException(File file) throws IOException, ParseException{
+        JSONParser parser=JSONParser.threadLocal();
+        return parser.parse(file);
+    }
+    
+    /**
+     * Parse only the parts of JSON text selected by a set of key paths into java object.
+     * 
+     * @see com.innerfunction.json.parser.JSONParser#parse(Reader, Set, com.innerfunction.json.parser.ContainerFactory)
+     */
+    public static Object parseWithException(Reader in, Set<String> keyPaths) throws IOException, ParseException{
+        JSONParser parser=JSONParser.threadLocal();
+        return parser.parse(in, keyPaths);
+    }
+    
+    public static Object parseWithException(String s, Set<String> keyPaths) throws ParseException{
+        JSONParser parser=JSONParser.threadLocal();
+        return parser.parse(s, keyPaths);
+    }
 
     /**
      * Encode an object into JSON text and write it to out.
@@ -142,27 +207,36 @@ public class JSONValue {
         
         if(value instanceof String){        
             out.write('\"');
-            out.write(escape((String)value));
+            escape((String)value, out);
             out.write('\"');
             return;
         }
         
+        if(value instanceof JSONString){
+            ((JSONString)value).writeJSONString(out);
+            return;
+        }
+        
         if(value instanceof Double){
-            if(((Double)value).isInfinite() || ((Double)value).isNaN())
-                out.write("null");
-            else
-                out.write(value.toString());
+            NumberWriter.writeDouble(((Double)value).doubleValue(), out);
             return;
         }
         
         if(value instanceof Float){
-            if(((Float)value).isInfinite() || ((Float)value).isNaN())
-                out.write("null");
-            else
-                out.write(value.toString());
+            NumberWriter.writeFloat(((Float)value).floatValue(), out);
             return;
         }       
         
+        if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte){
+            NumberWriter.writeLong(((Number)value).longValue(), out);
+            return;
+        }
+        
+        if(value instanceof JSONNumber){
+            ((JSONNumber)value).writeJSONString(out);
+            return;
+        }
+        
         if(value instanceof Number){
             out.write(value.toString());
             return;
@@ -256,79 +330,202 @@ public class JSONValue {
      * @return JSON text, or "null" if value is null or it's an NaN or an INF number.
      */
     public static String toJSONString(Object value){
-        final StringWriter writer = new StringWriter();
+        final StringBuilderWriter writer = StringBuilderWriter.obtain();
         
         try{
             writeJSONString(value, writer);
             return writer.toString();
         } catch(IOException e){
-            // This should never happen for a StringWriter
+            // This should never happen for a StringBuilderWriter
+            throw new RuntimeException(e);
+        } finally {
+            writer.recycle();
+        }
+    }
+
+    /**
+     * Convert an object to JSON text, encoded as UTF-8.
+     * The bytes are the same as those of {@link #toJSONString(Object)}, but are encoded directly
+     * as the text is written.
+     * 
+     * @param value
+     * @return The UTF-8 bytes of the JSON text.
+     */
+    public static byte[] toJSONBytes(Object value){
+        final UTF8Writer writer = UTF8Writer.obtain();
+        
+        try{
+            writeJSONString(value, writer);
+            return writer.toByteArray();
+        } catch(IOException e){
+            // This should never happen for a UTF8Writer without an output
             throw new RuntimeException(e);
+        } finally {
+            writer.recycle();
         }
     }
 
+    /**
+     * Encode an object into JSON text, and write it to a stream as UTF-8.
+     * The text is written in blocks of up to {@link UTF8Writer#FLUSH_CHUNKS} chunks; the stream is
+     * flushed, but not closed.
+     * 
+     * @param value
+     * @param out
+     */
+    public static void writeJSONBytes(Object value, OutputStream out) throws IOException {
+        final UTF8Writer writer = UTF8Writer.obtain(out);
+        try {
+            writeJSONString(value, writer);
+            writer.finish();
+        } finally {
+            writer.recycle();
+        }
+    }
+
+    /**
+     * Encode an object into JSON text, and write it to a channel as UTF-8.
+     * The text is written in blocks of up to {@link UTF8Writer#FLUSH_CHUNKS} chunks, with gathering
+     * writes if the channel is a GatheringByteChannel; the channel isn't closed.
+     * 
+     * @param value
+     * @param channel
+     */
+    public static void writeJSONBytes(Object value, WritableByteChannel channel) throws IOException {
+        final UTF8Writer writer = UTF8Writer.obtain(channel);
+        try {
+            writeJSONString(value, writer);
+            writer.finish();
+        } finally {
+            writer.recycle();
+        }
+    }
+
+    /**
+     * Encode an object into JSON text, and put it into a buffer as UTF-8.
+     * 
+     * @param value
+     * @param buffer
+     * @throws BufferOverflowException If the buffer doesn't have room for the text; the buffer
+     * is left unchanged.
+     */
+    public static void writeJSONBytes(Object value, ByteBuffer buffer){
+        final UTF8Writer writer = UTF8Writer.obtain();
+        
+        try{
+            writeJSONString(value, writer);
+            writer.writeTo(buffer);
+        } catch(IOException e){
+            // This should never happen for a UTF8Writer without an output
+            throw new RuntimeException(e);
+        } finally {
+            writer.recycle();
+        }
+    }
+
+    /** The escape sequence for each ASCII character, or null if the character is written as it is. */
+    private static final String[] ASCII_ESCAPES = new String[128];
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    static {
+        for( int ch = 0; ch < 0x20; ch++ ) {
+            ASCII_ESCAPES[ch] = "\\u00"+HEX_DIGITS[ch >> 4]+HEX_DIGITS[ch & 0xF];
+        }
+        ASCII_ESCAPES[0x7F] = "\\u007F";
+        ASCII_ESCAPES['"'] = "\\\"";
+        ASCII_ESCAPES['\\'] = "\\\\";
+        ASCII_ESCAPES['\b'] = "\\b";
+        ASCII_ESCAPES['\f'] = "\\f";
+        ASCII_ESCAPES['\n'] = "\\n";
+        ASCII_ESCAPES['\r'] = "\\r";
+        ASCII_ESCAPES['\t'] = "\\t";
+        ASCII_ESCAPES['/'] = "\\/";
+    }
+
+    /**
+     * Test whether a non-ASCII character is written as a hex escape.
+     * Reference: http://www.unicode.org/versions/Unicode5.1.0/
+     */
+    private static boolean isEscapedNonASCII(char ch) {
+        return ch <= '\u009F' || (ch >= '\u2000' && ch <= '\u20FF');
+    }
+
     /**
      * Escape quotes, \, /, \r, \n, \b, \f, \t and other control characters (U+0000 through U+001F).
      * @param s
-     * @return
+     * @return The escaped string; or s itself, if none of its characters are escaped.
      */
     public static String escape(String s){
         if(s==null)
             return null;
-        StringBuffer sb = new StringBuffer();
-        escape(s, sb);
-        return sb.toString();
+        final int len = s.length();
+        int i = 0;
+        while( i < len ) {
+            char ch = s.charAt( i );
+            if( ch < 128 ? ASCII_ESCAPES[ch] != null : isEscapedNonASCII( ch ) ) {
+                break;
+            }
+            i++;
+        }
+        if( i == len ) {
+            return s;
+        }
+        final StringBuilderWriter writer = StringBuilderWriter.obtain();
+        try {
+            escape(s, writer);
+            return writer.toString();
+        } catch(IOException e){
+            // This should never happen for a StringBuilderWriter
+            throw new RuntimeException(e);
+        } finally {
+            writer.recycle();
+        }
     }
 
     /**
+     * Write a string's characters to out, escaped as by {@link #escape(String)}.
+     * The string is written with a single write if none of its characters are escaped; otherwise
+     * the runs of characters between escapes are each written with a single write.
      * @param s - Must not be null.
-     * @param sb
+     * @param out
      */
-    @SuppressLint("DefaultLocale")
-    static void escape(String s, StringBuffer sb) {
+    public static void escape(String s, Writer out) throws IOException {
         final int len = s.length();
-        for(int i=0;i<len;i++){
-            char ch=s.charAt(i);
-            switch(ch){
-            case '"':
-                sb.append("\\\"");
-                break;
-            case '\\':
-                sb.append("\\\\");
-                break;
-            case '\b':
-                sb.append("\\b");
-                break;
-            case '\f':
-                sb.append("\\f");
-                break;
-            case '\n':
-                sb.append("\\n");
-                break;
-            case '\r':
-                sb.append("\\r");
-                break;
-            case '\t':
-                sb.append("\\t");
-                break;
-            case '/':
-                sb.append("\\/");
-                break;
-            default:
-                //Reference: http://www.unicode.org/versions/Unicode5.1.0/
-                if((ch>='\u0000' && ch<='\u001F') || (ch>='\u007F' && ch<='\u009F') || (ch>='\u2000' && ch<='\u20FF')){
-                    String ss=Integer.toHexString(ch);
-                    sb.append("\\u");
-                    for(int k=0;k<4-ss.length();k++){
-                        sb.append('0');
-                    }
-                    sb.append(ss.toUpperCase());
+        int start = 0;
+        for( int i = 0; i < len; i++ ) {
+            char ch = s.charAt( i );
+            if( ch < 128 ) {
+                String escape = ASCII_ESCAPES[ch];
+                if( escape == null ) {
+                    continue;
                 }
-                else{
-                    sb.append(ch);
+                if( i > start ) {
+                    out.write( s, start, i - start );
                 }
+                out.write( escape );
             }
-        }//for
+            else if( isEscapedNonASCII( ch ) ) {
+                if( i > start ) {
+                    out.write( s, start, i - start );
+                }
+                out.write('\\');
+                out.write('u');
+                out.write( HEX_DIGITS[ch >> 12] );
+                out.write( HEX_DIGITS[(ch >> 8) & 0xF] );
+                out.write( HEX_DIGITS[(ch >> 4) & 0xF] );
+                out.write( HEX_DIGITS[ch & 0xF] );
+            }
+            else {
+                continue;
+            }
+            start = i + 1;
+        }
+        if( start == 0 ) {
+            out.write( s );
+        }
+        else if( start < len ) {
+            out.write( s, start, len - start );
+        }
     }
 
 }
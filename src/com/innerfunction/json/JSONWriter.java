@@ -0,0 +1,311 @@
+package com.innerfunction.json;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes JSON text a token at a time, without building a JSONObject or JSONArray tree first.
+ * <pre>
+ *     writer.beginObject()
+ *         .name("id").value( 1 )
+ *         .name("tags").beginArray().value("a").value("b").endArray()
+ *         .endObject();
+ * </pre>
+ * Strings are escaped and numbers formatted as they are by {@link JSONValue#writeJSONString(Object, Writer)},
+ * so the text is the same as that of the equivalent tree. Names which are written many times can
+ * be escaped once, as a {@link Name}.
+ * <p>
+ * The writer only tracks the nesting of the text, so its memory use doesn't grow with the amount
+ * of text written. In debug mode it also checks that each token is allowed where it is written,
+ * and throws IllegalStateException if not; otherwise tokens written out of place make invalid
+ * JSON text.
+ * A writer is not thread-safe.
+ */
+public class JSONWriter implements Closeable, Flushable {
+
+    // Nesting states.
+    /** Nothing has been written. */
+    private static final byte EMPTY_DOCUMENT = 0;
+    /** A top-level value has been written. */
+    private static final byte NONEMPTY_DOCUMENT = 1;
+    /** An object has been begun, but has no members. */
+    private static final byte EMPTY_OBJECT = 2;
+    /** An object has at least one member, and the next token is a name or its end. */
+    private static final byte OBJECT = 3;
+    /** A member's name has been written, and the next token is its value. */
+    private static final byte NAME = 4;
+    /** An array has been begun, but has no items. */
+    private static final byte EMPTY_ARRAY = 5;
+    /** An array has at least one item. */
+    private static final byte ARRAY = 6;
+
+    private final Writer out;
+    private byte[] stack = new byte[32];
+    private int depth = 1;
+    private boolean debug;
+
+    /**
+     * Create a writer for a character stream. The stream should be buffered.
+     */
+    public JSONWriter(Writer out) {
+        this.out = out;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Create a writer for a byte stream; the text is encoded as UTF-8 with a {@link UTF8Writer}.
+     */
+    public JSONWriter(OutputStream out) {
+        this( new UTF8Writer( out ) );
+    }
+
+    /**
+     * Create a writer for a channel; the text is encoded as UTF-8 with a {@link UTF8Writer}.
+     */
+    public JSONWriter(WritableByteChannel channel) {
+        this( new UTF8Writer( channel ) );
+    }
+
+    /**
+     * Set whether the writer checks that each token is written in an allowed place.
+     */
+    public void setDebug(boolean debug) {
+        this.debug = debug;
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    private void push(byte state) {
+        if( depth == stack.length ) {
+            byte[] expanded = new byte[stack.length * 2];
+            System.arraycopy( stack, 0, expanded, 0, depth );
+            stack = expanded;
+        }
+        stack[depth++] = state;
+    }
+
+    /**
+     * Write the separator before a value, and record that the value was written.
+     */
+    private void beforeValue() throws IOException {
+        switch( stack[depth - 1] ) {
+        case EMPTY_ARRAY:
+            stack[depth - 1] = ARRAY;
+            break;
+        case ARRAY:
+            out.write(',');
+            break;
+        case NAME:
+            stack[depth - 1] = OBJECT;
+            break;
+        case EMPTY_DOCUMENT:
+            stack[depth - 1] = NONEMPTY_DOCUMENT;
+            break;
+        case NONEMPTY_DOCUMENT:
+            if( debug ) {
+                throw new IllegalStateException("JSON text must have only one top-level value");
+            }
+            break;
+        default:
+            if( debug ) {
+                throw new IllegalStateException("Object member must have a name before its value");
+            }
+        }
+    }
+
+    /**
+     * Write the separator before a member's name, and record that the name was written.
+     */
+    private void beforeName() throws IOException {
+        byte state = stack[depth - 1];
+        if( state == OBJECT ) {
+            out.write(',');
+        }
+        else if( state != EMPTY_OBJECT && debug ) {
+            throw new IllegalStateException( state == NAME
+                ? "Object member must have a value after its name"
+                : "Name must be written in an object" );
+        }
+        stack[depth - 1] = NAME;
+    }
+
+    /**
+     * End the innermost object or array, which must be of the type of the expected state.
+     */
+    private JSONWriter end(byte expected, char close) throws IOException {
+        if( depth == 1 ) {
+            throw new IllegalStateException("No object or array to end");
+        }
+        byte state = stack[depth - 1];
+        if( debug && state != expected && state != expected + 1 ) {
+            throw new IllegalStateException( state == NAME
+                ? "Object member must have a value after its name"
+                : "Ended "+(close == '}' ? "an object" : "an array")+" while in "+(state <= NAME ? "an object" : "an array") );
+        }
+        depth--;
+        out.write( close );
+        return this;
+    }
+
+    public JSONWriter beginObject() throws IOException {
+        beforeValue();
+        push( EMPTY_OBJECT );
+        out.write('{');
+        return this;
+    }
+
+    public JSONWriter endObject() throws IOException {
+        return end( EMPTY_OBJECT, '}' );
+    }
+
+    public JSONWriter beginArray() throws IOException {
+        beforeValue();
+        push( EMPTY_ARRAY );
+        out.write('[');
+        return this;
+    }
+
+    public JSONWriter endArray() throws IOException {
+        return end( EMPTY_ARRAY, ']' );
+    }
+
+    /**
+     * Write the name of an object member. The name is escaped as it is written.
+     */
+    public JSONWriter name(String name) throws IOException {
+        beforeName();
+        out.write('"');
+        JSONValue.escape( String.valueOf( name ), out );
+        out.write("\":");
+        return this;
+    }
+
+    /**
+     * Write the name of an object member, which has already been escaped.
+     */
+    public JSONWriter name(Name name) throws IOException {
+        beforeName();
+        out.write( name.text, 0, name.text.length );
+        return this;
+    }
+
+    public JSONWriter value(String value) throws IOException {
+        beforeValue();
+        if( value == null ) {
+            out.write("null");
+        }
+        else {
+            out.write('"');
+            JSONValue.escape( value, out );
+            out.write('"');
+        }
+        return this;
+    }
+
+    public JSONWriter value(long value) throws IOException {
+        beforeValue();
+        NumberWriter.writeLong( value, out );
+        return this;
+    }
+
+    /**
+     * Write a double; NaN and infinite values are written as null.
+     */
+    public JSONWriter value(double value) throws IOException {
+        beforeValue();
+        NumberWriter.writeDouble( value, out );
+        return this;
+    }
+
+    /**
+     * Write a float; NaN and infinite values are written as null.
+     */
+    public JSONWriter value(float value) throws IOException {
+        beforeValue();
+        NumberWriter.writeFloat( value, out );
+        return this;
+    }
+
+    public JSONWriter value(boolean value) throws IOException {
+        beforeValue();
+        out.write( value ? "true" : "false" );
+        return this;
+    }
+
+    public JSONWriter nullValue() throws IOException {
+        beforeValue();
+        out.write("null");
+        return this;
+    }
+
+    /**
+     * Write any value accepted by {@link JSONValue#writeJSONString(Object, Writer)}, such as a
+     * Number, Map or List.
+     */
+    public JSONWriter value(Object value) throws IOException {
+        beforeValue();
+        JSONValue.writeJSONString( value, out );
+        return this;
+    }
+
+    /**
+     * Write a value's own JSON text, as it is. A JSONStreamAware value writes its text directly
+     * to the output.
+     */
+    public JSONWriter rawValue(JSONAware value) throws IOException {
+        beforeValue();
+        if( value instanceof JSONStreamAware ) {
+            ((JSONStreamAware)value).writeJSONString( out );
+        }
+        else {
+            out.write( value.toJSONString() );
+        }
+        return this;
+    }
+
+    /**
+     * Write the buffered text to the output, and flush it.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Write the buffered text and close the output. In debug mode, throws IllegalStateException
+     * after closing the output if the text is incomplete.
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+        if( debug && (depth > 1 || stack[0] == EMPTY_DOCUMENT) ) {
+            throw new IllegalStateException("Incomplete JSON text");
+        }
+    }
+
+    /**
+     * An object member name which is escaped once, for writing many times.
+     */
+    public static final class Name {
+
+        private final String name;
+        /** The name's JSON text, with its quotes and the following colon. */
+        private final char[] text;
+
+        public Name(String name) {
+            this.name = name;
+            this.text = ("\""+JSONValue.escape( String.valueOf( name ) )+"\":").toCharArray();
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
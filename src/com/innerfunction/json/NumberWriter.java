@@ -0,0 +1,466 @@
+package com.innerfunction.json;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+
+/**
+ * Writes numbers as JSON text without making a String for each number.
+ * <p>
+ * Integers are written digit by digit. Doubles and floats are written with the fewest digits
+ * which read back as the same value, using the Schubfach algorithm (R. Giulietti, "The Schubfach
+ * way to render doubles", 2020); the layout is that of Double.toString(), e.g. 1.0, 0.001 or
+ * 1.0E7. NaN and infinite values are written as null.
+ * <p>
+ * A number written to a {@link StringBuilderWriter} is formatted straight into its buffer; for
+ * other writers it is formatted into a buffer which is reused by the thread.
+ */
+public final class NumberWriter {
+
+    /** The most characters written for a number, as for -2.2250738585072014E-308. */
+    public static final int MAX_LENGTH = 24;
+
+    private static final ThreadLocal<char[]> threadLocalBuffer = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[MAX_LENGTH];
+        }
+    };
+
+    private static final char[] NULL = "null".toCharArray();
+    private static final char[] LONG_MIN_VALUE = "-9223372036854775808".toCharArray();
+
+    private static final char[] DIGIT_TENS = new char[100];
+    private static final char[] DIGIT_ONES = new char[100];
+    /** Powers of ten which fit in a long. */
+    private static final long[] POW10 = new long[19];
+
+    // Double parameters.
+    private static final int D_PRECISION = 53;
+    private static final int D_Q_MIN = -1074;
+    private static final long D_C_MIN = 1L << (D_PRECISION - 1);
+    private static final long D_T_MASK = D_C_MIN - 1;
+    private static final int D_BQ_MASK = 0x7FF;
+    /** Subnormal significands below this are scaled by 10, so that they are rendered exactly. */
+    private static final long D_C_TINY = 3;
+
+    // Float parameters.
+    private static final int F_PRECISION = 24;
+    private static final int F_Q_MIN = -149;
+    private static final int F_C_MIN = 1 << (F_PRECISION - 1);
+    private static final int F_T_MASK = F_C_MIN - 1;
+    private static final int F_BQ_MASK = 0xFF;
+    private static final int F_C_TINY = 8;
+
+    private static final long MASK_63 = (1L << 63) - 1;
+    private static final long MASK_32 = (1L << 32) - 1;
+
+    /** The smallest and largest decimal exponents of the powers of ten in the table. */
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+    /**
+     * For each k, 10^-k as g1 2^63 + g0 = floor(10^-k 2^-r) + 1, where r is chosen so that
+     * 2^125 <= 10^-k 2^-r < 2^126; g1 is at index 2(k - K_MIN) and g0 follows it.
+     */
+    private static final long[] G = new long[(K_MAX - K_MIN + 1) * 2];
+
+    static {
+        for( int i = 0; i < 100; i++ ) {
+            DIGIT_TENS[i] = (char)('0' + i / 10);
+            DIGIT_ONES[i] = (char)('0' + i % 10);
+        }
+        POW10[0] = 1;
+        for( int i = 1; i < POW10.length; i++ ) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+        for( int k = K_MIN; k <= K_MAX; k++ ) {
+            int r = flog2pow10( -k ) - 125;
+            BigInteger g;
+            if( k <= 0 ) {
+                BigInteger pow10 = BigInteger.TEN.pow( -k );
+                g = r >= 0 ? pow10.shiftRight( r ) : pow10.shiftLeft( -r );
+            }
+            else {
+                g = BigInteger.ONE.shiftLeft( -r ).divide( BigInteger.TEN.pow( k ) );
+            }
+            g = g.add( BigInteger.ONE );
+            int i = (k - K_MIN) << 1;
+            G[i] = g.shiftRight( 63 ).longValue();
+            G[i + 1] = g.longValue() & MASK_63;
+        }
+    }
+
+    private NumberWriter() {
+    }
+
+    /**
+     * Write a long as JSON text.
+     */
+    public static void writeLong(long value, Writer out) throws IOException {
+        if( out instanceof StringBuilderWriter ) {
+            ((StringBuilderWriter)out).writeLong( value );
+        }
+        else {
+            char[] buffer = threadLocalBuffer.get();
+            out.write( buffer, 0, formatLong( value, buffer, 0 ) );
+        }
+    }
+
+    /**
+     * Write a double as JSON text; NaN and infinite values are written as null.
+     */
+    public static void writeDouble(double value, Writer out) throws IOException {
+        if( out instanceof StringBuilderWriter ) {
+            ((StringBuilderWriter)out).writeDouble( value );
+        }
+        else {
+            char[] buffer = threadLocalBuffer.get();
+            out.write( buffer, 0, formatDouble( value, buffer, 0 ) );
+        }
+    }
+
+    /**
+     * Write a float as JSON text; NaN and infinite values are written as null.
+     */
+    public static void writeFloat(float value, Writer out) throws IOException {
+        if( out instanceof StringBuilderWriter ) {
+            ((StringBuilderWriter)out).writeFloat( value );
+        }
+        else {
+            char[] buffer = threadLocalBuffer.get();
+            out.write( buffer, 0, formatFloat( value, buffer, 0 ) );
+        }
+    }
+
+    /**
+     * Format a long into a buffer, which must have room for {@link #MAX_LENGTH} characters.
+     * @return The position after the last character written.
+     */
+    public static int formatLong(long value, char[] buffer, int position) {
+        if( value == Long.MIN_VALUE ) {
+            System.arraycopy( LONG_MIN_VALUE, 0, buffer, position, LONG_MIN_VALUE.length );
+            return position + LONG_MIN_VALUE.length;
+        }
+        if( value < 0 ) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int end = position + digitCount( value );
+        writeDigits( value, buffer, end );
+        return end;
+    }
+
+    /**
+     * Format a double into a buffer, which must have room for {@link #MAX_LENGTH} characters.
+     * NaN and infinite values are formatted as null.
+     * @return The position after the last character written.
+     */
+    public static int formatDouble(double value, char[] buffer, int position) {
+        long bits = Double.doubleToRawLongBits( value );
+        long t = bits & D_T_MASK;
+        int bq = (int)(bits >>> (D_PRECISION - 1)) & D_BQ_MASK;
+        if( bq == D_BQ_MASK ) {
+            return formatNull( buffer, position );
+        }
+        if( bits < 0 ) {
+            buffer[position++] = '-';
+        }
+        if( bq != 0 ) {
+            // A normal value; mq = -q.
+            int mq = -D_Q_MIN + 1 - bq;
+            long c = D_C_MIN | t;
+            // An integer value is its own shortest decimal.
+            if( 0 < mq && mq < D_PRECISION ) {
+                long f = c >> mq;
+                if( f << mq == c ) {
+                    return formatDecimal( f, 0, buffer, position );
+                }
+            }
+            return formatDouble( -mq, c, 0, buffer, position );
+        }
+        if( t != 0 ) {
+            // A subnormal value.
+            return t < D_C_TINY
+                ? formatDouble( D_Q_MIN, 10 * t, -1, buffer, position )
+                : formatDouble( D_Q_MIN, t, 0, buffer, position );
+        }
+        return formatZero( buffer, position );
+    }
+
+    /**
+     * Format a float into a buffer, which must have room for {@link #MAX_LENGTH} characters.
+     * NaN and infinite values are formatted as null.
+     * @return The position after the last character written.
+     */
+    public static int formatFloat(float value, char[] buffer, int position) {
+        int bits = Float.floatToRawIntBits( value );
+        int t = bits & F_T_MASK;
+        int bq = (bits >>> (F_PRECISION - 1)) & F_BQ_MASK;
+        if( bq == F_BQ_MASK ) {
+            return formatNull( buffer, position );
+        }
+        if( bits < 0 ) {
+            buffer[position++] = '-';
+        }
+        if( bq != 0 ) {
+            int mq = -F_Q_MIN + 1 - bq;
+            int c = F_C_MIN | t;
+            if( 0 < mq && mq < F_PRECISION ) {
+                int f = c >> mq;
+                if( f << mq == c ) {
+                    return formatDecimal( f, 0, buffer, position );
+                }
+            }
+            return formatFloat( -mq, c, 0, buffer, position );
+        }
+        if( t != 0 ) {
+            return t < F_C_TINY
+                ? formatFloat( F_Q_MIN, 10 * t, -1, buffer, position )
+                : formatFloat( F_Q_MIN, t, 0, buffer, position );
+        }
+        return formatZero( buffer, position );
+    }
+
+    /**
+     * Find the shortest decimal which rounds to the double c 2^q, and format it.
+     * dk is added to the decimal's exponent.
+     */
+    private static int formatDouble(int q, long c, int dk, char[] buffer, int position) {
+        int out = (int)c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if( c != D_C_MIN || q == D_Q_MIN ) {
+            cbl = cb - 2;
+            k = flog10pow2( q );
+        }
+        else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2( q );
+        }
+        int h = q + flog2pow10( -k ) + 2;
+        int i = (k - K_MIN) << 1;
+        long g1 = G[i], g0 = G[i + 1];
+
+        long vb = roundOdd( g1, g0, cb << h );
+        long vbl = roundOdd( g1, g0, cbl << h );
+        long vbr = roundOdd( g1, g0, cbr << h );
+
+        long s = vb >> 2;
+        if( s >= 100 ) {
+            // s / 10 * 10
+            long sp10 = 10 * multiplyHigh( s, 115292150460684698L << 4 );
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if( upin != wpin ) {
+                return formatDecimal( upin ? sp10 : tp10, k, buffer, position );
+            }
+        }
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if( uin != win ) {
+            return formatDecimal( uin ? s : t, k + dk, buffer, position );
+        }
+        long cmp = vb - ((s + t) << 1);
+        return formatDecimal( cmp < 0 || (cmp == 0 && (s & 0x1) == 0) ? s : t, k + dk, buffer, position );
+    }
+
+    /**
+     * Find the shortest decimal which rounds to the float c 2^q, and format it.
+     * dk is added to the decimal's exponent.
+     */
+    private static int formatFloat(int q, int c, int dk, char[] buffer, int position) {
+        int out = c & 0x1;
+        long cb = (long)c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if( c != F_C_MIN || q == F_Q_MIN ) {
+            cbl = cb - 2;
+            k = flog10pow2( q );
+        }
+        else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2( q );
+        }
+        int h = q + flog2pow10( -k ) + 33;
+        long g = G[(k - K_MIN) << 1] + 1;
+
+        int vb = roundOdd( g, cb << h );
+        int vbl = roundOdd( g, cbl << h );
+        int vbr = roundOdd( g, cbr << h );
+
+        int s = vb >> 2;
+        if( s >= 100 ) {
+            // s / 10 * 10
+            int sp10 = 10 * (int)(s * 1717986919L >>> 34);
+            int tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if( upin != wpin ) {
+                return formatDecimal( upin ? sp10 : tp10, k, buffer, position );
+            }
+        }
+        int t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if( uin != win ) {
+            return formatDecimal( uin ? s : t, k + dk, buffer, position );
+        }
+        int cmp = vb - ((s + t) << 1);
+        return formatDecimal( cmp < 0 || (cmp == 0 && (s & 0x1) == 0) ? s : t, k + dk, buffer, position );
+    }
+
+    /**
+     * Format the decimal f 10^e, f > 0, in the layout of Double.toString(): plainly when
+     * 10^-3 <= f 10^e < 10^7, otherwise as d.dddEn.
+     */
+    private static int formatDecimal(long f, int e, char[] buffer, int position) {
+        while( f % 10 == 0 ) {
+            f /= 10;
+            e++;
+        }
+        int n = digitCount( f );
+        // The decimal is 0.d1...dn 10^exp.
+        int exp = n + e;
+        if( 0 < exp && exp <= 7 ) {
+            if( n <= exp ) {
+                writeDigits( f, buffer, position + n );
+                position += n;
+                for( int i = n; i < exp; i++ ) {
+                    buffer[position++] = '0';
+                }
+                buffer[position++] = '.';
+                buffer[position++] = '0';
+                return position;
+            }
+            // Write the digits one place along, then move the integer digits back before the point.
+            writeDigits( f, buffer, position + n + 1 );
+            System.arraycopy( buffer, position + 1, buffer, position, exp );
+            buffer[position + exp] = '.';
+            return position + n + 1;
+        }
+        if( -3 < exp && exp <= 0 ) {
+            buffer[position++] = '0';
+            buffer[position++] = '.';
+            for( int i = exp; i < 0; i++ ) {
+                buffer[position++] = '0';
+            }
+            writeDigits( f, buffer, position + n );
+            return position + n;
+        }
+        writeDigits( f, buffer, position + n + 1 );
+        buffer[position] = buffer[position + 1];
+        buffer[position + 1] = '.';
+        if( n == 1 ) {
+            buffer[position + 2] = '0';
+            position += 3;
+        }
+        else {
+            position += n + 1;
+        }
+        buffer[position++] = 'E';
+        exp--;
+        if( exp < 0 ) {
+            buffer[position++] = '-';
+            exp = -exp;
+        }
+        int end = position + digitCount( exp );
+        writeDigits( exp, buffer, end );
+        return end;
+    }
+
+    private static int formatZero(char[] buffer, int position) {
+        buffer[position++] = '0';
+        buffer[position++] = '.';
+        buffer[position++] = '0';
+        return position;
+    }
+
+    private static int formatNull(char[] buffer, int position) {
+        System.arraycopy( NULL, 0, buffer, position, NULL.length );
+        return position + NULL.length;
+    }
+
+    /**
+     * @return The number of decimal digits of value, value >= 0.
+     */
+    private static int digitCount(long value) {
+        int n = flog10pow2( 64 - Long.numberOfLeadingZeros( value ) );
+        if( n < POW10.length && value >= POW10[n] ) {
+            n++;
+        }
+        return n == 0 ? 1 : n;
+    }
+
+    /**
+     * Write the digits of value, value >= 0, so that the last digit is just before end.
+     */
+    private static void writeDigits(long value, char[] buffer, int end) {
+        while( value >= 100 ) {
+            long q = value / 100;
+            int r = (int)(value - q * 100);
+            buffer[--end] = DIGIT_ONES[r];
+            buffer[--end] = DIGIT_TENS[r];
+            value = q;
+        }
+        int r = (int)value;
+        buffer[--end] = DIGIT_ONES[r];
+        if( r >= 10 ) {
+            buffer[--end] = DIGIT_TENS[r];
+        }
+    }
+
+    /**
+     * Round to odd the product of g1 2^63 + g0 and cp, shifted right by 127 bits.
+     */
+    private static long roundOdd(long g1, long g0, long cp) {
+        long x1 = multiplyHigh( g0, cp );
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh( g1, cp );
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (((z & MASK_63) + MASK_63) >>> 63);
+    }
+
+    /**
+     * Round to odd the product of g and cp, shifted right by 95 bits.
+     */
+    private static int roundOdd(long g, long cp) {
+        long x1 = multiplyHigh( g, cp );
+        long vbp = x1 >>> 31;
+        return (int)(vbp | (((x1 & MASK_32) + MASK_32) >>> 32));
+    }
+
+    /**
+     * @return The high 64 bits of the 128 bit product of x and y.
+     */
+    private static long multiplyHigh(long x, long y) {
+        long x1 = x >> 32, x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32, y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & 0xFFFFFFFFL;
+        long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+
+    /** @return floor(log10(2^e)), for |e| <= 5456721. */
+    private static int flog10pow2(int e) {
+        return (int)(e * 661971961083L >> 41);
+    }
+
+    /** @return floor(log10(3/4 2^e)), for |e| <= 5456721. */
+    private static int flog10threeQuartersPow2(int e) {
+        return (int)((e * 661971961083L + -274743187321L) >> 41);
+    }
+
+    /** @return floor(log2(10^e)), for |e| <= 1233336. */
+    private static int flog2pow10(int e) {
+        return (int)(e * 913124641741L >> 38);
+    }
+}
@@ -0,0 +1,180 @@
+package com.innerfunction.json;
+
+import java.io.Writer;
+
+/**
+ * An unsynchronized Writer which collects its output in a growable character array.
+ * Unlike a StringWriter, which is backed by a StringBuffer, no lock is taken for each write.
+ * <p>
+ * Each thread has one cached writer, which is reused by the toJSONString methods; use
+ * {@link #obtain()} to get a writer and {@link #recycle()} to return it once its text has been
+ * read. A writer obtained while the thread's cached writer is in use, as when toJSONString is
+ * called while writing another value, is a new writer which is discarded when it is recycled.
+ */
+public final class StringBuilderWriter extends Writer {
+
+    private static final int DEFAULT_CAPACITY = 256;
+    /** The largest buffer which is kept by a cached writer when it is recycled. */
+    private static final int MAX_CACHED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<StringBuilderWriter> threadLocalWriter = new ThreadLocal<StringBuilderWriter>() {
+        @Override
+        protected StringBuilderWriter initialValue() {
+            StringBuilderWriter writer = new StringBuilderWriter();
+            writer.cached = true;
+            return writer;
+        }
+    };
+
+    private char[] buffer;
+    private int count;
+    /** True if this is a thread's cached writer. */
+    private boolean cached;
+    /** True if this is a thread's cached writer, and it has been obtained but not recycled. */
+    private boolean inUse;
+
+    public StringBuilderWriter() {
+        this( DEFAULT_CAPACITY );
+    }
+
+    public StringBuilderWriter(int capacity) {
+        buffer = new char[capacity];
+    }
+
+    /**
+     * Get a writer for the current thread. The writer is empty.
+     */
+    public static StringBuilderWriter obtain() {
+        StringBuilderWriter writer = threadLocalWriter.get();
+        if( writer.inUse ) {
+            return new StringBuilderWriter();
+        }
+        writer.inUse = true;
+        return writer;
+    }
+
+    /**
+     * Return a writer got from {@link #obtain()}, so that it can be reused. The writer must not
+     * be used after it has been recycled.
+     */
+    public void recycle() {
+        if( cached ) {
+            count = 0;
+            if( buffer.length > MAX_CACHED_CAPACITY ) {
+                buffer = new char[DEFAULT_CAPACITY];
+            }
+            inUse = false;
+        }
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if( minCapacity > buffer.length ) {
+            int capacity = Math.max( buffer.length * 2, minCapacity );
+            char[] expanded = new char[capacity];
+            System.arraycopy( buffer, 0, expanded, 0, count );
+            buffer = expanded;
+        }
+    }
+
+    @Override
+    public void write(int ch) {
+        if( count == buffer.length ) {
+            ensureCapacity( count + 1 );
+        }
+        buffer[count++] = (char)ch;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+        ensureCapacity( count + length );
+        System.arraycopy( chars, offset, buffer, count, length );
+        count += length;
+    }
+
+    @Override
+    public void write(String string) {
+        write( string, 0, string.length() );
+    }
+
+    @Override
+    public void write(String string, int offset, int length) {
+        ensureCapacity( count + length );
+        string.getChars( offset, offset + length, buffer, count );
+        count += length;
+    }
+
+    /**
+     * Format a long straight into the buffer.
+     * @see NumberWriter#writeLong(long, Writer)
+     */
+    void writeLong(long value) {
+        ensureCapacity( count + NumberWriter.MAX_LENGTH );
+        count = NumberWriter.formatLong( value, buffer, count );
+    }
+
+    /**
+     * Format a double straight into the buffer.
+     * @see NumberWriter#writeDouble(double, Writer)
+     */
+    void writeDouble(double value) {
+        ensureCapacity( count + NumberWriter.MAX_LENGTH );
+        count = NumberWriter.formatDouble( value, buffer, count );
+    }
+
+    /**
+     * Format a float straight into the buffer.
+     * @see NumberWriter#writeFloat(float, Writer)
+     */
+    void writeFloat(float value) {
+        ensureCapacity( count + NumberWriter.MAX_LENGTH );
+        count = NumberWriter.formatFloat( value, buffer, count );
+    }
+
+    @Override
+    public StringBuilderWriter append(char ch) {
+        write( ch );
+        return this;
+    }
+
+    @Override
+    public StringBuilderWriter append(CharSequence chars) {
+        String string = String.valueOf( chars );
+        write( string, 0, string.length() );
+        return this;
+    }
+
+    @Override
+    public StringBuilderWriter append(CharSequence chars, int start, int end) {
+        if( chars == null ) {
+            chars = "null";
+        }
+        ensureCapacity( count + end - start );
+        for( int i = start; i < end; i++ ) {
+            buffer[count++] = chars.charAt( i );
+        }
+        return this;
+    }
+
+    /**
+     * @return The number of characters written.
+     */
+    public int length() {
+        return count;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return The characters written, as a String.
+     */
+    @Override
+    public String toString() {
+        return new String( buffer, 0, count );
+    }
+}
@@ -0,0 +1,398 @@
+package com.innerfunction.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A Writer which encodes its output as UTF-8 directly into byte chunks, without the char to byte
+ * conversion of an OutputStreamWriter.
+ * <p>
+ * A writer with an OutputStream or WritableByteChannel writes its chunks out when
+ * {@link #FLUSH_CHUNKS} of them are full, or when it is flushed; a GatheringByteChannel is
+ * written with a single gathering write of all the chunks. A writer without an output keeps all
+ * its chunks, which can be read with {@link #toByteArray()} or {@link #writeTo(ByteBuffer)}.
+ * <p>
+ * Runs of ASCII characters are copied straight into the current chunk. Surrogate pairs are
+ * encoded as four byte sequences, even when they are split between writes; unpaired surrogates
+ * are written as '?', as by String.getBytes().
+ * <p>
+ * Each thread has one cached writer, whose chunks are reused by the JSONValue.writeJSONBytes
+ * methods; see {@link #obtain()} and {@link #recycle()}.
+ */
+public final class UTF8Writer extends Writer {
+
+    /** The size of each chunk, in bytes. */
+    public static final int CHUNK_SIZE = 16 * 1024;
+    /** The number of full chunks which are collected before they are written to the output. */
+    public static final int FLUSH_CHUNKS = 8;
+
+    private static final ThreadLocal<UTF8Writer> threadLocalWriter = new ThreadLocal<UTF8Writer>() {
+        @Override
+        protected UTF8Writer initialValue() {
+            UTF8Writer writer = new UTF8Writer();
+            writer.cached = true;
+            return writer;
+        }
+    };
+
+    private OutputStream out;
+    private WritableByteChannel channel;
+    private byte[][] chunks = new byte[FLUSH_CHUNKS][];
+    /** Buffers wrapping each chunk, for writes to a channel. */
+    private ByteBuffer[] buffers;
+    /** The index of the current chunk. */
+    private int current;
+    private byte[] chunk;
+    /** The number of bytes in the current chunk. */
+    private int position;
+    /** A high surrogate waiting for the low surrogate of its pair, or 0. */
+    private char highSurrogate;
+    /** True if this is a thread's cached writer. */
+    private boolean cached;
+    /** True if this is a thread's cached writer, and it has been obtained but not recycled. */
+    private boolean inUse;
+
+    /**
+     * Make a writer which keeps its output.
+     */
+    public UTF8Writer() {
+        chunk = chunks[0] = new byte[CHUNK_SIZE];
+    }
+
+    /**
+     * Make a writer which writes its output to a stream.
+     */
+    public UTF8Writer(OutputStream out) {
+        this();
+        this.out = out;
+    }
+
+    /**
+     * Make a writer which writes its output to a channel.
+     */
+    public UTF8Writer(WritableByteChannel channel) {
+        this();
+        this.channel = channel;
+    }
+
+    /**
+     * Get a writer for the current thread, which keeps its output.
+     */
+    public static UTF8Writer obtain() {
+        UTF8Writer writer = threadLocalWriter.get();
+        if( writer.inUse ) {
+            return new UTF8Writer();
+        }
+        writer.inUse = true;
+        return writer;
+    }
+
+    /**
+     * Get a writer for the current thread, which writes its output to a stream.
+     */
+    public static UTF8Writer obtain(OutputStream out) {
+        UTF8Writer writer = obtain();
+        writer.out = out;
+        return writer;
+    }
+
+    /**
+     * Get a writer for the current thread, which writes its output to a channel.
+     */
+    public static UTF8Writer obtain(WritableByteChannel channel) {
+        UTF8Writer writer = obtain();
+        writer.channel = channel;
+        return writer;
+    }
+
+    /**
+     * Return a writer got from one of the obtain methods, so that it can be reused. Any output
+     * which hasn't been flushed is discarded, and the writer must not be used again.
+     */
+    public void recycle() {
+        if( cached ) {
+            out = null;
+            channel = null;
+            current = 0;
+            chunk = chunks[0];
+            position = 0;
+            highSurrogate = 0;
+            // Only keep as many chunks as a writer with an output uses.
+            for( int i = FLUSH_CHUNKS; i < chunks.length; i++ ) {
+                chunks[i] = null;
+            }
+            inUse = false;
+        }
+    }
+
+    /**
+     * @return The number of bytes written which haven't yet been written to the output.
+     */
+    public int size() {
+        return current * CHUNK_SIZE + position;
+    }
+
+    /**
+     * Move to the next chunk, once the current chunk is full.
+     */
+    private void nextChunk() throws IOException {
+        if( (out != null || channel != null) && current == FLUSH_CHUNKS - 1 ) {
+            drain();
+            return;
+        }
+        current++;
+        if( current == chunks.length ) {
+            byte[][] expanded = new byte[chunks.length * 2][];
+            System.arraycopy( chunks, 0, expanded, 0, chunks.length );
+            chunks = expanded;
+        }
+        if( chunks[current] == null ) {
+            chunks[current] = new byte[CHUNK_SIZE];
+        }
+        chunk = chunks[current];
+        position = 0;
+    }
+
+    /**
+     * Write the chunks to the output, and start again with the first chunk.
+     */
+    private void drain() throws IOException {
+        if( out != null ) {
+            for( int i = 0; i < current; i++ ) {
+                out.write( chunks[i], 0, CHUNK_SIZE );
+            }
+            out.write( chunk, 0, position );
+        }
+        else if( channel != null ) {
+            if( buffers == null ) {
+                buffers = new ByteBuffer[FLUSH_CHUNKS];
+            }
+            for( int i = 0; i <= current; i++ ) {
+                if( buffers[i] == null || buffers[i].array() != chunks[i] ) {
+                    buffers[i] = ByteBuffer.wrap( chunks[i] );
+                }
+                buffers[i].clear();
+            }
+            buffers[current].limit( position );
+            if( channel instanceof GatheringByteChannel ) {
+                GatheringByteChannel gatheringChannel = (GatheringByteChannel)channel;
+                while( buffers[current].hasRemaining() ) {
+                    gatheringChannel.write( buffers, 0, current + 1 );
+                }
+            }
+            else {
+                for( int i = 0; i <= current; i++ ) {
+                    while( buffers[i].hasRemaining() ) {
+                        channel.write( buffers[i] );
+                    }
+                }
+            }
+        }
+        else {
+            return;
+        }
+        current = 0;
+        chunk = chunks[0];
+        position = 0;
+    }
+
+    private void put(int b) throws IOException {
+        if( position == CHUNK_SIZE ) {
+            nextChunk();
+        }
+        chunk[position++] = (byte)b;
+    }
+
+    /**
+     * Encode a character which isn't part of a run of ASCII characters.
+     */
+    private void encode(char ch) throws IOException {
+        if( highSurrogate != 0 ) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if( Character.isLowSurrogate( ch ) ) {
+                int codePoint = Character.toCodePoint( high, ch );
+                put( 0xF0 | (codePoint >> 18) );
+                put( 0x80 | ((codePoint >> 12) & 0x3F) );
+                put( 0x80 | ((codePoint >> 6) & 0x3F) );
+                put( 0x80 | (codePoint & 0x3F) );
+                return;
+            }
+            put('?');
+        }
+        if( ch < 0x80 ) {
+            put( ch );
+        }
+        else if( ch < 0x800 ) {
+            put( 0xC0 | (ch >> 6) );
+            put( 0x80 | (ch & 0x3F) );
+        }
+        else if( Character.isHighSurrogate( ch ) ) {
+            highSurrogate = ch;
+        }
+        else if( Character.isLowSurrogate( ch ) ) {
+            put('?');
+        }
+        else {
+            put( 0xE0 | (ch >> 12) );
+            put( 0x80 | ((ch >> 6) & 0x3F) );
+            put( 0x80 | (ch & 0x3F) );
+        }
+    }
+
+    @Override
+    public void write(int ch) throws IOException {
+        encode( (char)ch );
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+        int i = offset, end = offset + length;
+        while( i < end ) {
+            if( highSurrogate != 0 ) {
+                encode( chars[i++] );
+                continue;
+            }
+            // Copy a run of ASCII characters, up to the end of the current chunk.
+            byte[] bytes = chunk;
+            int p = position;
+            int limit = Math.min( end, i + CHUNK_SIZE - p );
+            while( i < limit ) {
+                char ch = chars[i];
+                if( ch >= 0x80 ) {
+                    break;
+                }
+                bytes[p++] = (byte)ch;
+                i++;
+            }
+            position = p;
+            if( i < limit ) {
+                encode( chars[i++] );
+            }
+            else if( i < end ) {
+                nextChunk();
+            }
+        }
+    }
+
+    @Override
+    public void write(String string) throws IOException {
+        write( string, 0, string.length() );
+    }
+
+    @Override
+    public void write(String string, int offset, int length) throws IOException {
+        int i = offset, end = offset + length;
+        while( i < end ) {
+            if( highSurrogate != 0 ) {
+                encode( string.charAt( i++ ) );
+                continue;
+            }
+            // Copy a run of ASCII characters, up to the end of the current chunk.
+            byte[] bytes = chunk;
+            int p = position;
+            int limit = Math.min( end, i + CHUNK_SIZE - p );
+            while( i < limit ) {
+                char ch = string.charAt( i );
+                if( ch >= 0x80 ) {
+                    break;
+                }
+                bytes[p++] = (byte)ch;
+                i++;
+            }
+            position = p;
+            if( i < limit ) {
+                encode( string.charAt( i++ ) );
+            }
+            else if( i < end ) {
+                nextChunk();
+            }
+        }
+    }
+
+    @Override
+    public UTF8Writer append(CharSequence chars) throws IOException {
+        String string = String.valueOf( chars );
+        write( string, 0, string.length() );
+        return this;
+    }
+
+    /**
+     * Write '?' for a high surrogate at the end of the output.
+     */
+    private void endSurrogate() throws IOException {
+        if( highSurrogate != 0 ) {
+            highSurrogate = 0;
+            put('?');
+        }
+    }
+
+    /**
+     * Write any buffered bytes to the output, and flush it. A high surrogate at the end of the
+     * output is held back, until the next write or {@link #close()}.
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+        if( out != null ) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Complete the output, and write it to the stream or channel.
+     * The stream or channel is flushed but not closed.
+     */
+    public void finish() throws IOException {
+        endSurrogate();
+        flush();
+    }
+
+    /**
+     * Complete and flush the output, then close the stream or channel.
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+        if( out != null ) {
+            out.close();
+        }
+        else if( channel != null ) {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return The bytes written, for a writer without an output.
+     */
+    public byte[] toByteArray() throws IOException {
+        endSurrogate();
+        byte[] bytes = new byte[size()];
+        for( int i = 0; i < current; i++ ) {
+            System.arraycopy( chunks[i], 0, bytes, i * CHUNK_SIZE, CHUNK_SIZE );
+        }
+        System.arraycopy( chunk, 0, bytes, current * CHUNK_SIZE, position );
+        return bytes;
+    }
+
+    /**
+     * Put the bytes written by a writer without an output into a buffer.
+     * @throws BufferOverflowException If the buffer doesn't have room for all of the bytes; the
+     * buffer is left unchanged.
+     */
+    public void writeTo(ByteBuffer buffer) throws IOException {
+        endSurrogate();
+        if( buffer.remaining() < size() ) {
+            throw new BufferOverflowException();
+        }
+        for( int i = 0; i < current; i++ ) {
+            buffer.put( chunks[i], 0, CHUNK_SIZE );
+        }
+        buffer.put( chunk, 0, position );
+    }
+}
@@ -0,0 +1,370 @@
+package com.innerfunction.json.parser;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import com.innerfunction.json.JSONNumber;
+import com.innerfunction.json.JSONString;
+
+/**
+ * Base class for the hand written lexers.
+ * Subclasses scan the next token with {@link #next()}, which returns the token type and leaves
+ * the token's value in the lexer's fields, so that structural tokens and unread values don't
+ * need to be allocated. {@link #yylex()} adapts this to the token objects used by the parser's
+ * state machine.
+ *
+ * Token positions follow the conventions of {@link Yylex}, so that errors are reported at the
+ * same positions: the position of a string token is the position of its closing quote, and the
+ * position of the end of the input is the length of the input.
+ */
+abstract class AbstractLexer implements Lexer {
+
+    static final int T_EOF          = Yytoken.TYPE_EOF;
+    static final int T_LEFT_BRACE   = Yytoken.TYPE_LEFT_BRACE;
+    static final int T_RIGHT_BRACE  = Yytoken.TYPE_RIGHT_BRACE;
+    static final int T_LEFT_SQUARE  = Yytoken.TYPE_LEFT_SQUARE;
+    static final int T_RIGHT_SQUARE = Yytoken.TYPE_RIGHT_SQUARE;
+    static final int T_COMMA        = Yytoken.TYPE_COMMA;
+    static final int T_COLON        = Yytoken.TYPE_COLON;
+    static final int T_STRING       = 7;
+    static final int T_LONG         = 8;
+    static final int T_DOUBLE       = 9;
+    static final int T_TRUE         = 10;
+    static final int T_FALSE        = 11;
+    static final int T_NULL         = 12;
+    /** Returned instead of a token when pushed input ends within the token. */
+    static final int T_MORE         = -2;
+
+    /** Initial size of the string and number scratch buffers. */
+    static final int SCRATCH_SIZE = 256;
+    /** Largest scratch buffer retained between documents. */
+    static final int MAX_RETAINED_SCRATCH = 4096;
+
+    /**
+     * The characters denoted by the single character escape sequences, indexed by the character
+     * following the backslash; zero where there is no such escape.
+     */
+    static final char[] ESCAPES = new char[128];
+    /** Hex digit values, indexed by character; -1 for characters which aren't hex digits. */
+    static final byte[] HEX_VALUES = new byte[128];
+    static {
+        ESCAPES['"'] = '"';
+        ESCAPES['\\'] = '\\';
+        ESCAPES['/'] = '/';
+        ESCAPES['b'] = '\b';
+        ESCAPES['f'] = '\f';
+        ESCAPES['n'] = '\n';
+        ESCAPES['r'] = '\r';
+        ESCAPES['t'] = '\t';
+        Arrays.fill( HEX_VALUES, (byte)-1 );
+        for( int i = 0; i < 10; i++ ) {
+            HEX_VALUES['0' + i] = (byte)i;
+        }
+        for( int i = 0; i < 6; i++ ) {
+            HEX_VALUES['a' + i] = HEX_VALUES['A' + i] = (byte)(10 + i);
+        }
+    }
+
+    /** The position of the current token. */
+    int tokenPosition;
+    /**
+     * The characters of the current string token. These may be in the lexer's input buffer, so
+     * are only valid until the next token is scanned. When the token is left in place in retained
+     * input, stringChars is null, and stringSource is set instead.
+     */
+    char[] stringChars;
+    int stringOffset;
+    int stringLength;
+    /**
+     * The retained input containing the current string token, if the token is left in place; a
+     * byte array of ASCII characters, or a String. stringOffset is the token's offset within it.
+     */
+    Object stringSource;
+    /** The value of the current long token. */
+    long longValue;
+    /** The value of the current double token. */
+    double doubleValue;
+    /**
+     * The value of the current number token, if it is out of range of a long or double and big
+     * numbers are enabled; otherwise null.
+     */
+    Number bigValue;
+    /**
+     * When set, string and number tokens are scanned without decoding their values; e.g. when
+     * a value is being skipped. Integers which overflow a long aren't reported in this mode.
+     */
+    boolean skipValues;
+    /**
+     * When set, number tokens aren't decoded; their values are JSONNumbers holding the number's
+     * text, and longValue and doubleValue aren't set. Integers which overflow a long aren't
+     * reported in this mode.
+     */
+    boolean lazyNumbers;
+    /**
+     * When set, integers which overflow a long are reported as BigIntegers, and decimals out of
+     * the range of a double as BigDecimals, in bigValue.
+     */
+    boolean bigNumbers;
+    /**
+     * When set, string tokens without escapes which can be read directly from retained input are
+     * left in place, in stringSource, and their values are JSONString views of the input.
+     */
+    boolean stringViews;
+    /** Tables which canonicalize the values of object keys and of string values; or null. */
+    StringTable keyTable;
+    StringTable valueTable;
+    /** True if the next string token scanned through yylex() is expected to be a key. */
+    private boolean keyExpected;
+
+    /** Scratch buffer for decoded string characters. */
+    char[] chars = new char[SCRATCH_SIZE];
+    int charsLength;
+    /** Scratch buffer for the characters of a number. */
+    char[] digits = new char[32];
+    int digitsLength;
+
+    /**
+     * Scan the next token.
+     * @return The token type, one of the T_* constants.
+     */
+    abstract int next() throws IOException, ParseException;
+
+    /**
+     * Skip the rest of an object or array, from the token after its opening bracket, by counting
+     * brackets. Strings and numbers are scanned without decoding their values, so the skipped
+     * contents are only checked for balanced brackets.
+     * @return false if the end of the input is reached first.
+     */
+    final boolean skipContainer() throws IOException, ParseException {
+        boolean skipping = skipValues;
+        skipValues = true;
+        try {
+            int count = 1;
+            while( count > 0 ) {
+                switch( next() ) {
+                case T_LEFT_BRACE:
+                case T_LEFT_SQUARE:
+                    count++;
+                    break;
+                case T_RIGHT_BRACE:
+                case T_RIGHT_SQUARE:
+                    count--;
+                    break;
+                case T_EOF:
+                    return false;
+                }
+            }
+            return true;
+        }
+        finally {
+            skipValues = skipping;
+        }
+    }
+
+    /**
+     * @return The value of the current string token.
+     */
+    String stringValue() {
+        if( stringSource instanceof String ) {
+            return ((String)stringSource).substring( stringOffset, stringOffset + stringLength );
+        }
+        if( stringSource != null ) {
+            widenString();
+        }
+        return new String( stringChars, stringOffset, stringLength );
+    }
+
+    /**
+     * @return The value of the current string token, taken from a table.
+     */
+    final String stringValue(StringTable table) {
+        if( stringSource instanceof String ) {
+            return table.get( (String)stringSource, stringOffset, stringLength );
+        }
+        if( stringSource != null ) {
+            widenString();
+        }
+        return table.get( stringChars, stringOffset, stringLength );
+    }
+
+    /**
+     * @return The value of the current string token, as an object key.
+     */
+    final String keyValue() {
+        return keyTable != null ? stringValue( keyTable ) : stringValue();
+    }
+
+    /**
+     * Copy a string token of ASCII bytes which was left in place into the scratch buffer.
+     */
+    private void widenString() {
+        byte[] b = (byte[])stringSource;
+        charsLength = 0;
+        growChars( stringLength );
+        char[] c = chars;
+        for( int i = 0, p = stringOffset; i < stringLength; i++ ) {
+            c[i] = (char)b[p++];
+        }
+        stringSource = null;
+        stringChars = c;
+        stringOffset = 0;
+    }
+
+    /**
+     * @return The value of the current string token; a JSONString if the token is in place.
+     */
+    Object stringToken() {
+        if( valueTable != null ) {
+            return stringValue( valueTable );
+        }
+        if( stringSource instanceof String ) {
+            return new JSONString( (String)stringSource, stringOffset, stringLength );
+        }
+        if( stringSource != null ) {
+            return new JSONString( (byte[])stringSource, stringOffset, stringLength );
+        }
+        return new String( stringChars, stringOffset, stringLength );
+    }
+
+    /**
+     * Get the value of the current token, as it would be reported by {@link Yylex}.
+     * @param type The type of the current token.
+     */
+    Object value(int type) {
+        switch( type ) {
+        case T_STRING:  return stringToken();
+        case T_LONG:    return lazyNumbers ? new JSONNumber( digits, 0, digitsLength ) : bigValue != null ? bigValue : Long.valueOf( longValue );
+        case T_DOUBLE:  return lazyNumbers ? new JSONNumber( digits, 0, digitsLength ) : bigValue != null ? bigValue : Double.valueOf( doubleValue );
+        case T_TRUE:    return Boolean.TRUE;
+        case T_FALSE:   return Boolean.FALSE;
+        default:        return null;
+        }
+    }
+
+    @Override
+    public Yytoken yylex() throws IOException, ParseException {
+        int type = next();
+        if( type == T_EOF ) {
+            return null;
+        }
+        if( type >= T_STRING ) {
+            return new Yytoken( Yytoken.TYPE_VALUE, type == T_STRING && keyExpected ? keyValue() : value( type ) );
+        }
+        return new Yytoken( type, null );
+    }
+
+    @Override
+    public int getPosition() {
+        return tokenPosition;
+    }
+
+    @Override
+    public void setKeyExpected(boolean keyExpected) {
+        this.keyExpected = keyExpected;
+    }
+
+    @Override
+    public void yyrelease() {
+        stringChars = null;
+        stringSource = null;
+        if( chars.length > MAX_RETAINED_SCRATCH ) {
+            chars = new char[SCRATCH_SIZE];
+        }
+    }
+
+    /**
+     * Append a character to the string scratch buffer.
+     */
+    final void appendChar(char ch) {
+        if( charsLength == chars.length ) {
+            growChars( 1 );
+        }
+        chars[charsLength++] = ch;
+    }
+
+    /**
+     * Ensure the string scratch buffer has room for at least n more characters.
+     */
+    final void growChars(int n) {
+        int required = charsLength + n;
+        if( required > chars.length ) {
+            char[] newChars = new char[Math.max( required, chars.length * 2 )];
+            System.arraycopy( chars, 0, newChars, 0, charsLength );
+            chars = newChars;
+        }
+    }
+
+    /**
+     * Append a character to the number scratch buffer.
+     */
+    final void appendDigit(char ch) {
+        if( digitsLength == digits.length ) {
+            char[] newDigits = new char[digits.length * 2];
+            System.arraycopy( digits, 0, newDigits, 0, digitsLength );
+            digits = newDigits;
+        }
+        digits[digitsLength++] = ch;
+    }
+
+    /**
+     * Set the value of the current number token from the number scratch buffer.
+     * Integers are parsed with the same range as Long.valueOf(String), which throws a
+     * NumberFormatException on overflow unless big numbers are enabled.
+     * @param isDouble Whether the number has a fraction or an exponent.
+     * @return The token type.
+     * @see NumberDecoder
+     */
+    final int numberToken(boolean isDouble) {
+        if( lazyNumbers ) {
+            return isDouble ? T_DOUBLE : T_LONG;
+        }
+        bigValue = null;
+        if( isDouble ) {
+            doubleValue = NumberDecoder.parseDouble( digits, 0, digitsLength );
+            if( bigNumbers && NumberDecoder.isOutOfRange( doubleValue, digits, 0, digitsLength ) ) {
+                bigValue = new BigDecimal( new String( digits, 0, digitsLength ) );
+            }
+            return T_DOUBLE;
+        }
+        if( bigNumbers && digitsLength >= 19 && !NumberDecoder.isLong( digits, 0, digitsLength ) ) {
+            bigValue = new BigInteger( new String( digits, 0, digitsLength ) );
+            return T_LONG;
+        }
+        longValue = NumberDecoder.parseLong( digits, 0, digitsLength );
+        return T_LONG;
+    }
+
+    /**
+     * Create the exception reported for a character which can't start a token.
+     */
+    final ParseException unexpectedChar(int position, char ch) {
+        return new ParseException( position, ParseException.ERROR_UNEXPECTED_CHAR, Character.valueOf( ch ) );
+    }
+
+    static boolean isDigit(int ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    /**
+     * @return The character denoted by a single character escape sequence, or zero if ch doesn't
+     * complete such a sequence.
+     */
+    static char escapeValue(int ch) {
+        return ch >= 0 && ch < 128 ? ESCAPES[ch] : 0;
+    }
+
+    static int hexValue(int ch) {
+        return ch >= 0 && ch < 128 ? HEX_VALUES[ch] : -1;
+    }
+
+    /**
+     * Decode the four hex digits of a \\u escape sequence.
+     * @return The character code, or -1 if any of the characters isn't a hex digit.
+     */
+    static int hexValue(int c1, int c2, int c3, int c4) {
+        // A -1 for any digit sets the sign bit of the result.
+        return (hexValue( c1 ) << 12) | (hexValue( c2 ) << 8) | (hexValue( c3 ) << 4) | hexValue( c4 );
+    }
+}
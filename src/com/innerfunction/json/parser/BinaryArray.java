@@ -0,0 +1,41 @@
+package com.innerfunction.json.parser;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A read-only view of an array in a {@link JSONBinary} document.
+ * Elements are found through the array's offset table, and decoded each time they are read.
+ */
+class BinaryArray extends JSONArrayView {
+
+    private final JSONBinary document;
+    /** The offset of the array in the document. */
+    private final int position;
+
+    BinaryArray(JSONBinary document, int position) {
+        this.document = document;
+        this.position = position;
+    }
+
+    @Override
+    public int size() {
+        return document.count( position );
+    }
+
+    @Override
+    public Object get(int idx) {
+        if( idx < 0 || idx >= size() ) {
+            throw new IndexOutOfBoundsException("Index: "+idx+", Size: "+size());
+        }
+        return document.value( document.elementAt( position, idx ) );
+    }
+
+    /**
+     * Write the array as JSON text, directly from the document.
+     */
+    @Override
+    public void writeJSONString(Writer out) throws IOException {
+        document.write( position, out );
+    }
+}
@@ -0,0 +1,148 @@
+package com.innerfunction.json.parser;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only view of an object in a {@link JSONBinary} document.
+ * Keys are found by a binary search of the object's sorted key table, and values are decoded
+ * each time they are read.
+ */
+@SuppressWarnings("rawtypes")
+class BinaryObject extends JSONObjectView {
+
+    private final JSONBinary document;
+    /** The offset of the object in the document. */
+    private final int position;
+
+    BinaryObject(JSONBinary document, int position) {
+        this.document = document;
+        this.position = position;
+    }
+
+    private int find(Object key) {
+        return key instanceof String ? document.find( position, (String)key ) : -1;
+    }
+
+    @Override
+    public int size() {
+        return document.count( position );
+    }
+
+    @Override
+    public Object get(Object key) {
+        int n = find( key );
+        return n < 0 ? null : document.value( document.valueAt( position, n ) );
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find( key ) >= 0;
+    }
+
+    @Override
+    public Set keySet() {
+        return new AbstractSet() {
+            @Override
+            public Iterator iterator() {
+                return new EntryIterator() {
+                    @Override
+                    public Object next() {
+                        return document.string( document.keyAt( position, nextEntry() ) );
+                    }
+                };
+            }
+            @Override
+            public int size() {
+                return BinaryObject.this.size();
+            }
+            @Override
+            public boolean contains(Object key) {
+                return containsKey( key );
+            }
+        };
+    }
+
+    @Override
+    public Collection values() {
+        return new AbstractCollection() {
+            @Override
+            public Iterator iterator() {
+                return new EntryIterator() {
+                    @Override
+                    public Object next() {
+                        return document.value( document.valueAt( position, nextEntry() ) );
+                    }
+                };
+            }
+            @Override
+            public int size() {
+                return BinaryObject.this.size();
+            }
+        };
+    }
+
+    @Override
+    public Set entrySet() {
+        return new AbstractSet() {
+            @Override
+            public Iterator iterator() {
+                return new EntryIterator() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Object next() {
+                        int n = nextEntry();
+                        return new AbstractMap.SimpleImmutableEntry(
+                            document.string( document.keyAt( position, n ) ),
+                            document.value( document.valueAt( position, n ) ) );
+                    }
+                };
+            }
+            @Override
+            public int size() {
+                return BinaryObject.this.size();
+            }
+        };
+    }
+
+    /**
+     * Write the object as JSON text, directly from the document.
+     */
+    @Override
+    public void writeJSONString(Writer out) throws IOException {
+        document.write( position, out );
+    }
+
+    /**
+     * Iterates over the positions of the object's entries in its key table.
+     */
+    private abstract class EntryIterator implements Iterator {
+
+        private final int size = size();
+        private int next;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        int nextEntry() {
+            if( next == size ) {
+                throw new NoSuchElementException();
+            }
+            return next++;
+        }
+
+        @Override
+        public void remove() {
+            throw readOnly();
+        }
+    }
+}
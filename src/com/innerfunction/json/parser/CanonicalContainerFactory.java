@@ -0,0 +1,23 @@
+package com.innerfunction.json.parser;
+
+/**
+ * A container factory which also provides the tables used to canonicalize the keys and string
+ * values of the containers it creates.
+ *
+ * When the factory passed to one of the JSONParser parse methods implements this interface, its
+ * tables are used for that document in place of the parser's own; see
+ * {@link JSONParser#setKeyTable(StringTable)}. Tables shared in this way may be used by several
+ * parsers at once, e.g. by the tasks of a parallel parse.
+ */
+public interface CanonicalContainerFactory extends ContainerFactory {
+
+    /**
+     * @return The table for object keys, or null if keys aren't canonicalized.
+     */
+    StringTable getKeyTable();
+
+    /**
+     * @return The table for string values, or null if string values aren't canonicalized.
+     */
+    StringTable getValueTable();
+}
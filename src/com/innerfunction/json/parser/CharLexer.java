@@ -0,0 +1,387 @@
+package com.innerfunction.json.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Hand written lexer for JSON text read from a string or a character reader.
+ * Dispatches directly on the next character, and follows the grammar and token positions
+ * of {@link Yylex}. Input is read in blocks into a buffer which is reused between documents.
+ */
+class CharLexer extends AbstractLexer {
+
+    /** Size of the read buffer. */
+    static final int BUFFER_SIZE = 8192;
+
+    private static final char[] TRUE = { 't', 'r', 'u', 'e' };
+    private static final char[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+    private static final char[] NULL = { 'n', 'u', 'l', 'l' };
+
+    /** The characters being scanned. */
+    private char[] buf = new char[BUFFER_SIZE];
+    /** The current scan position within buf. */
+    private int pos;
+    /** The end of the valid characters within buf. */
+    private int limit;
+    /** The input position of buf[0]. */
+    private int base;
+    /** Input sources. */
+    private Reader in;
+    private String str;
+    /** The read position within str. */
+    private int strPos;
+    /** The string being scanned, if any; unlike str, kept until the lexer is reset. */
+    private String source;
+
+    /**
+     * Reset the lexer to scan a character reader.
+     */
+    void reset(Reader in) {
+        resetInput();
+        this.in = in;
+    }
+
+    /**
+     * Reset the lexer to scan a string.
+     */
+    void reset(String s) {
+        resetInput();
+        this.str = s;
+        this.source = s;
+    }
+
+    private void resetInput() {
+        if( buf == null || buf.length > BUFFER_SIZE ) {
+            buf = new char[BUFFER_SIZE];
+        }
+        in = null;
+        str = null;
+        source = null;
+        strPos = 0;
+        pos = limit = base = 0;
+        tokenPosition = 0;
+    }
+
+    @Override
+    public void yyrelease() {
+        super.yyrelease();
+        if( buf.length > BUFFER_SIZE ) {
+            buf = new char[BUFFER_SIZE];
+        }
+        in = null;
+        str = null;
+        source = null;
+        pos = limit = 0;
+    }
+
+    /**
+     * Read more input into the buffer, after the characters from the current position.
+     * @return false if no more input is available.
+     */
+    private boolean fill() throws IOException {
+        if( in == null && str == null ) {
+            return false;
+        }
+        // Move unread characters to the start of the buffer.
+        int remaining = limit - pos;
+        if( pos > 0 ) {
+            System.arraycopy( buf, pos, buf, 0, remaining );
+            base += pos;
+            pos = 0;
+            limit = remaining;
+        }
+        if( limit == buf.length ) {
+            char[] newBuffer = new char[buf.length * 2];
+            System.arraycopy( buf, 0, newBuffer, 0, limit );
+            buf = newBuffer;
+        }
+        int count;
+        if( in != null ) {
+            do {
+                count = in.read( buf, limit, buf.length - limit );
+            }
+            while( count == 0 );
+        }
+        else {
+            count = Math.min( str.length() - strPos, buf.length - limit );
+            if( count == 0 ) {
+                count = -1;
+            }
+            else {
+                str.getChars( strPos, strPos + count, buf, limit );
+                strPos += count;
+            }
+        }
+        if( count < 0 ) {
+            in = null;
+            str = null;
+            return false;
+        }
+        limit += count;
+        return true;
+    }
+
+    /**
+     * Ensure that at least n characters are available from the current position.
+     * @return false if the end of the input is reached first.
+     */
+    private boolean ensure(int n) throws IOException {
+        while( limit - pos < n ) {
+            if( !fill() ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    int next() throws IOException, ParseException {
+        while( true ) {
+            if( pos == limit && !fill() ) {
+                tokenPosition = base + pos;
+                return T_EOF;
+            }
+            switch( buf[pos] ) {
+            case ' ': case '\t': case '\n': case '\r':
+                pos++;
+                continue;
+            case '{':
+                tokenPosition = base + pos++;
+                return T_LEFT_BRACE;
+            case '}':
+                tokenPosition = base + pos++;
+                return T_RIGHT_BRACE;
+            case '[':
+                tokenPosition = base + pos++;
+                return T_LEFT_SQUARE;
+            case ']':
+                tokenPosition = base + pos++;
+                return T_RIGHT_SQUARE;
+            case ',':
+                tokenPosition = base + pos++;
+                return T_COMMA;
+            case ':':
+                tokenPosition = base + pos++;
+                return T_COLON;
+            case '"':
+                pos++;
+                return scanString();
+            case '-': case '0': case '1': case '2': case '3': case '4':
+            case '5': case '6': case '7': case '8': case '9':
+                return scanNumber();
+            case 't':
+                return scanLiteral( TRUE, T_TRUE );
+            case 'f':
+                return scanLiteral( FALSE, T_FALSE );
+            case 'n':
+                return scanLiteral( NULL, T_NULL );
+            default:
+                throw unexpectedChar( base + pos, buf[pos] );
+            }
+        }
+    }
+
+    /**
+     * Scan a string, from the character after its opening quote.
+     * Runs of characters between escapes are copied in bulk. A string which is contained within
+     * the buffer and has no escapes isn't copied at all; the token's value refers to the buffer.
+     */
+    private int scanString() throws IOException {
+        stringSource = null;
+        if( skipValues ) {
+            return skipString();
+        }
+        charsLength = 0;
+        // The input position of the string's first character, and whether it has any escapes.
+        int first = base + pos;
+        boolean escaped = false;
+        while( true ) {
+            // Copy the run of characters up to the next quote or escape.
+            char[] b = buf;
+            int start = pos, end = limit, p = start;
+            while( p < end ) {
+                char ch = b[p];
+                if( ch == '"' || ch == '\\' ) {
+                    break;
+                }
+                p++;
+            }
+            if( p < end && b[p] == '"' && charsLength == 0 ) {
+                // No escapes; the value can be taken directly from the buffer.
+                tokenPosition = base + p;
+                pos = p + 1;
+                stringLength = p - start;
+                if( stringViews && source != null ) {
+                    // Leave the string in place in the input string.
+                    stringChars = null;
+                    stringSource = source;
+                    stringOffset = base + start;
+                    return T_STRING;
+                }
+                stringChars = b;
+                stringOffset = start;
+                return T_STRING;
+            }
+            if( p > start ) {
+                growChars( p - start );
+                System.arraycopy( b, start, chars, charsLength, p - start );
+                charsLength += p - start;
+                pos = p;
+            }
+            if( p == end ) {
+                if( !fill() ) {
+                    // Unterminated string; report the end of the input.
+                    tokenPosition = base + pos;
+                    return T_EOF;
+                }
+                continue;
+            }
+            if( b[p] == '"' ) {
+                tokenPosition = base + pos++;
+                stringLength = charsLength;
+                if( !escaped && stringViews && source != null ) {
+                    // The string spans more than one buffer, but can still be left in place.
+                    stringChars = null;
+                    stringSource = source;
+                    stringOffset = first;
+                    return T_STRING;
+                }
+                stringChars = chars;
+                stringOffset = 0;
+                return T_STRING;
+            }
+            escaped = true;
+            if( !scanEscape() ) {
+                tokenPosition = base + pos;
+                return T_EOF;
+            }
+        }
+    }
+
+    /**
+     * Find the end of a string, from the character after its opening quote, without decoding it.
+     * A backslash always escapes the character following it, as far as finding the closing quote
+     * is concerned; so this ends the string at the same quote as scanString.
+     */
+    private int skipString() throws IOException {
+        while( true ) {
+            char[] b = buf;
+            int p = pos, end = limit;
+            while( p < end ) {
+                char ch = b[p];
+                if( ch == '"' ) {
+                    tokenPosition = base + p;
+                    pos = p + 1;
+                    stringChars = chars;
+                    stringOffset = stringLength = 0;
+                    return T_STRING;
+                }
+                if( ch == '\\' ) {
+                    if( p + 1 == end ) {
+                        break;
+                    }
+                    p++;
+                }
+                p++;
+            }
+            pos = p;
+            if( !fill() ) {
+                pos = limit;
+                tokenPosition = base + pos;
+                return T_EOF;
+            }
+        }
+    }
+
+    /**
+     * Decode an escape sequence, from its backslash. As with Yylex, a backslash which doesn't
+     * start a valid escape sequence is taken literally.
+     * @return false if the end of the input is reached first.
+     */
+    private boolean scanEscape() throws IOException {
+        if( !ensure( 2 ) ) {
+            pos = limit;
+            return false;
+        }
+        char ch = escapeValue( buf[pos + 1] );
+        if( ch != 0 ) {
+            appendChar( ch );
+            pos += 2;
+            return true;
+        }
+        if( buf[pos + 1] == 'u' && ensure( 6 ) ) {
+            int value = hexValue( buf[pos + 2], buf[pos + 3], buf[pos + 4], buf[pos + 5] );
+            if( value >= 0 ) {
+                appendChar( (char)value );
+                pos += 6;
+                return true;
+            }
+        }
+        appendChar( '\\' );
+        pos++;
+        return true;
+    }
+
+    /**
+     * Scan a number, using the same grammar as Yylex.
+     * @see Utf8Lexer
+     */
+    private int scanNumber() throws IOException, ParseException {
+        tokenPosition = base + pos;
+        digitsLength = 0;
+        if( buf[pos] == '-' ) {
+            if( !ensure( 2 ) || !isDigit( buf[pos + 1] ) ) {
+                throw unexpectedChar( base + pos, '-' );
+            }
+            appendDigit( '-' );
+            pos++;
+        }
+        scanDigits();
+        boolean isDouble = false;
+        if( ensure( 2 ) && buf[pos] == '.' && isDigit( buf[pos + 1] ) ) {
+            appendDigit( '.' );
+            pos++;
+            scanDigits();
+            isDouble = true;
+        }
+        if( ensure( 2 ) && (buf[pos] == 'e' || buf[pos] == 'E') ) {
+            int signLength = (buf[pos + 1] == '+' || buf[pos + 1] == '-') ? 1 : 0;
+            if( ensure( signLength + 2 ) && isDigit( buf[pos + signLength + 1] ) ) {
+                for( int i = 0; i <= signLength; i++ ) {
+                    appendDigit( buf[pos++] );
+                }
+                scanDigits();
+                isDouble = true;
+            }
+        }
+        if( skipValues ) {
+            return isDouble ? T_DOUBLE : T_LONG;
+        }
+        return numberToken( isDouble );
+    }
+
+    private void scanDigits() throws IOException {
+        while( (pos < limit || fill()) && isDigit( buf[pos] ) ) {
+            appendDigit( buf[pos++] );
+        }
+    }
+
+    /**
+     * Scan a literal. An incomplete literal is reported as an unexpected character at its start.
+     */
+    private int scanLiteral(char[] literal, int type) throws IOException, ParseException {
+        if( ensure( literal.length ) ) {
+            int p = pos;
+            int i = 1;
+            while( i < literal.length && buf[p + i] == literal[i] ) {
+                i++;
+            }
+            if( i == literal.length ) {
+                tokenPosition = base + pos;
+                pos += literal.length;
+                return type;
+            }
+        }
+        throw unexpectedChar( base + pos, buf[pos] );
+    }
+}
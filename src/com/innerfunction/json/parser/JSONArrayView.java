@@ -0,0 +1,304 @@
+package com.innerfunction.json.parser;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.AbstractList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import ns.foundation.NSArray;
+import ns.foundation.NSKeyValueCodingAdditions;
+import ns.foundation.NSKeyValueObserving;
+import ns.foundation.NSObserver;
+import ns.foundation.NSSet;
+import ns.foundation._NSFoundationCollection.NullHandling;
+
+import com.innerfunction.json.JSONArray;
+import com.innerfunction.json.JSONAware;
+import com.innerfunction.json.JSONObject;
+import com.innerfunction.json.JSONStreamAware;
+import com.innerfunction.json.JSONValue;
+import com.innerfunction.json.StringBuilderWriter;
+
+/**
+ * A read-only JSON array which is a view of a document held in another form, such as a
+ * {@link JSONTape}. Subclasses read the document in get() and size(); all the other List
+ * methods, including those added by later versions of Java, are implemented by AbstractList in
+ * terms of them.
+ *
+ * As for a {@link JSONObjectView}, getJSONObject() and getJSONArray() return a copy of a nested
+ * view, methods which would change the view throw UnsupportedOperationException, and observers
+ * are never notified.
+ */
+@SuppressWarnings("rawtypes")
+abstract class JSONArrayView extends AbstractList implements RandomAccess, JSONAware, JSONStreamAware {
+
+    @Override
+    public Object get(String name) {
+        try {
+            int idx = Integer.parseInt( name );
+            if( idx >= 0 && idx < size() ) {
+                return get( idx );
+            }
+            return null;
+        }
+        catch(NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public JSONValue.Type getJSONType(String name) {
+        return JSONValue.typeOfValue( get( name ) );
+    }
+
+    @Override
+    public JSONValue.Type resolveJSONType(String path) {
+        return JSONValue.typeOfValue( valueForKeyPath( path ) );
+    }
+
+    @Override
+    public Boolean getBoolean(String name) {
+        Object value = get( name );
+        return value instanceof Boolean ? (Boolean)value : null;
+    }
+
+    public Boolean getBoolean(int idx) {
+        Object value = get( idx );
+        return value instanceof Boolean ? (Boolean)value : null;
+    }
+
+    @Override
+    public Number getNumber(String name) {
+        Object value = get( name );
+        return value instanceof Number ? (Number)value : null;
+    }
+
+    public Number getNumber(int idx) {
+        Object value = get( idx );
+        return value instanceof Number ? (Number)value : null;
+    }
+
+    @Override
+    public String getString(String name) {
+        return JSONValue.stringValue( get( name ) );
+    }
+
+    public String getString(int idx) {
+        return JSONValue.stringValue( get( idx ) );
+    }
+
+    /**
+     * @return A copy of the named object, or null if the element isn't an object.
+     */
+    @Override
+    public JSONObject getJSONObject(String name) {
+        Object value = get( name );
+        return value instanceof JSONObjectView ? (JSONObject)JSONObjectView.copy( value ) : null;
+    }
+
+    /**
+     * @return A copy of the object at an index, or null if the element isn't an object.
+     */
+    public JSONObject getJSONObject(int idx) {
+        Object value = get( idx );
+        return value instanceof JSONObjectView ? (JSONObject)JSONObjectView.copy( value ) : null;
+    }
+
+    /**
+     * @return A copy of the named array, or null if the element isn't an array.
+     */
+    @Override
+    public JSONArray getJSONArray(String name) {
+        Object value = get( name );
+        return value instanceof JSONArrayView ? (JSONArray)JSONObjectView.copy( value ) : null;
+    }
+
+    /**
+     * @return A copy of the array at an index, or null if the element isn't an array.
+     */
+    public JSONArray getJSONArray(int idx) {
+        Object value = get( idx );
+        return value instanceof JSONArrayView ? (JSONArray)JSONObjectView.copy( value ) : null;
+    }
+
+    @Override
+    public Object resolve(String path) {
+        return valueForKeyPath( path );
+    }
+
+    @Override
+    public Boolean resolveBoolean(String path) {
+        Object value = valueForKeyPath( path );
+        return value instanceof Boolean ? (Boolean)value : null;
+    }
+
+    @Override
+    public Number resolveNumber(String path) {
+        Object value = valueForKeyPath( path );
+        return value instanceof Number ? (Number)value : null;
+    }
+
+    @Override
+    public String resolveString(String path) {
+        return JSONValue.stringValue( valueForKeyPath( path ) );
+    }
+
+    /**
+     * @return A copy of the referenced object, or null if the value isn't an object.
+     */
+    @Override
+    public JSONObject resolveJSONObject(String path) {
+        Object value = valueForKeyPath( path );
+        return value instanceof JSONObjectView ? (JSONObject)JSONObjectView.copy( value ) : null;
+    }
+
+    /**
+     * @return A copy of the referenced array, or null if the value isn't an array.
+     */
+    @Override
+    public JSONArray resolveJSONArray(String path) {
+        Object value = valueForKeyPath( path );
+        return value instanceof JSONArrayView ? (JSONArray)JSONObjectView.copy( value ) : null;
+    }
+
+    @Override
+    public void set(String name, Object value) {
+        throw JSONObjectView.readOnly();
+    }
+
+    @Override
+    public void setPath(String path, Object value) {
+        throw JSONObjectView.readOnly();
+    }
+
+    @Override
+    public void removePath(String path) {
+        throw JSONObjectView.readOnly();
+    }
+
+    /**
+     * Get the value for a key path. A key path which starts with an NSArray operator, such as
+     * @sum.price or @count, is computed by the operator over the array's elements, skipping any
+     * null elements.
+     */
+    @Override
+    public Object valueForKeyPath(String keyPath) {
+        if( keyPath != null && keyPath.startsWith("@") ) {
+            return valueForOperatorKeyPath( keyPath );
+        }
+        Object flattenedKeyPresent = get( keyPath );
+        if( flattenedKeyPresent != null ) {
+            return flattenedKeyPresent;
+        }
+        return NSKeyValueCodingAdditions.DefaultImplementation.valueForKeyPath( this, keyPath );
+    }
+
+    /**
+     * @return The value of an operator key path, or null if there is no operator with its name.
+     */
+    @SuppressWarnings("unchecked")
+    private Object valueForOperatorKeyPath(String keyPath) {
+        int idx = keyPath.indexOf('.');
+        String operatorName = idx < 0 ? keyPath.substring( 1 ) : keyPath.substring( 1, idx );
+        String operatorPath = idx < 0 ? "" : keyPath.substring( idx + 1 );
+        NSArray.Operator operator = NSArray.operatorForKey( operatorName );
+        if( operator == null ) {
+            return null;
+        }
+        return operator.compute( NSArray.asNSArray( this, NullHandling.CheckAndSkip ), operatorPath );
+    }
+
+    @Override
+    public void takeValueForKeyPath(Object value, String keyPath) {
+        throw JSONObjectView.readOnly();
+    }
+
+    @Override
+    public Object valueForKey(String key) {
+        Object value = get( key );
+        if( value == null && key != null ) {
+            if("allValues".equals( key ) ) {
+                value = this;
+            }
+            else if("allKeys".equals( key ) ) {
+                Set<Integer> keySet = new HashSet<Integer>();
+                for( int i = 0; i < size(); i++ ) {
+                    keySet.add( i );
+                }
+                value = keySet;
+            }
+            else if("count".equals( key ) ) {
+                value = size();
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public void takeValueForKey(Object value, String key) {
+        throw JSONObjectView.readOnly();
+    }
+
+    @Override
+    public boolean automaticallyNotifiesObserversForKey(String key) {
+        return false;
+    }
+
+    @Override
+    public void addObserverForKeyPath(NSObserver observer, String keyPath, EnumSet<NSKeyValueObserving.Options> options, Object context) {
+    }
+
+    @Override
+    public void removeObserverForKeyPath(NSObserver observer, String keyPath) {
+    }
+
+    @Override
+    public void willChangeValueForKey(String key) {
+    }
+
+    @Override
+    public void didChangeValueForKey(String key) {
+    }
+
+    @Override
+    public void willChangeValuesAtIndexForKey(EnumSet<NSKeyValueObserving.Changes> change, NSSet<Integer> indexes, String key) {
+    }
+
+    @Override
+    public void didChangeValuesAtIndexForKey(EnumSet<NSKeyValueObserving.Changes> change, NSSet<Integer> indexes, String key) {
+    }
+
+    @Override
+    public NSSet<String> keyPathsForValuesAffectingValueForKey(String key) {
+        return NSKeyValueObserving.DefaultImplementation.keyPathsForValuesAffectingValueForKey( this, key );
+    }
+
+    @Override
+    public void writeJSONString(Writer out) throws IOException {
+        JSONArray.writeJSONString( this, out );
+    }
+
+    @Override
+    public String toJSONString() {
+        StringBuilderWriter writer = StringBuilderWriter.obtain();
+        try {
+            writeJSONString( writer );
+            return writer.toString();
+        }
+        catch(IOException e) {
+            // This should never happen for a StringBuilderWriter
+            throw new RuntimeException( e );
+        }
+        finally {
+            writer.recycle();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toJSONString();
+    }
+}
@@ -0,0 +1,667 @@
+package com.innerfunction.json.parser;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+
+import com.innerfunction.json.JSONNumber;
+import com.innerfunction.json.JSONString;
+import com.innerfunction.json.JSONValue;
+
+/**
+ * A JSON document encoded in a compact binary form, held in a ByteBuffer; usually a direct
+ * buffer, so that the document is stored outside of the Java heap.
+ *
+ * Each value is a one byte type tag followed by its data: numbers are stored as 4 or 8 byte
+ * integers or as 8 byte doubles, and strings as their length followed by their UTF-8 encoding.
+ * An object is stored as its number of entries followed by a table with the offsets of each
+ * key and value, sorted by key, so that a key is found by a binary search; an array is stored
+ * as its number of elements followed by a table with the offset of each element. The keys and
+ * values follow their container's table.
+ *
+ * The document's objects and arrays are read through read-only JSONAware Map and List views
+ * of the buffer, which hold no more than the offset of their container. Values are decoded
+ * from the buffer each time they are read, and a key path is resolved by following each key's
+ * offset, so a document in a cache only takes heap memory while it's being read. A view's
+ * entries are iterated in the order of their keys' UTF-8 encoding, and a view is written as
+ * JSON text directly from the buffer. Views throw UnsupportedOperationException when they
+ * would be modified, and getJSONObject() and getJSONArray() return a copy of a nested view;
+ * copy a view into a JSONObject or JSONArray to modify it. Since the views don't cache
+ * anything, a document may be read by several threads at once.
+ *
+ * The views behave as the containers of a whole document parse, except that values are read
+ * as the type of their tag, whatever type they had when they were encoded: a Long, Integer,
+ * Short or Byte is read as a Long, a Float or Double as a Double, a BigInteger or BigDecimal as
+ * itself, any other Number, such as a JSONNumber, as a JSONNumber of its text, and a JSONString
+ * as a String.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class JSONBinary {
+
+    /** Value type tags. */
+    static final int NULL        = 0;
+    static final int TRUE        = 1;
+    static final int FALSE       = 2;
+    static final int INT         = 3;
+    static final int LONG        = 4;
+    static final int DOUBLE      = 5;
+    static final int STRING      = 6;
+    static final int BIG_INTEGER = 7;
+    static final int BIG_DECIMAL = 8;
+    /** A number stored as its text, read as a JSONNumber. */
+    static final int NUMBER      = 9;
+    static final int OBJECT      = 10;
+    static final int ARRAY       = 11;
+
+    /** The first 4 bytes of an encoded document, "JSB1". */
+    private static final int MAGIC = 0x3142534A;
+    /** The offset of the document's top level value. */
+    private static final int ROOT = 4;
+    /** The size of the header of an object or array, before its table. */
+    private static final int HEADER = 5;
+
+    /** The document; offsets are relative to the start of the buffer. */
+    private final ByteBuffer buffer;
+
+    private JSONBinary(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Encode a JSON value into a new direct buffer.
+     * @param value - A Map, List or other Collection, array, String, JSONString, Number, Boolean
+     * or null; containers may contain any of these.
+     * @throws IllegalArgumentException if the value contains any other type of value.
+     */
+    public static JSONBinary encode(Object value) {
+        Encoder encoder = new Encoder();
+        encoder.encode( value );
+        return new JSONBinary( encoder.copy( ByteBuffer.allocateDirect( encoder.length ) ) );
+    }
+
+    /**
+     * Encode a JSON value into a buffer, starting at the buffer's position, e.g. into a slab of
+     * memory shared by many documents. The buffer's position is advanced past the document,
+     * and mustn't be modified in that range while the document is in use.
+     * @throws BufferOverflowException if the document doesn't fit in the buffer's remaining space.
+     */
+    public static JSONBinary encode(Object value, ByteBuffer out) {
+        Encoder encoder = new Encoder();
+        encoder.encode( value );
+        if( out.remaining() < encoder.length ) {
+            throw new BufferOverflowException();
+        }
+        ByteBuffer buffer = out.slice();
+        buffer.limit( encoder.length );
+        out.position( out.position() + encoder.length );
+        return new JSONBinary( encoder.copy( buffer ) );
+    }
+
+    /**
+     * Parse UTF-8 encoded JSON text into a new direct buffer. The text is scanned into a
+     * {@link JSONTape}, which is encoded without creating the document's objects and arrays.
+     */
+    public static JSONBinary parse(byte[] bytes) throws ParseException {
+        return parse( bytes, 0, bytes.length );
+    }
+
+    /**
+     * Parse UTF-8 encoded JSON text from a range of a byte array into a new direct buffer.
+     */
+    public static JSONBinary parse(byte[] bytes, int offset, int length) throws ParseException {
+        JSONTape tape = JSONTape.parse( bytes, offset, length );
+        Encoder encoder = new Encoder();
+        encoder.encode( tape );
+        return new JSONBinary( encoder.copy( ByteBuffer.allocateDirect( encoder.length ) ) );
+    }
+
+    /**
+     * Parse JSON text from a string into a new direct buffer.
+     */
+    public static JSONBinary parse(String s) throws ParseException {
+        JSONTape tape = JSONTape.parse( s );
+        Encoder encoder = new Encoder();
+        encoder.encode( tape );
+        return new JSONBinary( encoder.copy( ByteBuffer.allocateDirect( encoder.length ) ) );
+    }
+
+    /**
+     * Read a document which was encoded earlier, from the position to the limit of a buffer;
+     * e.g. from a copy of {@link #getBuffer()} in a memory mapped file. The buffer's contents
+     * mustn't be modified while the document is in use.
+     * @throws IllegalArgumentException if the buffer doesn't start with an encoded document.
+     */
+    public static JSONBinary wrap(ByteBuffer buffer) {
+        ByteBuffer slice = buffer.slice().order( ByteOrder.LITTLE_ENDIAN );
+        if( slice.remaining() <= ROOT || slice.getInt( 0 ) != MAGIC ) {
+            throw new IllegalArgumentException("Not an encoded JSON document");
+        }
+        return new JSONBinary( slice );
+    }
+
+    /**
+     * @return A read-only view of the document's encoding, e.g. to copy it to a file.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return The document's top level value: a read-only Map or List view, or a primitive
+     * value.
+     */
+    public Object getValue() {
+        return value( ROOT );
+    }
+
+    /**
+     * Write the document as JSON text.
+     */
+    public void writeJSONString(Writer out) throws IOException {
+        write( ROOT, out );
+    }
+
+    /**
+     * @return The type tag of the value at an offset.
+     */
+    int type(int position) {
+        return buffer.get( position );
+    }
+
+    /**
+     * @return The number of entries of the object, or elements of the array, at an offset.
+     */
+    int count(int position) {
+        return buffer.getInt( position + 1 );
+    }
+
+    /**
+     * @return The offset of the nth key of the object at an offset.
+     */
+    int keyAt(int position, int n) {
+        return buffer.getInt( position + HEADER + n * 8 );
+    }
+
+    /**
+     * @return The offset of the nth value of the object at an offset.
+     */
+    int valueAt(int position, int n) {
+        return buffer.getInt( position + HEADER + n * 8 + 4 );
+    }
+
+    /**
+     * @return The offset of the ith element of the array at an offset.
+     */
+    int elementAt(int position, int i) {
+        return buffer.getInt( position + HEADER + i * 4 );
+    }
+
+    /**
+     * Find a key of the object at an offset.
+     * @return The position of the key in the object's table, or -1 if the object has no such key.
+     */
+    int find(int position, String key) {
+        int low = 0, high = count( position ) - 1;
+        while( low <= high ) {
+            int mid = (low + high) >>> 1;
+            int comparison = compareKey( keyAt( position, mid ), key );
+            if( comparison < 0 ) {
+                low = mid + 1;
+            }
+            else if( comparison > 0 ) {
+                high = mid - 1;
+            }
+            else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compare the string at an offset with a key, in the order of their UTF-8 encodings, without
+     * decoding the string.
+     */
+    private int compareKey(int position, String key) {
+        int p = position + 4, end = p + buffer.getInt( position );
+        int keyLength = key.length();
+        for( int i = 0; i < keyLength; i++ ) {
+            int ch = key.charAt( i );
+            if( ch < 0x80 ) {
+                if( p == end ) {
+                    return -1;
+                }
+                int b = buffer.get( p++ ) & 0xFF;
+                if( b != ch ) {
+                    return b - ch;
+                }
+                continue;
+            }
+            // Compare the UTF-8 encoding of the character, packed into an int.
+            int encoding, n;
+            if( ch < 0x800 ) {
+                encoding = ((0xC0 | (ch >> 6)) << 8) | (0x80 | (ch & 0x3F));
+                n = 2;
+            }
+            else if( Character.isHighSurrogate( (char)ch ) && i + 1 < keyLength && Character.isLowSurrogate( key.charAt( i + 1 ) ) ) {
+                int cp = Character.toCodePoint( (char)ch, key.charAt( ++i ) );
+                encoding = ((0xF0 | (cp >> 18)) << 24) | ((0x80 | ((cp >> 12) & 0x3F)) << 16) | ((0x80 | ((cp >> 6) & 0x3F)) << 8) | (0x80 | (cp & 0x3F));
+                n = 4;
+            }
+            else {
+                encoding = ((0xE0 | (ch >> 12)) << 16) | ((0x80 | ((ch >> 6) & 0x3F)) << 8) | (0x80 | (ch & 0x3F));
+                n = 3;
+            }
+            while( n-- > 0 ) {
+                if( p == end ) {
+                    return -1;
+                }
+                int b = buffer.get( p++ ) & 0xFF;
+                int kb = (encoding >>> (n * 8)) & 0xFF;
+                if( b != kb ) {
+                    return b - kb;
+                }
+            }
+        }
+        return p == end ? 0 : 1;
+    }
+
+    /**
+     * Decode the string at an offset.
+     */
+    String string(int position) {
+        ByteBuffer b = buffer;
+        int p = position + 4, end = p + b.getInt( position );
+        char[] chars = new char[end - p];
+        int n = 0;
+        while( p < end ) {
+            int b0 = b.get( p++ );
+            if( b0 >= 0 ) {
+                chars[n++] = (char)b0;
+            }
+            else if( (b0 & 0xE0) == 0xC0 ) {
+                chars[n++] = (char)(((b0 & 0x1F) << 6) | (b.get( p++ ) & 0x3F));
+            }
+            else if( (b0 & 0xF0) == 0xE0 ) {
+                chars[n++] = (char)(((b0 & 0x0F) << 12) | ((b.get( p ) & 0x3F) << 6) | (b.get( p + 1 ) & 0x3F));
+                p += 2;
+            }
+            else {
+                int cp = ((b0 & 0x07) << 18) | ((b.get( p ) & 0x3F) << 12) | ((b.get( p + 1 ) & 0x3F) << 6) | (b.get( p + 2 ) & 0x3F);
+                p += 3;
+                chars[n++] = (char)(0xD7C0 + (cp >> 10));
+                chars[n++] = (char)(0xDC00 | (cp & 0x3FF));
+            }
+        }
+        return new String( chars, 0, n );
+    }
+
+    /**
+     * Decode the value at an offset. A new view is returned for an object or array.
+     */
+    Object value(int position) {
+        switch( type( position ) ) {
+        case OBJECT:
+            return new BinaryObject( this, position );
+        case ARRAY:
+            return new BinaryArray( this, position );
+        case TRUE:
+            return Boolean.TRUE;
+        case FALSE:
+            return Boolean.FALSE;
+        case INT:
+            return Long.valueOf( buffer.getInt( position + 1 ) );
+        case LONG:
+            return Long.valueOf( buffer.getLong( position + 1 ) );
+        case DOUBLE:
+            return Double.valueOf( buffer.getDouble( position + 1 ) );
+        case STRING:
+            return string( position + 1 );
+        case BIG_INTEGER:
+            return new BigInteger( string( position + 1 ) );
+        case BIG_DECIMAL:
+            return new BigDecimal( string( position + 1 ) );
+        case NUMBER:
+            return new JSONNumber( string( position + 1 ) );
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Write the value at an offset as JSON text, as its decoded value would be written.
+     */
+    void write(int position, Writer out) throws IOException {
+        switch( type( position ) ) {
+        case OBJECT:
+            out.write('{');
+            for( int n = 0, count = count( position ); n < count; n++ ) {
+                if( n > 0 ) {
+                    out.write(',');
+                }
+                out.write('\"');
+                JSONValue.escape( string( keyAt( position, n ) ), out );
+                out.write("\":");
+                write( valueAt( position, n ), out );
+            }
+            out.write('}');
+            break;
+        case ARRAY:
+            out.write('[');
+            for( int i = 0, count = count( position ); i < count; i++ ) {
+                if( i > 0 ) {
+                    out.write(',');
+                }
+                write( elementAt( position, i ), out );
+            }
+            out.write(']');
+            break;
+        default:
+            JSONValue.writeJSONString( value( position ), out );
+        }
+    }
+
+    /**
+     * Encodes a document into a byte array, which grows as needed.
+     */
+    private static final class Encoder {
+
+        /** Orders keys by their UTF-8 encodings, as compareKey does. */
+        private static final Comparator<byte[]> KEY_ORDER = new Comparator<byte[]>() {
+            @Override
+            public int compare(byte[] key1, byte[] key2) {
+                int length = Math.min( key1.length, key2.length );
+                for( int i = 0; i < length; i++ ) {
+                    int b1 = key1[i] & 0xFF, b2 = key2[i] & 0xFF;
+                    if( b1 != b2 ) {
+                        return b1 - b2;
+                    }
+                }
+                return key1.length - key2.length;
+            }
+        };
+
+        byte[] bytes = new byte[256];
+        int length;
+
+        Encoder() {
+            putInt( MAGIC );
+        }
+
+        /**
+         * Copy the encoding into a buffer with room for it.
+         */
+        ByteBuffer copy(ByteBuffer buffer) {
+            buffer.order( ByteOrder.LITTLE_ENDIAN );
+            buffer.put( bytes, 0, length );
+            buffer.flip();
+            return buffer;
+        }
+
+        private void ensure(int n) {
+            if( length + n > bytes.length ) {
+                long size = Math.max( (long)bytes.length * 2, (long)length + n );
+                if( size > Integer.MAX_VALUE ) {
+                    throw new IllegalArgumentException("Document too large to encode");
+                }
+                bytes = Arrays.copyOf( bytes, (int)size );
+            }
+        }
+
+        private void putByte(int b) {
+            ensure( 1 );
+            bytes[length++] = (byte)b;
+        }
+
+        private void putIntAt(int position, int v) {
+            bytes[position]     = (byte)v;
+            bytes[position + 1] = (byte)(v >> 8);
+            bytes[position + 2] = (byte)(v >> 16);
+            bytes[position + 3] = (byte)(v >> 24);
+        }
+
+        private void putInt(int v) {
+            ensure( 4 );
+            putIntAt( length, v );
+            length += 4;
+        }
+
+        private void putLong(long v) {
+            putInt( (int)v );
+            putInt( (int)(v >> 32) );
+        }
+
+        /**
+         * @return The offset of a number of bytes added to the end of the encoding.
+         */
+        private int reserve(int n) {
+            ensure( n );
+            int position = length;
+            length += n;
+            return position;
+        }
+
+        /**
+         * Add a string's length and UTF-8 encoding. Unpaired surrogates are encoded as three
+         * bytes, as other characters of the basic plane are, so that any string is decoded as
+         * it was encoded.
+         */
+        private void putString(String s) {
+            int sLength = s.length();
+            int position = reserve( 4 );
+            ensure( sLength * 3 );
+            byte[] b = bytes;
+            int n = length;
+            for( int i = 0; i < sLength; i++ ) {
+                int ch = s.charAt( i );
+                if( ch < 0x80 ) {
+                    b[n++] = (byte)ch;
+                }
+                else if( ch < 0x800 ) {
+                    b[n++] = (byte)(0xC0 | (ch >> 6));
+                    b[n++] = (byte)(0x80 | (ch & 0x3F));
+                }
+                else if( Character.isHighSurrogate( (char)ch ) && i + 1 < sLength && Character.isLowSurrogate( s.charAt( i + 1 ) ) ) {
+                    int cp = Character.toCodePoint( (char)ch, s.charAt( ++i ) );
+                    b[n++] = (byte)(0xF0 | (cp >> 18));
+                    b[n++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+                    b[n++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+                    b[n++] = (byte)(0x80 | (cp & 0x3F));
+                }
+                else {
+                    b[n++] = (byte)(0xE0 | (ch >> 12));
+                    b[n++] = (byte)(0x80 | ((ch >> 6) & 0x3F));
+                    b[n++] = (byte)(0x80 | (ch & 0x3F));
+                }
+            }
+            putIntAt( position, n - length );
+            length = n;
+        }
+
+        /**
+         * @return The UTF-8 encoding of a key, as added by putString.
+         */
+        private byte[] key(String key) {
+            int position = length;
+            putString( key );
+            byte[] encoding = Arrays.copyOfRange( bytes, position + 4, length );
+            length = position;
+            return encoding;
+        }
+
+        void encode(Object value) {
+            if( value == null ) {
+                putByte( NULL );
+            }
+            else if( value instanceof String || value instanceof JSONString ) {
+                putByte( STRING );
+                putString( value.toString() );
+            }
+            else if( value instanceof Boolean ) {
+                putByte( (Boolean)value ? TRUE : FALSE );
+            }
+            else if( value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte ) {
+                putInteger( ((Number)value).longValue() );
+            }
+            else if( value instanceof Double || value instanceof Float ) {
+                putByte( DOUBLE );
+                putLong( Double.doubleToRawLongBits( ((Number)value).doubleValue() ) );
+            }
+            else if( value instanceof BigInteger ) {
+                putByte( BIG_INTEGER );
+                putString( value.toString() );
+            }
+            else if( value instanceof BigDecimal ) {
+                putByte( BIG_DECIMAL );
+                putString( value.toString() );
+            }
+            else if( value instanceof Number ) {
+                // A JSONNumber, or any other number, which is written as its text.
+                putByte( NUMBER );
+                putString( value.toString() );
+            }
+            else if( value instanceof Map ) {
+                Map map = (Map)value;
+                String[] keys = new String[map.size()];
+                Object[] values = new Object[keys.length];
+                int n = 0;
+                for( Object obj : map.entrySet() ) {
+                    Map.Entry entry = (Map.Entry)obj;
+                    keys[n] = String.valueOf( entry.getKey() );
+                    values[n++] = entry.getValue();
+                }
+                putObject( keys, values, null, null );
+            }
+            else if( value instanceof Collection ) {
+                Collection collection = (Collection)value;
+                int position = putArrayHeader( collection.size() );
+                int i = 0;
+                for( Object element : collection ) {
+                    putIntAt( position + HEADER + 4 * i++, length );
+                    encode( element );
+                }
+            }
+            else if( value.getClass().isArray() ) {
+                int count = Array.getLength( value );
+                int position = putArrayHeader( count );
+                for( int i = 0; i < count; i++ ) {
+                    putIntAt( position + HEADER + 4 * i, length );
+                    encode( Array.get( value, i ) );
+                }
+            }
+            else {
+                throw new IllegalArgumentException("Not a JSON value: "+value.getClass().getName());
+            }
+        }
+
+        /**
+         * Encode a parsed document from its tape.
+         */
+        void encode(JSONTape tape) {
+            encode( tape, 0 );
+        }
+
+        private void encode(JSONTape tape, int index) {
+            switch( tape.type( index ) ) {
+            case JSONTape.OBJECT:
+                int count = tape.count( index );
+                String[] keys = new String[count];
+                int[] indexes = new int[count];
+                int e = index + 1;
+                for( int n = 0; n < count; n++ ) {
+                    keys[n] = tape.string( e );
+                    indexes[n] = e + 1;
+                    e = tape.skip( e + 1 );
+                }
+                putObject( keys, null, tape, indexes );
+                break;
+            case JSONTape.ARRAY:
+                count = tape.count( index );
+                int position = putArrayHeader( count );
+                e = index + 1;
+                for( int i = 0; i < count; i++ ) {
+                    putIntAt( position + HEADER + 4 * i, length );
+                    encode( tape, e );
+                    e = tape.skip( e );
+                }
+                break;
+            default:
+                encode( tape.value( index ) );
+            }
+        }
+
+        private void putInteger(long l) {
+            if( l == (int)l ) {
+                putByte( INT );
+                putInt( (int)l );
+            }
+            else {
+                putByte( LONG );
+                putLong( l );
+            }
+        }
+
+        /**
+         * Add the header of an array, and reserve its table.
+         * @return The offset of the array.
+         */
+        private int putArrayHeader(int count) {
+            int position = reserve( HEADER + 4 * count );
+            bytes[position] = ARRAY;
+            putIntAt( position + 1, count );
+            return position;
+        }
+
+        /**
+         * Add an object, with its keys sorted; of any duplicate keys, the last is used.
+         * @param values - The values; or null, with the tape indexes of the values.
+         */
+        private void putObject(String[] keys, Object[] values, JSONTape tape, int[] indexes) {
+            int count = keys.length;
+            final byte[][] encodings = new byte[count][];
+            Integer[] order = new Integer[count];
+            for( int n = 0; n < count; n++ ) {
+                encodings[n] = key( keys[n] );
+                order[n] = n;
+            }
+            // A stable sort, so duplicate keys remain in document order.
+            Arrays.sort( order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer n1, Integer n2) {
+                    return KEY_ORDER.compare( encodings[n1], encodings[n2] );
+                }
+            });
+            int unique = 0;
+            for( int n = 0; n < count; n++ ) {
+                if( n + 1 < count && KEY_ORDER.compare( encodings[order[n]], encodings[order[n + 1]] ) == 0 ) {
+                    continue;
+                }
+                order[unique++] = order[n];
+            }
+            int position = reserve( HEADER + 8 * unique );
+            bytes[position] = OBJECT;
+            putIntAt( position + 1, unique );
+            for( int n = 0; n < unique; n++ ) {
+                int entry = order[n];
+                putIntAt( position + HEADER + 8 * n, length );
+                putString( keys[entry] );
+                putIntAt( position + HEADER + 8 * n + 4, length );
+                if( values != null ) {
+                    encode( values[entry] );
+                }
+                else {
+                    encode( tape, indexes[entry] );
+                }
+            }
+        }
+    }
+}
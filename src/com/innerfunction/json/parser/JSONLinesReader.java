@@ -0,0 +1,379 @@
+package com.innerfunction.json.parser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Reads records from UTF-8 encoded newline delimited JSON (NDJSON, or JSON Lines): a sequence
+ * of JSON values, one per line. Blank lines are skipped.
+ *
+ * Input is read in batches of whole lines. Without an executor each batch is decoded by the
+ * calling thread; with an executor, batches are decoded by tasks submitted to the executor,
+ * up to a maximum number of batches in flight, which bounds the memory used for input which
+ * has been read but not yet returned. Records are always returned in input order. Lines are
+ * parsed in place from the batch's buffer, whose memory is reused for later batches, by parsers
+ * which belong to the reader and have the default options; so records never refer to the
+ * buffer, e.g. as string views.
+ *
+ * A line which fails to parse causes its call to {@link #next()} to throw, after which reading
+ * continues from the following line. {@link #getLineNumber()} gives the line number of the
+ * record, or error, last returned; error positions are byte offsets from the start of the line.
+ * A reader is not thread-safe.
+ */
+public class JSONLinesReader implements Closeable {
+
+    /** The size of a batch of lines, unless a single line is larger. */
+    static final int BATCH_SIZE = 1 << 18;
+
+    private final InputStream in;
+    private final ContainerFactory containerFactory;
+    private final ExecutorService executor;
+    private final int maxBatches;
+    /** The parser for batches decoded on the calling thread. */
+    private JSONParser parser;
+    /** Batches read from the input, in input order, and being decoded. */
+    private final LinkedList<Future<Batch>> pending = new LinkedList<Future<Batch>>();
+    /** Buffers of returned batches, for reuse. */
+    private final LinkedList<byte[]> spares = new LinkedList<byte[]>();
+    /** The start of an incomplete line, read after the end of the last batch. */
+    private byte[] carry = new byte[0];
+    private int carryLength;
+    private boolean eof;
+    /** The batch records are being returned from, and the position of its next record. */
+    private Batch batch;
+    private int next;
+    /** The number of lines before the current batch. */
+    private int lineBase;
+    private int lineNumber;
+
+    /**
+     * Create a reader which decodes records on the calling thread.
+     */
+    public JSONLinesReader(InputStream in) {
+        this( in, null, null, 1 );
+    }
+
+    /**
+     * Create a reader which decodes batches of records in parallel.
+     * @param executor - Runs the batch decoding tasks.
+     * @param maxBatches - The maximum number of batches read ahead of the record being returned.
+     */
+    public JSONLinesReader(InputStream in, ExecutorService executor, int maxBatches) {
+        this( in, null, executor, maxBatches );
+    }
+
+    /**
+     * Create a reader.
+     * @param containerFactory - Use this factory to create your own JSON object and JSON array containers.
+     * With an executor, the factory is called from the executor's threads and so must be thread safe.
+     * @param executor - Runs the batch decoding tasks; or null to decode records on the calling thread.
+     * @param maxBatches - The maximum number of batches read ahead of the record being returned.
+     */
+    public JSONLinesReader(InputStream in, ContainerFactory containerFactory, ExecutorService executor, int maxBatches) {
+        if( maxBatches < 1 ) {
+            throw new IllegalArgumentException("maxBatches must be at least 1: "+maxBatches);
+        }
+        this.in = in;
+        this.containerFactory = containerFactory;
+        this.executor = executor;
+        this.maxBatches = executor != null ? maxBatches : 1;
+    }
+
+    /**
+     * Create a reader for a file, which decodes records on the calling thread.
+     */
+    public JSONLinesReader(File file) throws FileNotFoundException {
+        this( new FileInputStream( file ) );
+    }
+
+    /**
+     * Create a reader for a file, which decodes batches of records in parallel.
+     * @see #JSONLinesReader(InputStream, ExecutorService, int)
+     */
+    public JSONLinesReader(File file, ExecutorService executor, int maxBatches) throws FileNotFoundException {
+        this( new FileInputStream( file ), executor, maxBatches );
+    }
+
+    /**
+     * @return true if there is another record.
+     */
+    public boolean hasNext() throws IOException {
+        while( batch == null || next == batch.count ) {
+            if( batch != null ) {
+                lineBase += batch.lineCount;
+                if( batch.bytes.length == BATCH_SIZE ) {
+                    spares.add( batch.bytes );
+                }
+                batch = null;
+            }
+            while( pending.size() < maxBatches && submit() ) {
+                continue;
+            }
+            if( pending.isEmpty() ) {
+                return false;
+            }
+            batch = get( pending.removeFirst() );
+            next = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Read the next record.
+     * @return Instance of the following:
+     *  com.innerfunction.json.JSONObject,
+     *  com.innerfunction.json.JSONArray,
+     *  java.lang.String,
+     *  java.lang.Number,
+     *  java.lang.Boolean,
+     *  null
+     * @throws ParseException If the record's line fails to parse.
+     * @throws NoSuchElementException If there are no more records.
+     */
+    public Object next() throws IOException, ParseException {
+        if( !hasNext() ) {
+            throw new NoSuchElementException();
+        }
+        int i = next++;
+        lineNumber = lineBase + batch.lines[i] + 1;
+        Object value = batch.values[i];
+        batch.values[i] = null;
+        if( value instanceof RecordError ) {
+            Exception e = ((RecordError)value).exception;
+            if( e instanceof ParseException ) {
+                throw (ParseException)e;
+            }
+            throw (RuntimeException)e;
+        }
+        return value;
+    }
+
+    /**
+     * @return The line number, starting from 1, of the record last returned by next(), or of the
+     * line which failed to parse.
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Close the input. Batches which are still being decoded are cancelled.
+     */
+    @Override
+    public void close() throws IOException {
+        for( Future<Batch> future : pending ) {
+            future.cancel( false );
+        }
+        pending.clear();
+        batch = null;
+        in.close();
+    }
+
+    /**
+     * Read the next batch of lines, and submit it for decoding.
+     * @return false at the end of the input.
+     */
+    private boolean submit() throws IOException {
+        final Batch batch = read();
+        if( batch == null ) {
+            return false;
+        }
+        if( executor != null ) {
+            Callable<Batch> task = new Callable<Batch>() {
+                @Override
+                public Batch call() {
+                    // A parser for each task, since tasks may run at the same time.
+                    batch.decode( new JSONParser(), containerFactory );
+                    return batch;
+                }
+            };
+            pending.add( executor.submit( task ) );
+        }
+        else {
+            if( parser == null ) {
+                parser = new JSONParser();
+            }
+            Callable<Batch> task = new Callable<Batch>() {
+                @Override
+                public Batch call() {
+                    batch.decode( parser, containerFactory );
+                    return batch;
+                }
+            };
+            FutureTask<Batch> future = new FutureTask<Batch>( task );
+            future.run();
+            pending.add( future );
+        }
+        return true;
+    }
+
+    /**
+     * Read whole lines into a batch buffer. A batch ends at the last line break read once the
+     * buffer is full, or once no more input is available without blocking; a line which is
+     * larger than a batch buffer gets a larger buffer.
+     * @return The batch, or null at the end of the input.
+     */
+    private Batch read() throws IOException {
+        if( eof && carryLength == 0 ) {
+            return null;
+        }
+        byte[] bytes = spares.isEmpty() ? new byte[BATCH_SIZE] : spares.removeFirst();
+        while( bytes.length <= carryLength ) {
+            bytes = new byte[bytes.length * 2];
+        }
+        System.arraycopy( carry, 0, bytes, 0, carryLength );
+        int length = carryLength;
+        // The end of the last line read, or -1 if no line has been completed.
+        int end = -1;
+        while( !eof ) {
+            if( length == bytes.length ) {
+                if( end >= 0 ) {
+                    break;
+                }
+                byte[] newBytes = new byte[bytes.length * 2];
+                System.arraycopy( bytes, 0, newBytes, 0, length );
+                bytes = newBytes;
+            }
+            int count = in.read( bytes, length, bytes.length - length );
+            if( count < 0 ) {
+                eof = true;
+                break;
+            }
+            for( int i = length + count - 1; i >= length; i-- ) {
+                if( bytes[i] == '\n' ) {
+                    end = i + 1;
+                    break;
+                }
+            }
+            length += count;
+            if( end >= 0 && in.available() <= 0 ) {
+                break;
+            }
+        }
+        if( eof ) {
+            end = length;
+        }
+        carryLength = length - end;
+        if( carry.length < carryLength ) {
+            carry = new byte[Math.max( carryLength, carry.length * 2 )];
+        }
+        System.arraycopy( bytes, end, carry, 0, carryLength );
+        return end > 0 ? new Batch( bytes, end ) : null;
+    }
+
+    private Batch get(Future<Batch> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if( cause instanceof RuntimeException ) {
+                throw (RuntimeException)cause;
+            }
+            if( cause instanceof Error ) {
+                throw (Error)cause;
+            }
+            throw new IOException( cause.toString() );
+        }
+    }
+
+    /**
+     * A batch of whole lines, and the records decoded from them.
+     */
+    private static class Batch {
+
+        final byte[] bytes;
+        final int length;
+        /** The records; or, for lines which failed to parse, RecordErrors. */
+        Object[] values;
+        /** The line of each record, from the start of the batch. */
+        int[] lines;
+        int count;
+        int lineCount;
+
+        Batch(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        void decode(JSONParser parser, ContainerFactory containerFactory) {
+            values = new Object[16];
+            lines = new int[16];
+            int line = 0;
+            int start = 0;
+            while( start < length ) {
+                int end = start;
+                while( end < length && bytes[end] != '\n' ) {
+                    end++;
+                }
+                if( !isBlank( start, end ) ) {
+                    Object value;
+                    try {
+                        value = parser.parse( bytes, start, end - start, containerFactory );
+                    }
+                    catch(ParseException e) {
+                        value = new RecordError( e );
+                    }
+                    catch(NumberFormatException e) {
+                        value = new RecordError( e );
+                    }
+                    add( value, line );
+                }
+                line++;
+                start = end + 1;
+            }
+            lineCount = line;
+        }
+
+        private boolean isBlank(int start, int end) {
+            for( int i = start; i < end; i++ ) {
+                byte b = bytes[i];
+                if( b != ' ' && b != '\t' && b != '\r' ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void add(Object value, int line) {
+            if( count == values.length ) {
+                Object[] newValues = new Object[count * 2];
+                System.arraycopy( values, 0, newValues, 0, count );
+                values = newValues;
+                int[] newLines = new int[count * 2];
+                System.arraycopy( lines, 0, newLines, 0, count );
+                lines = newLines;
+            }
+            values[count] = value;
+            lines[count++] = line;
+        }
+    }
+
+    /**
+     * Marks a line which failed to parse.
+     */
+    private static class RecordError {
+
+        final Exception exception;
+
+        RecordError(Exception exception) {
+            this.exception = exception;
+        }
+    }
+}
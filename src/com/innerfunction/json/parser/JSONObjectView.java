@@ -0,0 +1,267 @@
+package com.innerfunction.json.parser;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.AbstractMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import ns.foundation.NSKeyValueCodingAdditions;
+import ns.foundation.NSKeyValueObserving;
+import ns.foundation.NSObserver;
+import ns.foundation.NSSet;
+
+import com.innerfunction.json.JSONArray;
+import com.innerfunction.json.JSONAware;
+import com.innerfunction.json.JSONObject;
+import com.innerfunction.json.JSONStreamAware;
+import com.innerfunction.json.JSONValue;
+import com.innerfunction.json.StringBuilderWriter;
+
+/**
+ * A read-only JSON object which is a view of a document held in another form, such as a
+ * {@link JSONTape}. Subclasses read the document in entrySet(), get(), containsKey() and size();
+ * all the other Map methods, including those added by later versions of Java, are implemented
+ * by AbstractMap in terms of them. Nested objects and arrays are views too.
+ *
+ * A view is a JSONAware, and is read with the same methods as a JSONObject; but since
+ * getJSONObject() and getJSONArray() must return a JSONObject or JSONArray, they return a copy of
+ * the nested view, which resolve() and get() return as it is. Methods which would change the
+ * view throw UnsupportedOperationException; copy the view into a JSONObject to modify it. A view
+ * never changes, so observers are never notified, and aren't kept.
+ */
+@SuppressWarnings("rawtypes")
+abstract class JSONObjectView extends AbstractMap implements JSONAware, JSONStreamAware {
+
+    /**
+     * Copy a value read from a view, replacing the views it contains with JSONObjects and
+     * JSONArrays.
+     */
+    @SuppressWarnings("unchecked")
+    static Object copy(Object value) {
+        if( value instanceof JSONObjectView ) {
+            JSONObject object = new JSONObject();
+            for( Object obj : ((Map)value).entrySet() ) {
+                Map.Entry entry = (Map.Entry)obj;
+                object.put( entry.getKey(), copy( entry.getValue() ) );
+            }
+            return object;
+        }
+        if( value instanceof JSONArrayView ) {
+            List list = (List)value;
+            JSONArray array = new JSONArray();
+            array.ensureCapacity( list.size() );
+            for( Object element : list ) {
+                array.add( copy( element ) );
+            }
+            return array;
+        }
+        return value;
+    }
+
+    static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("JSON views are read-only");
+    }
+
+    @Override
+    public Object get(String name) {
+        return get( (Object)name );
+    }
+
+    @Override
+    public JSONValue.Type getJSONType(String name) {
+        return JSONValue.typeOfValue( get( name ) );
+    }
+
+    @Override
+    public JSONValue.Type resolveJSONType(String path) {
+        return JSONValue.typeOfValue( valueForKeyPath( path ) );
+    }
+
+    @Override
+    public Boolean getBoolean(String name) {
+        Object value = get( name );
+        return value instanceof Boolean ? (Boolean)value : null;
+    }
+
+    @Override
+    public Number getNumber(String name) {
+        Object value = get( name );
+        return value instanceof Number ? (Number)value : null;
+    }
+
+    @Override
+    public String getString(String name) {
+        return JSONValue.stringValue( get( name ) );
+    }
+
+    /**
+     * @return A copy of the named object, or null if the property isn't an object.
+     */
+    @Override
+    public JSONObject getJSONObject(String name) {
+        Object value = get( name );
+        return value instanceof JSONObjectView ? (JSONObject)copy( value ) : null;
+    }
+
+    /**
+     * @return A copy of the named array, or null if the property isn't an array.
+     */
+    @Override
+    public JSONArray getJSONArray(String name) {
+        Object value = get( name );
+        return value instanceof JSONArrayView ? (JSONArray)copy( value ) : null;
+    }
+
+    @Override
+    public Object resolve(String path) {
+        return valueForKeyPath( path );
+    }
+
+    @Override
+    public Boolean resolveBoolean(String path) {
+        Object value = valueForKeyPath( path );
+        return value instanceof Boolean ? (Boolean)value : null;
+    }
+
+    @Override
+    public Number resolveNumber(String path) {
+        Object value = valueForKeyPath( path );
+        return value instanceof Number ? (Number)value : null;
+    }
+
+    @Override
+    public String resolveString(String path) {
+        return JSONValue.stringValue( valueForKeyPath( path ) );
+    }
+
+    /**
+     * @return A copy of the referenced object, or null if the value isn't an object.
+     */
+    @Override
+    public JSONObject resolveJSONObject(String path) {
+        Object value = valueForKeyPath( path );
+        return value instanceof JSONObjectView ? (JSONObject)copy( value ) : null;
+    }
+
+    /**
+     * @return A copy of the referenced array, or null if the value isn't an array.
+     */
+    @Override
+    public JSONArray resolveJSONArray(String path) {
+        Object value = valueForKeyPath( path );
+        return value instanceof JSONArrayView ? (JSONArray)copy( value ) : null;
+    }
+
+    @Override
+    public void set(String name, Object value) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setPath(String path, Object value) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removePath(String path) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object valueForKeyPath(String keyPath) {
+        Object flattenedKeyPresent = get( keyPath );
+        if( flattenedKeyPresent != null ) {
+            return flattenedKeyPresent;
+        }
+        return NSKeyValueCodingAdditions.DefaultImplementation.valueForKeyPath( this, keyPath );
+    }
+
+    @Override
+    public void takeValueForKeyPath(Object value, String keyPath) {
+        throw readOnly();
+    }
+
+    @Override
+    public Object valueForKey(String key) {
+        Object value = get( key );
+        if( value == null && key != null ) {
+            if("allValues".equals( key ) ) {
+                value = values();
+            }
+            else if("allKeys".equals( key ) ) {
+                value = keySet();
+            }
+            else if("count".equals( key ) ) {
+                value = size();
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public void takeValueForKey(Object value, String key) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean automaticallyNotifiesObserversForKey(String key) {
+        return false;
+    }
+
+    @Override
+    public void addObserverForKeyPath(NSObserver observer, String keyPath, EnumSet<NSKeyValueObserving.Options> options, Object context) {
+    }
+
+    @Override
+    public void removeObserverForKeyPath(NSObserver observer, String keyPath) {
+    }
+
+    @Override
+    public void willChangeValueForKey(String key) {
+    }
+
+    @Override
+    public void didChangeValueForKey(String key) {
+    }
+
+    @Override
+    public void willChangeValuesAtIndexForKey(EnumSet<NSKeyValueObserving.Changes> change, NSSet<Integer> indexes, String key) {
+    }
+
+    @Override
+    public void didChangeValuesAtIndexForKey(EnumSet<NSKeyValueObserving.Changes> change, NSSet<Integer> indexes, String key) {
+    }
+
+    @Override
+    public NSSet<String> keyPathsForValuesAffectingValueForKey(String key) {
+        return NSKeyValueObserving.DefaultImplementation.keyPathsForValuesAffectingValueForKey( this, key );
+    }
+
+    @Override
+    public void writeJSONString(Writer out) throws IOException {
+        JSONObject.writeJSONString( this, out );
+    }
+
+    @Override
+    public String toJSONString() {
+        StringBuilderWriter writer = StringBuilderWriter.obtain();
+        try {
+            writeJSONString( writer );
+            return writer.toString();
+        }
+        catch(IOException e) {
+            // This should never happen for a StringBuilderWriter
+            throw new RuntimeException( e );
+        }
+        finally {
+            writer.recycle();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toJSONString();
+    }
+}
@@ -4,21 +4,33 @@
  */
 package com.innerfunction.json.parser;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import android.annotation.SuppressLint;
 
 import com.innerfunction.json.JSONArray;
+import com.innerfunction.json.JSONNumber;
 import com.innerfunction.json.JSONObject;
+import com.innerfunction.json.JSONString;
 
 
 /**
  * Parser for JSON text. Please note that JSONParser is NOT thread-safe.
+ * Use {@link #threadLocal()} to obtain a reusable, thread-confined instance.
  * 
  * @author FangYidong<fangyidong@yahoo.com.cn>
  */
@@ -31,12 +43,214 @@ public class JSONParser {
 	public static final int S_IN_PAIR_VALUE=5;
 	public static final int S_END=6;
 	public static final int S_IN_ERROR=-1;
+	/** startJSON has been sent, but the first token of pushed input isn't complete yet. */
+	private static final int S_STARTED=7;
+	
+	/**
+	 * Parse using the token state machine, driven by the JFlex generated lexer for
+	 * character input and by the UTF-8 lexer for byte input. This is the default engine.
+	 */
+	public static final int ENGINE_STATE_MACHINE=0;
+	/**
+	 * Parse using the direct engine, which dispatches on the next character or byte of the
+	 * input, keeps its nesting state in primitive arrays and doesn't allocate structural tokens.
+	 * It builds the same values, and reports errors at the same positions, as the state machine.
+	 */
+	public static final int ENGINE_DIRECT=1;
+	
+	/**
+	 * Integers which overflow a long cause a NumberFormatException, and decimals out of the
+	 * range of a double are infinite or zero, as with Long.valueOf and Double.valueOf. This is
+	 * the default policy.
+	 */
+	public static final int OVERFLOW_LEGACY=0;
+	/**
+	 * Integers which overflow a long are parsed to BigIntegers, and decimals out of the range
+	 * of a double to BigDecimals.
+	 */
+	public static final int OVERFLOW_BIG=1;
 	
     @SuppressWarnings("rawtypes")
     private LinkedList handlerStatusStack;
-	private Yylex lexer = new Yylex((Reader)null);
+    /** The handler status stack, retained for reuse by the next stream parse. */
+    @SuppressWarnings("rawtypes")
+    private LinkedList contentStatusStack;
+    @SuppressWarnings("rawtypes")
+    private LinkedList statusStack = new LinkedList();
+    @SuppressWarnings("rawtypes")
+    private LinkedList valueStack = new LinkedList();
+	private Yylex yylex = new Yylex((Reader)null);
+	private Utf8Lexer utf8Lexer;
+	private CharLexer charLexer;
+	private Lexer lexer = yylex;
 	private Yytoken token = null;
 	private int status = S_INIT;
+	private int engine = ENGINE_STATE_MACHINE;
+	/** True if the current input is being parsed by the direct engine. */
+	private boolean direct = false;
+	/** Nesting state of the direct engine. */
+	private int[] stateStack = new int[32];
+	private Object[] containerStack = new Object[32];
+	private int depth = 0;
+	private int overflow = OVERFLOW_LEGACY;
+	/** True if number values are JSONNumbers, decoded on first use. */
+	private boolean lazyNumbers = false;
+	/** True if string values may be JSONString views of the input. */
+	private boolean stringViews = false;
+	/** Tables which canonicalize object keys and string values; or null. */
+	private StringTable keyTable;
+	private StringTable valueTable;
+	/** True while a parse is in progress, or a stopped stream parse may be resumed. */
+	private boolean busy = false;
+	
+	private static final ThreadLocal<JSONParser> threadLocalParser = new ThreadLocal<JSONParser>() {
+		@Override
+		protected JSONParser initialValue() {
+			return new JSONParser();
+		}
+	};
+	
+	/**
+	 * Get a parser instance confined to the calling thread.
+	 * The instance, its lexer buffer and its stacks are reused across calls, which avoids
+	 * allocating a new parser for every document. If the thread's parser is already in use -
+	 * e.g. by a reentrant call from a container factory, or by a stopped stream parse which
+	 * may still be resumed - then a new parser instance is returned instead.
+	 * The parser's options are reset to their defaults each time it is returned, so options
+	 * set by one caller don't apply to the documents of the next.
+	 * 
+	 * @return A parser which may be used by the calling thread only.
+	 */
+	public static JSONParser threadLocal(){
+		JSONParser parser = threadLocalParser.get();
+		if(parser.busy)
+			return new JSONParser();
+		parser.resetOptions();
+		return parser;
+	}
+	
+	/**
+	 * Reset the parser's options to their defaults.
+	 */
+	private void resetOptions(){
+		engine = ENGINE_STATE_MACHINE;
+		overflow = OVERFLOW_LEGACY;
+		lazyNumbers = false;
+		stringViews = false;
+		keyTable = null;
+		valueTable = null;
+	}
+	
+	public JSONParser(){
+	}
+	
+	/**
+	 * @param engine - The parser engine; one of ENGINE_STATE_MACHINE or ENGINE_DIRECT.
+	 */
+	public JSONParser(int engine){
+		setEngine(engine);
+	}
+	
+	/**
+	 * Set the parser engine. The engine is used from the next parse which isn't a resumed parse;
+	 * a resumed parse continues with the engine it was started with.
+	 * 
+	 * @param engine - One of ENGINE_STATE_MACHINE or ENGINE_DIRECT.
+	 */
+	public void setEngine(int engine){
+		if(engine != ENGINE_STATE_MACHINE && engine != ENGINE_DIRECT)
+			throw new IllegalArgumentException("Unknown parser engine: "+engine);
+		this.engine = engine;
+	}
+	
+	public int getEngine(){
+		return engine;
+	}
+	
+	/**
+	 * Set whether numbers are parsed lazily. When set, each number value is a
+	 * {@link JSONNumber} which holds the number's text, and is decoded only when its value is
+	 * first used; the number is written back to JSON text exactly as it was read. Numbers passed
+	 * to a {@link PrimitiveContentHandler} are always decoded.
+	 * Integers which overflow a long don't cause an error when numbers are parsed lazily; their
+	 * values are BigIntegers.
+	 * 
+	 * @param lazyNumbers
+	 */
+	public void setLazyNumbers(boolean lazyNumbers){
+		this.lazyNumbers = lazyNumbers;
+	}
+	
+	public boolean isLazyNumbers(){
+		return lazyNumbers;
+	}
+	
+	/**
+	 * Set whether string values may be views of the input. When set, each string value which
+	 * has no escape sequences, and is parsed from a byte array (or a buffer backed by one) or
+	 * from a string with the direct engine, is a {@link JSONString} which refers to the input
+	 * instead of copying it; from a byte array, only strings of ASCII characters are views. The
+	 * input must not be modified while the values are in use. Other string values, object keys,
+	 * and strings passed to a {@link PrimitiveContentHandler} are always Strings.
+	 * 
+	 * @param stringViews
+	 */
+	public void setStringViews(boolean stringViews){
+		this.stringViews = stringViews;
+	}
+	
+	public boolean isStringViews(){
+		return stringViews;
+	}
+	
+	/**
+	 * Set a table which canonicalizes object keys. Each key found in the table is returned as
+	 * the table's String instance, without allocating a new one; so the containers of a
+	 * document with repeated keys share the same key instances. The table is used for the
+	 * parser's documents unless the container factory passed to a parse method is a
+	 * {@link CanonicalContainerFactory}, whose table is used instead. Keys passed to a
+	 * {@link PrimitiveContentHandler} aren't canonicalized.
+	 * 
+	 * @param keyTable - The table, or null for keys not to be canonicalized.
+	 */
+	public void setKeyTable(StringTable keyTable){
+		this.keyTable = keyTable;
+	}
+	
+	public StringTable getKeyTable(){
+		return keyTable;
+	}
+	
+	/**
+	 * Set a table which canonicalizes string values, as {@link #setKeyTable(StringTable)} does
+	 * for object keys. Canonical strings are Strings, even when string views are enabled.
+	 * 
+	 * @param valueTable - The table, or null for string values not to be canonicalized.
+	 */
+	public void setValueTable(StringTable valueTable){
+		this.valueTable = valueTable;
+	}
+	
+	public StringTable getValueTable(){
+		return valueTable;
+	}
+	
+	/**
+	 * Set the policy for numbers which are out of the range of a long or a double.
+	 * Numbers passed to a {@link PrimitiveContentHandler} which are out of range are passed
+	 * to its primitive(Object) method.
+	 * 
+	 * @param overflow - One of OVERFLOW_LEGACY or OVERFLOW_BIG.
+	 */
+	public void setNumberOverflow(int overflow){
+		if(overflow != OVERFLOW_LEGACY && overflow != OVERFLOW_BIG)
+			throw new IllegalArgumentException("Unknown number overflow policy: "+overflow);
+		this.overflow = overflow;
+	}
+	
+	public int getNumberOverflow(){
+		return overflow;
+	}
 	
 	@SuppressWarnings("rawtypes")
     private int peekStatus(LinkedList statusStack){
@@ -54,6 +268,7 @@ public class JSONParser {
         token = null;
         status = S_INIT;
         handlerStatusStack = null;
+        depth = 0;
     }
     
     /**
@@ -64,8 +279,133 @@ public class JSONParser {
      * @throws ParseException
      */
 	public void reset(Reader in){
-		lexer.yyreset(in);
+		if(engine == ENGINE_DIRECT){
+			resetChars().reset(in);
+		}
+		else{
+			yylex.yyreset(in);
+			yylex.lazyNumbers = lazyNumbers;
+			yylex.bigNumbers = overflow == OVERFLOW_BIG;
+			yylex.keyTable = keyTable;
+			yylex.valueTable = valueTable;
+			lexer = yylex;
+			direct = false;
+			reset();
+		}
+	}
+	
+	/**
+	 * Reset the parser to the initial state with new character input for the direct engine.
+	 * @return The lexer used to scan the input.
+	 */
+	private CharLexer resetChars(){
+		if(charLexer == null)
+			charLexer = new CharLexer();
+		configure(charLexer);
+		lexer = charLexer;
+		direct = true;
+		reset();
+		return charLexer;
+	}
+	
+	/**
+	 * Reset the parser to the initial state with new UTF-8 encoded input.
+	 * @return The lexer used to scan the input.
+	 */
+	private Utf8Lexer resetUtf8(){
+		if(utf8Lexer == null)
+			utf8Lexer = new Utf8Lexer();
+		configure(utf8Lexer);
+		lexer = utf8Lexer;
+		direct = engine == ENGINE_DIRECT;
 		reset();
+		return utf8Lexer;
+	}
+	
+	/**
+	 * Apply the parser's options to one of the hand written lexers.
+	 */
+	private void configure(AbstractLexer lexer){
+		lexer.lazyNumbers = lazyNumbers;
+		lexer.bigNumbers = overflow == OVERFLOW_BIG;
+		lexer.stringViews = stringViews;
+		lexer.keyTable = keyTable;
+		lexer.valueTable = valueTable;
+	}
+	
+	/**
+	 * Use the string tables of a container factory for the current input, if it provides them.
+	 */
+	private void useStringTables(ContainerFactory containerFactory){
+		if(!(containerFactory instanceof CanonicalContainerFactory))
+			return;
+		CanonicalContainerFactory factory=(CanonicalContainerFactory)containerFactory;
+		if(lexer == yylex){
+			yylex.keyTable = factory.getKeyTable();
+			yylex.valueTable = factory.getValueTable();
+		}
+		else{
+			((AbstractLexer)lexer).keyTable = factory.getKeyTable();
+			((AbstractLexer)lexer).valueTable = factory.getValueTable();
+		}
+	}
+	
+	/**
+	 * Reset the parser for stream processing of new UTF-8 encoded input.
+	 * @return The lexer used to scan the input.
+	 */
+	private Utf8Lexer resetUtf8(ContentHandler contentHandler){
+		Utf8Lexer lexer=resetUtf8();
+		if(contentHandler instanceof PrimitiveContentHandler)
+			direct=true;
+		startContent();
+		return lexer;
+	}
+	
+	/**
+	 * Reset the parser for stream processing of input which is pushed to the returned lexer.
+	 * @see JSONPushParser
+	 */
+	Utf8Lexer resetPush(ContentHandler contentHandler){
+		Utf8Lexer lexer=resetUtf8(contentHandler);
+		lexer.resetPush();
+		direct=true;
+		return lexer;
+	}
+	
+	/**
+	 * Continue stream processing of pushed input, until the input pushed so far has been
+	 * consumed or the handler stops parsing.
+	 */
+	void parsePushed(ContentHandler contentHandler) throws IOException, ParseException{
+		parseContent(contentHandler);
+	}
+	
+	/**
+	 * @return true if stream processing has reached the end of the input.
+	 */
+	boolean isFinished(){
+		return status == S_END;
+	}
+	
+	/**
+	 * Start a new stream parse, with an empty handler status stack.
+	 */
+	@SuppressWarnings("rawtypes")
+	private void startContent(){
+		if(contentStatusStack == null)
+			contentStatusStack = new LinkedList();
+		else
+			contentStatusStack.clear();
+		handlerStatusStack = contentStatusStack;
+	}
+	
+	/**
+	 * Test whether stream processing for a handler uses the direct engine. Handlers which
+	 * receive unboxed primitive values are always driven by the direct engine.
+	 */
+	private boolean isDirect(ContentHandler contentHandler){
+		return engine == ENGINE_DIRECT || contentHandler instanceof PrimitiveContentHandler;
 	}
 	
 	/**
@@ -80,8 +420,12 @@ public class JSONParser {
 	}
 	
 	public Object parse(String s, ContainerFactory containerFactory) throws ParseException{
-		StringReader in=new StringReader(s);
 		try{
+			if(engine == ENGINE_DIRECT){
+				resetChars().reset(s);
+				return parseValue(containerFactory);
+			}
+			StringReader in=new StringReader(s);
 			return parse(in, containerFactory);
 		}
 		catch(IOException ie){
@@ -112,12 +456,342 @@ public class JSONParser {
 	 * @throws IOException
 	 * @throws ParseException
 	 */
-    @SuppressLint("UseValueOf")
-    @SuppressWarnings({ "rawtypes", "unchecked" })
     public Object parse(Reader in, ContainerFactory containerFactory) throws IOException, ParseException{
 		reset(in);
-		LinkedList statusStack = new LinkedList();
-		LinkedList valueStack = new LinkedList();
+		return parseValue(containerFactory);
+	}
+	
+	public Object parse(byte[] bytes) throws ParseException{
+		return parse(bytes, 0, bytes.length, (ContainerFactory)null);
+	}
+	
+	public Object parse(byte[] bytes, ContainerFactory containerFactory) throws ParseException{
+		return parse(bytes, 0, bytes.length, containerFactory);
+	}
+	
+	public Object parse(byte[] bytes, int offset, int length) throws ParseException{
+		return parse(bytes, offset, length, (ContainerFactory)null);
+	}
+	
+	/**
+	 * Parse UTF-8 encoded JSON text into java object from a range of a byte array.
+	 * The bytes are scanned directly, and only the contents of string values are decoded.
+	 * Error positions are byte offsets from the start of the range.
+	 * 
+	 * @param bytes
+	 * @param offset - The offset of the first byte of the JSON text.
+	 * @param length - The number of bytes of JSON text.
+	 * @param containerFactory - Use this factory to create your own JSON object and JSON array containers.
+	 * @return Instance of the following:
+	 *  com.innerfunction.json.JSONObject,
+	 * 	com.innerfunction.json.JSONArray,
+	 * 	java.lang.String,
+	 * 	java.lang.Number,
+	 * 	java.lang.Boolean,
+	 * 	null
+	 * 
+	 * @throws ParseException
+	 */
+	public Object parse(byte[] bytes, int offset, int length, ContainerFactory containerFactory) throws ParseException{
+		resetUtf8().reset(bytes, offset, length);
+		try{
+			return parseValue(containerFactory);
+		}
+		catch(IOException ie){
+			/*
+			 * Actually it will never happen.
+			 */
+			throw new ParseException(-1, ParseException.ERROR_UNEXPECTED_EXCEPTION, ie);
+		}
+	}
+	
+	public Object parse(ByteBuffer buffer) throws ParseException{
+		return parse(buffer, (ContainerFactory)null);
+	}
+	
+	/**
+	 * Parse UTF-8 encoded JSON text into java object from the remaining bytes of a buffer.
+	 * Heap buffers are scanned in place; direct buffers are read in blocks. The buffer's
+	 * position is not modified. Error positions are byte offsets from the buffer's position.
+	 * 
+	 * @param buffer
+	 * @param containerFactory - Use this factory to create your own JSON object and JSON array containers.
+	 * @return See {@link #parse(byte[], int, int, ContainerFactory)}.
+	 * 
+	 * @throws ParseException
+	 */
+	public Object parse(ByteBuffer buffer, ContainerFactory containerFactory) throws ParseException{
+		resetUtf8().reset(buffer);
+		try{
+			return parseValue(containerFactory);
+		}
+		catch(IOException ie){
+			/*
+			 * Actually it will never happen.
+			 */
+			throw new ParseException(-1, ParseException.ERROR_UNEXPECTED_EXCEPTION, ie);
+		}
+	}
+	
+	public Object parse(InputStream in) throws IOException, ParseException{
+		return parse(in, (ContainerFactory)null);
+	}
+	
+	/**
+	 * Parse UTF-8 encoded JSON text into java object from an input stream.
+	 * The stream is read in blocks and the bytes are scanned directly, without an
+	 * intermediate Reader. Error positions are byte offsets from the start of the stream.
+	 * 
+	 * @param in
+	 * @param containerFactory - Use this factory to create your own JSON object and JSON array containers.
+	 * @return See {@link #parse(byte[], int, int, ContainerFactory)}.
+	 * 
+	 * @throws IOException
+	 * @throws ParseException
+	 */
+	public Object parse(InputStream in, ContainerFactory containerFactory) throws IOException, ParseException{
+		resetUtf8().reset(in);
+		return parseValue(containerFactory);
+	}
+	
+	public Object parse(File file) throws IOException, ParseException{
+		return parse(file, (ContainerFactory)null);
+	}
+	
+	/**
+	 * Parse UTF-8 encoded JSON text into java object from a file.
+	 * 
+	 * @param file
+	 * @param containerFactory - Use this factory to create your own JSON object and JSON array containers.
+	 * @return See {@link #parse(byte[], int, int, ContainerFactory)}.
+	 * @see #parse(FileChannel, ContainerFactory)
+	 * 
+	 * @throws IOException
+	 * @throws ParseException
+	 */
+	public Object parse(File file, ContainerFactory containerFactory) throws IOException, ParseException{
+		FileInputStream in=new FileInputStream(file);
+		try{
+			return parse(in.getChannel(), containerFactory);
+		}
+		finally{
+			in.close();
+		}
+	}
+	
+	public Object parse(FileChannel channel) throws IOException, ParseException{
+		return parse(channel, (ContainerFactory)null);
+	}
+	
+	/**
+	 * Parse UTF-8 encoded JSON text into java object from a file channel, from the channel's
+	 * position to the end of the file. The file is memory mapped in windows, and the mapped
+	 * bytes are scanned directly without an intermediate Reader, so files larger than 2GB
+	 * may be parsed. The channel's position is not modified. Error positions are byte offsets
+	 * from the channel's position.
+	 * 
+	 * @param channel
+	 * @param containerFactory - Use this factory to create your own JSON object and JSON array containers.
+	 * @return See {@link #parse(byte[], int, int, ContainerFactory)}.
+	 * 
+	 * @throws IOException
+	 * @throws ParseException
+	 */
+	public Object parse(FileChannel channel, ContainerFactory containerFactory) throws IOException, ParseException{
+		resetUtf8().reset(channel);
+		return parseValue(containerFactory);
+	}
+	
+	public Object parse(byte[] bytes, ExecutorService executor) throws ParseException{
+		return parse(bytes, 0, bytes.length, null, executor);
+	}
+	
+	public Object parse(byte[] bytes, ContainerFactory containerFactory, ExecutorService executor) throws ParseException{
+		return parse(bytes, 0, bytes.length, containerFactory, executor);
+	}
+	
+	/**
+	 * Parse UTF-8 encoded JSON text into java object from a range of a byte array, parsing the
+	 * elements of a large top level array or object in parallel.
+	 * The text is scanned for the boundaries between the top level value's elements, and slices
+	 * of elements are parsed by tasks submitted to the executor as the scan finds them. Small
+	 * documents, and documents whose top level value isn't an array or object, are parsed by
+	 * the calling thread. The result, and any error, is the same as for a sequential parse.
+	 * 
+	 * @param bytes
+	 * @param offset - The offset of the first byte of the JSON text.
+	 * @param length - The number of bytes of JSON text.
+	 * @param containerFactory - Use this factory to create your own JSON object and JSON array containers.
+	 * The factory is called from the executor's threads, and so must be thread safe.
+	 * @param executor - Runs the slice parsing tasks; e.g. a fixed thread pool, or a ForkJoinPool where available.
+	 * @return See {@link #parse(byte[], int, int, ContainerFactory)}.
+	 * 
+	 * @throws ParseException
+	 */
+	public Object parse(byte[] bytes, int offset, int length, ContainerFactory containerFactory, ExecutorService executor) throws ParseException{
+		return new ParallelParser(this, containerFactory, executor).parse(bytes, offset, length);
+	}
+	
+	public Object parse(File file, ExecutorService executor) throws IOException, ParseException{
+		return parse(file, null, executor);
+	}
+	
+	/**
+	 * Parse UTF-8 encoded JSON text into java object from a file, parsing the elements of a
+	 * large top level array or object in parallel.
+	 * 
+	 * @param file
+	 * @param containerFactory - Use this factory to create your own JSON object and JSON array containers.
+	 * The factory is called from the executor's threads, and so must be thread safe.
+	 * @param executor - Runs the slice parsing tasks.
+	 * @return See {@link #parse(byte[], int, int, ContainerFactory)}.
+	 * @see #parse(FileChannel, ContainerFactory, ExecutorService)
+	 * 
+	 * @throws IOException
+	 * @throws ParseException
+	 */
+	public Object parse(File file, ContainerFactory containerFactory, ExecutorService executor) throws IOException, ParseException{
+		FileInputStream in=new FileInputStream(file);
+		try{
+			return parse(in.getChannel(), containerFactory, executor);
+		}
+		finally{
+			in.close();
+		}
+	}
+	
+	public Object parse(FileChannel channel, ExecutorService executor) throws IOException, ParseException{
+		return parse(channel, null, executor);
+	}
+	
+	/**
+	 * Parse UTF-8 encoded JSON text into java object from a file channel, from the channel's
+	 * position to the end of the file, parsing the elements of a large top level array or object
+	 * in parallel. The file is read once by the calling thread to find the boundaries between
+	 * the top level value's elements, and each slice of elements is memory mapped and parsed
+	 * by a task submitted to the executor. The channel's position is not modified.
+	 * 
+	 * @param channel
+	 * @param containerFactory - Use this factory to create your own JSON object and JSON array containers.
+	 * The factory is called from the executor's threads, and so must be thread safe.
+	 * @param executor - Runs the slice parsing tasks.
+	 * @return See {@link #parse(byte[], int, int, ContainerFactory)}.
+	 * @see #parse(byte[], int, int, ContainerFactory, ExecutorService)
+	 * 
+	 * @throws IOException
+	 * @throws ParseException
+	 */
+	public Object parse(FileChannel channel, ContainerFactory containerFactory, ExecutorService executor) throws IOException, ParseException{
+		return new ParallelParser(this, containerFactory, executor).parse(channel);
+	}
+	
+	public Object parse(String s, Set<String> keyPaths) throws ParseException{
+		return parse(s, keyPaths, (ContainerFactory)null);
+	}
+	
+	public Object parse(String s, Set<String> keyPaths, ContainerFactory containerFactory) throws ParseException{
+		resetChars().reset(s);
+		try{
+			return parseProjected(KeyPathProjection.compile(keyPaths), containerFactory);
+		}
+		catch(IOException ie){
+			/*
+			 * Actually it will never happen.
+			 */
+			throw new ParseException(-1, ParseException.ERROR_UNEXPECTED_EXCEPTION, ie);
+		}
+	}
+	
+	public Object parse(Reader in, Set<String> keyPaths) throws IOException, ParseException{
+		return parse(in, keyPaths, (ContainerFactory)null);
+	}
+	
+	/**
+	 * Parse only the parts of JSON text selected by a set of key paths into java object.
+	 * Key paths use the same dotted syntax as {@link com.innerfunction.json.JSONAware#resolve(String)},
+	 * e.g. "data.user.name" or "items.0.id", and each selects the whole of the value it resolves to.
+	 * Containers are only created along the selected paths; every other value is skipped by the
+	 * lexer without being decoded, so the memory used and the time taken depend mostly on the
+	 * size of the selection, rather than of the document. Resolving a selected key path on the
+	 * result gives the same value as resolving it on the result of a full parse.
+	 * 
+	 * Array elements before a selected element are replaced with nulls, so that indexes are
+	 * unchanged; elements after the last selected element are dropped. Skipped values are only
+	 * checked for balanced brackets, so some syntax errors within them aren't reported.
+	 * 
+	 * @param in
+	 * @param keyPaths - The key paths to select.
+	 * @param containerFactory - Use this factory to create your own JSON object and JSON array containers.
+	 * @return See {@link #parse(Reader, ContainerFactory)}.
+	 * 
+	 * @throws IOException
+	 * @throws ParseException
+	 */
+	public Object parse(Reader in, Set<String> keyPaths, ContainerFactory containerFactory) throws IOException, ParseException{
+		resetChars().reset(in);
+		return parseProjected(KeyPathProjection.compile(keyPaths), containerFactory);
+	}
+	
+	public Object parse(byte[] bytes, Set<String> keyPaths) throws ParseException{
+		return parse(bytes, keyPaths, (ContainerFactory)null);
+	}
+	
+	/**
+	 * Parse only the parts of UTF-8 encoded JSON text selected by a set of key paths into java object.
+	 * @see #parse(Reader, Set, ContainerFactory)
+	 */
+	public Object parse(byte[] bytes, Set<String> keyPaths, ContainerFactory containerFactory) throws ParseException{
+		resetUtf8().reset(bytes, 0, bytes.length);
+		try{
+			return parseProjected(KeyPathProjection.compile(keyPaths), containerFactory);
+		}
+		catch(IOException ie){
+			/*
+			 * Actually it will never happen.
+			 */
+			throw new ParseException(-1, ParseException.ERROR_UNEXPECTED_EXCEPTION, ie);
+		}
+	}
+	
+	public Object parse(InputStream in, Set<String> keyPaths) throws IOException, ParseException{
+		return parse(in, keyPaths, (ContainerFactory)null);
+	}
+	
+	/**
+	 * Parse only the parts of UTF-8 encoded JSON text from an input stream selected by a set of
+	 * key paths into java object.
+	 * @see #parse(Reader, Set, ContainerFactory)
+	 */
+	public Object parse(InputStream in, Set<String> keyPaths, ContainerFactory containerFactory) throws IOException, ParseException{
+		resetUtf8().reset(in);
+		return parseProjected(KeyPathProjection.compile(keyPaths), containerFactory);
+	}
+	
+	/**
+	 * Parse a value from the current lexer's input.
+	 */
+    @SuppressLint("UseValueOf")
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private Object parseValue(ContainerFactory containerFactory) throws IOException, ParseException{
+		useStringTables(containerFactory);
+		if(direct){
+			busy = true;
+			try{
+				return parseValueDirect((AbstractLexer)lexer, containerFactory);
+			}
+			finally{
+				// Don't pin the input, or a partial document, between calls.
+				Arrays.fill(containerStack, 0, depth, null);
+				depth = 0;
+				lexer.yyrelease();
+				busy = false;
+			}
+		}
+		busy = true;
+		LinkedList statusStack = this.statusStack;
+		LinkedList valueStack = this.valueStack;
+		statusStack.clear();
+		valueStack.clear();
 		
 		try{
 			do{
@@ -156,8 +830,8 @@ public class JSONParser {
 					case Yytoken.TYPE_COMMA:
 						break;
 					case Yytoken.TYPE_VALUE:
-						if(token.value instanceof String){
-							String key=(String)token.value;
+						if(token.value instanceof String || token.value instanceof JSONString){
+							String key=token.value.toString();
 							valueStack.addFirst(key);
 							status=S_PASSED_PAIR_KEY;
 							statusStack.addFirst(new Integer(status));
@@ -267,18 +941,307 @@ public class JSONParser {
 		catch(IOException ie){
 			throw ie;
 		}
+		finally{
+			// Don't pin the input, or a partial document, between calls.
+			statusStack.clear();
+			valueStack.clear();
+			lexer.yyrelease();
+			busy = false;
+		}
 		
 		throw new ParseException(getPosition(), ParseException.ERROR_UNEXPECTED_TOKEN, token);
 	}
 	
+	/**
+	 * Parse a value from the current lexer's input using the direct engine.
+	 * The grammar is the same as the state machine's.
+	 */
+	private Object parseValueDirect(AbstractLexer lexer, ContainerFactory containerFactory) throws IOException, ParseException{
+		Object value=parseTreeDirect(lexer, lexer.next(), containerFactory);
+		int type=lexer.next();
+		if(type!=AbstractLexer.T_EOF)
+			throw unexpectedToken(lexer, type);
+		return value;
+	}
+	
+	/**
+	 * Parse a value using the direct engine, from the value's first token.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private Object parseTreeDirect(AbstractLexer lexer, int type, ContainerFactory containerFactory) throws IOException, ParseException{
+		Object value;
+		switch(type){
+		case AbstractLexer.T_LEFT_BRACE:
+			value=createObjectContainer(containerFactory);
+			pushContainer(S_IN_OBJECT, value);
+			break;
+		case AbstractLexer.T_LEFT_SQUARE:
+			value=createArrayContainer(containerFactory);
+			pushContainer(S_IN_ARRAY, value);
+			break;
+		default:
+			if(type<AbstractLexer.T_STRING)
+				throw unexpectedToken(lexer, type);
+			value=lexer.value(type);
+		}
+		
+		while(depth>0){
+			Object container=containerStack[depth-1];
+			type=lexer.next();
+			if(stateStack[depth-1]==S_IN_OBJECT){
+				switch(type){
+				case AbstractLexer.T_COMMA:
+					break;
+				case AbstractLexer.T_STRING:
+					String key=lexer.keyValue();
+					do{
+						type=lexer.next();
+					}while(type==AbstractLexer.T_COLON);
+					Map parent=(Map)container;
+					switch(type){
+					case AbstractLexer.T_LEFT_BRACE:
+						Map newObject=createObjectContainer(containerFactory);
+						parent.put(key, newObject);
+						pushContainer(S_IN_OBJECT, newObject);
+						break;
+					case AbstractLexer.T_LEFT_SQUARE:
+						List newArray=createArrayContainer(containerFactory);
+						parent.put(key, newArray);
+						pushContainer(S_IN_ARRAY, newArray);
+						break;
+					default:
+						if(type<AbstractLexer.T_STRING)
+							throw unexpectedToken(lexer, type);
+						parent.put(key, lexer.value(type));
+					}
+					break;
+				case AbstractLexer.T_RIGHT_BRACE:
+					containerStack[--depth]=null;
+					break;
+				default:
+					throw unexpectedToken(lexer, type);
+				}
+			}
+			else{
+				List parent=(List)container;
+				switch(type){
+				case AbstractLexer.T_COMMA:
+					break;
+				case AbstractLexer.T_RIGHT_SQUARE:
+					containerStack[--depth]=null;
+					break;
+				case AbstractLexer.T_LEFT_BRACE:
+					Map newObject=createObjectContainer(containerFactory);
+					parent.add(newObject);
+					pushContainer(S_IN_OBJECT, newObject);
+					break;
+				case AbstractLexer.T_LEFT_SQUARE:
+					List newArray=createArrayContainer(containerFactory);
+					parent.add(newArray);
+					pushContainer(S_IN_ARRAY, newArray);
+					break;
+				default:
+					if(type<AbstractLexer.T_STRING)
+						throw unexpectedToken(lexer, type);
+					parent.add(lexer.value(type));
+				}
+			}
+		}
+		return value;
+	}
+	
+	/**
+	 * Parse a slice of the body of a top level array or object, for a parallel parse: a sequence
+	 * of array elements, or of object entries, with the same grammar as the body of a container.
+	 * 
+	 * @param options - The parser whose options apply to the slice.
+	 * @return The elements; or the keys and values of the entries, alternately.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	List parseSlice(ByteBuffer slice, boolean isObject, ContainerFactory containerFactory, JSONParser options) throws IOException, ParseException{
+		Utf8Lexer lexer=resetUtf8();
+		lexer.reset(slice);
+		options.configure(lexer);
+		useStringTables(containerFactory);
+		busy = true;
+		try{
+			List values=new ArrayList();
+			while(true){
+				int type=lexer.next();
+				switch(type){
+				case AbstractLexer.T_EOF:
+					return values;
+				case AbstractLexer.T_COMMA:
+					break;
+				default:
+					if(isObject){
+						if(type!=AbstractLexer.T_STRING)
+							throw unexpectedToken(lexer, type);
+						values.add(lexer.keyValue());
+						do{
+							type=lexer.next();
+						}while(type==AbstractLexer.T_COLON);
+					}
+					values.add(parseTreeDirect(lexer, type, containerFactory));
+				}
+			}
+		}
+		finally{
+			Arrays.fill(containerStack, 0, depth, null);
+			depth = 0;
+			lexer.yyrelease();
+			busy = false;
+		}
+	}
+	
+	/**
+	 * Parse the parts of the current lexer's input selected by a projection.
+	 */
+	private Object parseProjected(KeyPathProjection projection, ContainerFactory containerFactory) throws IOException, ParseException{
+		useStringTables(containerFactory);
+		AbstractLexer lexer=(AbstractLexer)this.lexer;
+		busy = true;
+		try{
+			Object value=parseProjectedValue(lexer, lexer.next(), projection, containerFactory);
+			int type=lexer.next();
+			if(type!=AbstractLexer.T_EOF)
+				throw unexpectedToken(lexer, type);
+			return value;
+		}
+		finally{
+			Arrays.fill(containerStack, 0, depth, null);
+			depth = 0;
+			lexer.skipValues = false;
+			lexer.yyrelease();
+			busy = false;
+		}
+	}
+	
+	/**
+	 * Parse the parts of a value selected by a projection, from the value's first token.
+	 * Object entries and array elements which aren't selected are skipped by the lexer, without
+	 * decoding their values; array elements before a selected element are replaced with nulls,
+	 * and the elements after the last selected element are dropped.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private Object parseProjectedValue(AbstractLexer lexer, int type, KeyPathProjection projection, ContainerFactory containerFactory) throws IOException, ParseException{
+		if(projection.isAll())
+			return parseTreeDirect(lexer, type, containerFactory);
+		switch(type){
+		case AbstractLexer.T_LEFT_BRACE:
+			Map object=createObjectContainer(containerFactory);
+			while(true){
+				type=lexer.next();
+				switch(type){
+				case AbstractLexer.T_COMMA:
+					break;
+				case AbstractLexer.T_STRING:
+					String key=lexer.keyValue();
+					KeyPathProjection entry=projection.entry(key);
+					lexer.skipValues=entry==null;
+					do{
+						type=lexer.next();
+					}while(type==AbstractLexer.T_COLON);
+					lexer.skipValues=false;
+					if(entry!=null)
+						object.put(key, parseProjectedValue(lexer, type, entry, containerFactory));
+					else
+						skipValue(lexer, type);
+					break;
+				case AbstractLexer.T_RIGHT_BRACE:
+					return object;
+				default:
+					throw unexpectedToken(lexer, type);
+				}
+			}
+		case AbstractLexer.T_LEFT_SQUARE:
+			List array=createArrayContainer(containerFactory);
+			int count=projection.elementCount();
+			int index=0;
+			while(true){
+				KeyPathProjection element=index<count ? projection.element(index) : null;
+				lexer.skipValues=element==null;
+				type=lexer.next();
+				lexer.skipValues=false;
+				switch(type){
+				case AbstractLexer.T_COMMA:
+					break;
+				case AbstractLexer.T_RIGHT_SQUARE:
+					return array;
+				default:
+					if(element!=null)
+						array.add(parseProjectedValue(lexer, type, element, containerFactory));
+					else{
+						skipValue(lexer, type);
+						if(index<count)
+							array.add(null);
+					}
+					index++;
+				}
+			}
+		default:
+			// A primitive on a selected path; the rest of the path can't be resolved.
+			if(type<AbstractLexer.T_STRING)
+				throw unexpectedToken(lexer, type);
+			return lexer.value(type);
+		}
+	}
+	
+	/**
+	 * Skip a value which isn't selected by a projection, from the value's first token.
+	 */
+	private void skipValue(AbstractLexer lexer, int type) throws IOException, ParseException{
+		if(type==AbstractLexer.T_LEFT_BRACE || type==AbstractLexer.T_LEFT_SQUARE){
+			if(!lexer.skipContainer())
+				throw unexpectedToken(lexer, AbstractLexer.T_EOF);
+		}
+		else if(type<AbstractLexer.T_STRING)
+			throw unexpectedToken(lexer, type);
+	}
+	
+	private void pushContainer(int state, Object container){
+		pushState(state);
+		containerStack[depth-1]=container;
+	}
+	
+	private void pushState(int state){
+		if(depth==stateStack.length){
+			int[] newStates=new int[depth*2];
+			System.arraycopy(stateStack, 0, newStates, 0, depth);
+			stateStack=newStates;
+			Object[] newContainers=new Object[depth*2];
+			System.arraycopy(containerStack, 0, newContainers, 0, depth);
+			containerStack=newContainers;
+		}
+		stateStack[depth++]=state;
+	}
+	
+	private int peekState(){
+		if(depth==0)
+			return -1;
+		return stateStack[depth-1];
+	}
+	
+	/**
+	 * Create the exception for an unexpected token found by the direct engine.
+	 */
+	private ParseException unexpectedToken(AbstractLexer lexer, int type){
+		if(type>=AbstractLexer.T_STRING)
+			token=new Yytoken(Yytoken.TYPE_VALUE, lexer.value(type));
+		else
+			token=new Yytoken(type, null);
+		return new ParseException(lexer.getPosition(), ParseException.ERROR_UNEXPECTED_TOKEN, token);
+	}
+	
 	private void nextToken() throws ParseException, IOException{
+		lexer.setKeyExpected(status == S_IN_OBJECT);
 		token = lexer.yylex();
 		if(token == null)
 			token = new Yytoken(Yytoken.TYPE_EOF, null);
 	}
 	
 	@SuppressWarnings("rawtypes")
-    private Map createObjectContainer(ContainerFactory containerFactory){
+    Map createObjectContainer(ContainerFactory containerFactory){
 		if(containerFactory == null)
 			return new JSONObject();
 		Map m = containerFactory.createObjectContainer();
@@ -289,7 +1252,7 @@ public class JSONParser {
 	}
 	
 	@SuppressWarnings("rawtypes")
-    private List createArrayContainer(ContainerFactory containerFactory){
+    List createArrayContainer(ContainerFactory containerFactory){
 		if(containerFactory == null)
 			return new JSONArray();
 		List l = containerFactory.creatArrayContainer();
@@ -304,8 +1267,14 @@ public class JSONParser {
 	}
 	
 	public void parse(String s, ContentHandler contentHandler, boolean isResume) throws ParseException{
-		StringReader in=new StringReader(s);
 		try{
+			if((!isResume || handlerStatusStack == null) && isDirect(contentHandler)){
+				resetChars().reset(s);
+				startContent();
+				parseContent(contentHandler);
+				return;
+			}
+			StringReader in=new StringReader(s);
 			parse(in, contentHandler, isResume);
 		}
 		catch(IOException ie){
@@ -320,10 +1289,76 @@ public class JSONParser {
 		parse(in, contentHandler, false);
 	}
 	
+	/**
+	 * Stream processing of UTF-8 encoded JSON text in a byte array.
+	 * 
+	 * @see #parse(Reader, ContentHandler, boolean)
+	 */
+	public void parse(byte[] bytes, ContentHandler contentHandler) throws ParseException{
+		resetUtf8(contentHandler).reset(bytes, 0, bytes.length);
+		try{
+			parseContent(contentHandler);
+		}
+		catch(IOException ie){
+			/*
+			 * Actually it will never happen.
+			 */
+			throw new ParseException(-1, ParseException.ERROR_UNEXPECTED_EXCEPTION, ie);
+		}
+	}
+	
+	public void parse(InputStream in, ContentHandler contentHandler) throws IOException, ParseException{
+		parse(in, contentHandler, false);
+	}
+	
+	/**
+	 * Stream processing of UTF-8 encoded JSON text, read from an input stream.
+	 * 
+	 * @see #parse(Reader, ContentHandler, boolean)
+	 */
+	public void parse(InputStream in, ContentHandler contentHandler, boolean isResume) throws IOException, ParseException{
+		if(!isResume || handlerStatusStack == null){
+			resetUtf8(contentHandler).reset(in);
+		}
+		parseContent(contentHandler);
+	}
+	
+	/**
+	 * Stream processing of UTF-8 encoded JSON text in a file. The file is closed when this
+	 * method returns, so a parse stopped by the handler can't be resumed.
+	 * 
+	 * @see #parse(FileChannel, ContentHandler, boolean)
+	 */
+	public void parse(File file, ContentHandler contentHandler) throws IOException, ParseException{
+		FileInputStream in=new FileInputStream(file);
+		try{
+			parse(in.getChannel(), contentHandler, false);
+		}
+		finally{
+			in.close();
+		}
+	}
+	
+	/**
+	 * Stream processing of UTF-8 encoded JSON text in a file, which is memory mapped.
+	 * 
+	 * @see #parse(FileChannel, ContainerFactory)
+	 * @see #parse(Reader, ContentHandler, boolean)
+	 */
+	public void parse(FileChannel channel, ContentHandler contentHandler, boolean isResume) throws IOException, ParseException{
+		if(!isResume || handlerStatusStack == null){
+			resetUtf8(contentHandler).reset(channel);
+		}
+		parseContent(contentHandler);
+	}
+	
 	/**
 	 * Stream processing of JSON text.
+	 * If the handler is a {@link PrimitiveContentHandler} then primitive values and object
+	 * entry keys are passed to it without being boxed or copied.
 	 * 
 	 * @see ContentHandler
+	 * @see PrimitiveContentHandler
 	 * 
 	 * @param in
 	 * @param contentHandler
@@ -334,22 +1369,29 @@ public class JSONParser {
 	 * @throws IOException
 	 * @throws ParseException
 	 */
-	@SuppressLint("UseValueOf")
-    @SuppressWarnings({ "rawtypes", "unchecked" })
     public void parse(Reader in, ContentHandler contentHandler, boolean isResume) throws IOException, ParseException{
-		if(!isResume){
-			reset(in);
-			handlerStatusStack = new LinkedList();
-		}
-		else{
-			if(handlerStatusStack == null){
-				isResume = false;
+		if(!isResume || handlerStatusStack == null){
+			if(isDirect(contentHandler))
+				resetChars().reset(in);
+			else
 				reset(in);
-				handlerStatusStack = new LinkedList();
-			}
+			startContent();
+		}
+		parseContent(contentHandler);
+	}
+	
+	/**
+	 * Stream processing of the current lexer's input.
+	 */
+	@SuppressLint("UseValueOf")
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void parseContent(ContentHandler contentHandler) throws IOException, ParseException{
+		if(direct){
+			parseContentDirect((AbstractLexer)lexer, contentHandler);
+			return;
 		}
-		
 		LinkedList statusStack = handlerStatusStack;	
+		busy = true;
 		
 		try{
 			do{
@@ -399,8 +1441,8 @@ public class JSONParser {
 					case Yytoken.TYPE_COMMA:
 						break;
 					case Yytoken.TYPE_VALUE:
-						if(token.value instanceof String){
-							String key=(String)token.value;
+						if(token.value instanceof String || token.value instanceof JSONString){
+							String key=token.value.toString();
 							status=S_PASSED_PAIR_KEY;
 							statusStack.addFirst(new Integer(status));
 							if(!contentHandler.startObjectEntry(key))
@@ -536,8 +1578,239 @@ public class JSONParser {
 			status = S_IN_ERROR;
 			throw e;
 		}
+		finally{
+			// Stay busy while a stopped parse may still be resumed.
+			busy = status != S_END && status != S_IN_ERROR;
+		}
 		
 		status = S_IN_ERROR;
 		throw new ParseException(getPosition(), ParseException.ERROR_UNEXPECTED_TOKEN, token);
 	}
+	
+	/**
+	 * Stream processing of the current lexer's input using the direct engine.
+	 * The handler is notified of the same events, and may stop and resume parsing at the
+	 * same points, as with the state machine.
+	 */
+	private void parseContentDirect(AbstractLexer lexer, ContentHandler contentHandler) throws IOException, ParseException{
+		PrimitiveContentHandler primitiveHandler=null;
+		if(contentHandler instanceof PrimitiveContentHandler)
+			primitiveHandler=(PrimitiveContentHandler)contentHandler;
+		lexer.lazyNumbers = lazyNumbers && primitiveHandler == null;
+		lexer.stringViews = stringViews && primitiveHandler == null;
+		busy = true;
+		try{
+			while(true){
+				int type;
+				switch(status){
+				case S_INIT:
+					contentHandler.startJSON();
+					status=S_STARTED;
+					continue;
+				case S_STARTED:
+					type=lexer.next();
+					switch(type){
+					case AbstractLexer.T_MORE:
+						return;
+					case AbstractLexer.T_LEFT_BRACE:
+						status=S_IN_OBJECT;
+						pushState(status);
+						if(!contentHandler.startObject())
+							return;
+						break;
+					case AbstractLexer.T_LEFT_SQUARE:
+						status=S_IN_ARRAY;
+						pushState(status);
+						if(!contentHandler.startArray())
+							return;
+						break;
+					default:
+						if(type<AbstractLexer.T_STRING)
+							throw unexpectedToken(lexer, type);
+						status=S_IN_FINISHED_VALUE;
+						pushState(status);
+						if(!primitive(lexer, type, contentHandler, primitiveHandler))
+							return;
+					}
+					break;
+					
+				case S_IN_FINISHED_VALUE:
+					type=lexer.next();
+					if(type==AbstractLexer.T_MORE)
+						return;
+					if(type==AbstractLexer.T_EOF){
+						contentHandler.endJSON();
+						status = S_END;
+						return;
+					}
+					throw unexpectedToken(lexer, type);
+					
+				case S_IN_OBJECT:
+					type=lexer.next();
+					switch(type){
+					case AbstractLexer.T_MORE:
+						return;
+					case AbstractLexer.T_COMMA:
+						break;
+					case AbstractLexer.T_STRING:
+						status=S_PASSED_PAIR_KEY;
+						pushState(status);
+						if(primitiveHandler!=null){
+							if(!primitiveHandler.startObjectEntry(lexer.stringChars, lexer.stringOffset, lexer.stringLength))
+								return;
+						}
+						else if(!contentHandler.startObjectEntry(lexer.keyValue()))
+							return;
+						break;
+					case AbstractLexer.T_RIGHT_BRACE:
+						if(depth>1){
+							depth--;
+							status=peekState();
+						}
+						else{
+							status=S_IN_FINISHED_VALUE;
+						}
+						if(!contentHandler.endObject())
+							return;
+						break;
+					default:
+						throw unexpectedToken(lexer, type);
+					}
+					break;
+					
+				case S_PASSED_PAIR_KEY:
+					type=lexer.next();
+					switch(type){
+					case AbstractLexer.T_MORE:
+						return;
+					case AbstractLexer.T_COLON:
+						break;
+					case AbstractLexer.T_LEFT_SQUARE:
+						depth--;
+						pushState(S_IN_PAIR_VALUE);
+						status=S_IN_ARRAY;
+						pushState(status);
+						if(!contentHandler.startArray())
+							return;
+						break;
+					case AbstractLexer.T_LEFT_BRACE:
+						depth--;
+						pushState(S_IN_PAIR_VALUE);
+						status=S_IN_OBJECT;
+						pushState(status);
+						if(!contentHandler.startObject())
+							return;
+						break;
+					default:
+						if(type<AbstractLexer.T_STRING)
+							throw unexpectedToken(lexer, type);
+						depth--;
+						status=peekState();
+						if(!primitive(lexer, type, contentHandler, primitiveHandler))
+							return;
+						if(!contentHandler.endObjectEntry())
+							return;
+					}
+					break;
+					
+				case S_IN_PAIR_VALUE:
+					depth--;
+					status=peekState();
+					if(!contentHandler.endObjectEntry())
+						return;
+					break;
+					
+				case S_IN_ARRAY:
+					type=lexer.next();
+					switch(type){
+					case AbstractLexer.T_MORE:
+						return;
+					case AbstractLexer.T_COMMA:
+						break;
+					case AbstractLexer.T_RIGHT_SQUARE:
+						if(depth>1){
+							depth--;
+							status=peekState();
+						}
+						else{
+							status=S_IN_FINISHED_VALUE;
+						}
+						if(!contentHandler.endArray())
+							return;
+						break;
+					case AbstractLexer.T_LEFT_BRACE:
+						status=S_IN_OBJECT;
+						pushState(status);
+						if(!contentHandler.startObject())
+							return;
+						break;
+					case AbstractLexer.T_LEFT_SQUARE:
+						status=S_IN_ARRAY;
+						pushState(status);
+						if(!contentHandler.startArray())
+							return;
+						break;
+					default:
+						if(type<AbstractLexer.T_STRING)
+							throw unexpectedToken(lexer, type);
+						if(!primitive(lexer, type, contentHandler, primitiveHandler))
+							return;
+					}
+					break;
+					
+				case S_END:
+					return;
+					
+				default:
+					throw new ParseException(getPosition(), ParseException.ERROR_UNEXPECTED_TOKEN, token);
+				}
+			}
+		}
+		catch(IOException ie){
+			status = S_IN_ERROR;
+			throw ie;
+		}
+		catch(ParseException pe){
+			status = S_IN_ERROR;
+			throw pe;
+		}
+		catch(RuntimeException re){
+			status = S_IN_ERROR;
+			throw re;
+		}
+		catch(Error e){
+			status = S_IN_ERROR;
+			throw e;
+		}
+		finally{
+			// Stay busy while a stopped parse may still be resumed.
+			busy = status != S_END && status != S_IN_ERROR;
+		}
+	}	
+	/**
+	 * Pass the value of the current token to a handler; unboxed, if the handler accepts it.
+	 * @return false if the handler wants to stop parsing.
+	 */
+	private boolean primitive(AbstractLexer lexer, int type, ContentHandler contentHandler, PrimitiveContentHandler primitiveHandler) throws IOException, ParseException{
+		if(primitiveHandler==null)
+			return contentHandler.primitive(lexer.value(type));
+		switch(type){
+		case AbstractLexer.T_STRING:
+			return primitiveHandler.stringValue(lexer.stringChars, lexer.stringOffset, lexer.stringLength);
+		case AbstractLexer.T_LONG:
+			if(lexer.bigValue!=null)
+				return primitiveHandler.primitive(lexer.bigValue);
+			return primitiveHandler.longValue(lexer.longValue);
+		case AbstractLexer.T_DOUBLE:
+			if(lexer.bigValue!=null)
+				return primitiveHandler.primitive(lexer.bigValue);
+			return primitiveHandler.doubleValue(lexer.doubleValue);
+		case AbstractLexer.T_TRUE:
+			return primitiveHandler.booleanValue(true);
+		case AbstractLexer.T_FALSE:
+			return primitiveHandler.booleanValue(false);
+		default:
+			return primitiveHandler.nullValue();
+		}
+	}
 }
@@ -0,0 +1,151 @@
+package com.innerfunction.json.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Non-blocking parser for UTF-8 encoded JSON text which arrives in chunks, e.g. from a
+ * non-blocking socket channel.
+ *
+ * Each call to {@link #feed(byte[], int, int)} parses as much of the input pushed so far as it
+ * can, and then returns without waiting for more. Tokens split between chunks - including
+ * strings, numbers and UTF-8 sequences - are kept in the parser until the rest arrives. The
+ * parser reports the document either as {@link ContentHandler} events, as they occur, or as a
+ * value built from JSONObject and JSONArray containers, which is available as soon as the top
+ * level value is complete. Call {@link #end()} once all the input has been pushed.
+ *
+ * If the content handler stops the parse then feed() returns false, and the unparsed input is
+ * kept until {@link #resume()} is called. Chunks aren't retained by the parser once feed()
+ * returns, so the caller may reuse its buffers.
+ *
+ * Token positions and errors are the same as for a whole document parse of the same bytes by
+ * {@link JSONParser}. Like JSONParser, a push parser is not thread-safe.
+ */
+public class JSONPushParser {
+
+    private final JSONParser parser = new JSONParser( JSONParser.ENGINE_DIRECT );
+    private final ContentHandler contentHandler;
+    /** Builds the parsed value, if no content handler was supplied. */
+    private final ValueBuilder valueBuilder;
+    private Utf8Lexer lexer;
+
+    /**
+     * Create a parser which builds the document's value from JSONObject and JSONArray containers.
+     */
+    public JSONPushParser() {
+        this( (ContainerFactory)null );
+    }
+
+    /**
+     * Create a parser which builds the document's value.
+     * @param containerFactory Used to create the value's containers; may be null.
+     */
+    public JSONPushParser(ContainerFactory containerFactory) {
+        this.valueBuilder = new ValueBuilder( containerFactory );
+        this.contentHandler = valueBuilder;
+        reset();
+    }
+
+    /**
+     * Create a parser which reports the document to a content handler. The handler may be a
+     * {@link PrimitiveContentHandler}.
+     */
+    public JSONPushParser(ContentHandler contentHandler) {
+        this.valueBuilder = null;
+        this.contentHandler = contentHandler;
+        reset();
+    }
+
+    /**
+     * Reset the parser, discarding any pushed input, so that it can be used to parse a new document.
+     */
+    public void reset() {
+        lexer = parser.resetPush( contentHandler );
+        if( valueBuilder != null ) {
+            valueBuilder.startJSON();
+        }
+    }
+
+    /**
+     * Push a chunk of input to the parser, and parse as much of the input as possible.
+     * @return false if the content handler stopped the parse before all the input was consumed.
+     * @throws ParseException If the input isn't valid JSON; the parser can't be used again until reset.
+     */
+    public boolean feed(byte[] bytes) throws IOException, ParseException {
+        return feed( bytes, 0, bytes.length );
+    }
+
+    /**
+     * Push a range of a byte array to the parser, and parse as much of the input as possible.
+     * @return false if the content handler stopped the parse before all the input was consumed.
+     * @throws ParseException If the input isn't valid JSON; the parser can't be used again until reset.
+     */
+    public boolean feed(byte[] bytes, int offset, int length) throws IOException, ParseException {
+        lexer.feed( bytes, offset, length );
+        return parse();
+    }
+
+    /**
+     * Push the remaining bytes of a buffer to the parser, and parse as much of the input as possible.
+     * The buffer's position is moved to its limit.
+     * @return false if the content handler stopped the parse before all the input was consumed.
+     * @throws ParseException If the input isn't valid JSON; the parser can't be used again until reset.
+     */
+    public boolean feed(ByteBuffer buffer) throws IOException, ParseException {
+        lexer.feed( buffer );
+        return parse();
+    }
+
+    /**
+     * Resume a parse which was stopped by the content handler.
+     * @return false if the content handler stopped the parse again.
+     */
+    public boolean resume() throws IOException, ParseException {
+        return parse();
+    }
+
+    /**
+     * Signal the end of the input, and complete the parse.
+     * @return The document's value, if the parser is building it; otherwise null. Also null if
+     * the content handler stopped the parse before its end.
+     * @throws ParseException If the input ends before the document is complete.
+     */
+    public Object end() throws IOException, ParseException {
+        lexer.end();
+        parse();
+        return getValue();
+    }
+
+    /**
+     * @return true if the parser is building the document's value, and the top level value is
+     * complete. More input may still follow, but anything other than whitespace is an error.
+     */
+    public boolean hasValue() {
+        return valueBuilder != null && valueBuilder.isComplete();
+    }
+
+    /**
+     * @return The document's value, if the parser is building it and the top level value is
+     * complete; otherwise null.
+     */
+    public Object getValue() {
+        return valueBuilder != null ? valueBuilder.getValue() : null;
+    }
+
+    /**
+     * @return The position of the beginning of the current token.
+     */
+    public int getPosition() {
+        return parser.getPosition();
+    }
+
+    private boolean parse() throws IOException, ParseException {
+        try {
+            parser.parsePushed( contentHandler );
+            return lexer.isWaiting() || parser.isFinished();
+        }
+        finally {
+            lexer.retain();
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package com.innerfunction.json.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * A pull parser, which reads a JSON document one token at a time.
+ *
+ * The caller asks for the tokens it expects, e.g. {@link #beginObject()}, {@link #nextName()},
+ * {@link #nextLong()}; and can use {@link #peek()} to find the kind of the next token first.
+ * Values which aren't needed can be skipped with {@link #skipValue()}, which only counts the
+ * brackets of a skipped object or array, without decoding its strings or numbers.
+ *
+ * The reader accepts the same input as JSONParser, and reports syntax errors as ParseExceptions
+ * at the same positions. Asking for a token of the wrong kind causes an IllegalStateException.
+ * Like JSONParser, a reader is not thread-safe.
+ */
+public class JSONReader implements Closeable {
+
+    /** The kinds of token returned by the reader. */
+    public enum Token { BeginObject, EndObject, BeginArray, EndArray, Name, String, Number, Boolean, Null, EndDocument };
+
+    /** Reader states, for each level of nesting. */
+    private static final int S_DOCUMENT = 0;        // Expecting the top level value.
+    private static final int S_DOCUMENT_END = 1;    // Expecting the end of the input.
+    private static final int S_OBJECT = 2;          // Expecting a name, or the end of the object.
+    private static final int S_NAME = 3;            // Expecting the value of an object entry.
+    private static final int S_ARRAY = 4;           // Expecting a value, or the end of the array.
+
+    /** Marks that no token has been peeked. */
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private final AbstractLexer lexer;
+    /** The input, closed by close(). */
+    private final Closeable source;
+    private int[] stack = new int[32];
+    private int depth;
+    /** The lexer token type of the next token, if already scanned. */
+    private int peeked = NONE;
+
+    /**
+     * Create a reader for JSON text read from a character reader.
+     */
+    public JSONReader(Reader in) {
+        CharLexer lexer = new CharLexer();
+        lexer.reset( in );
+        this.lexer = lexer;
+        this.source = in;
+        init();
+    }
+
+    /**
+     * Create a reader for JSON text in a string.
+     */
+    public JSONReader(String s) {
+        CharLexer lexer = new CharLexer();
+        lexer.reset( s );
+        this.lexer = lexer;
+        this.source = null;
+        init();
+    }
+
+    /**
+     * Create a reader for UTF-8 encoded JSON text read from an input stream.
+     * Token positions are byte offsets.
+     */
+    public JSONReader(InputStream in) {
+        Utf8Lexer lexer = new Utf8Lexer();
+        lexer.reset( in );
+        this.lexer = lexer;
+        this.source = in;
+        init();
+    }
+
+    /**
+     * Create a reader for UTF-8 encoded JSON text in a byte array.
+     * Token positions are byte offsets.
+     */
+    public JSONReader(byte[] bytes) {
+        this( bytes, 0, bytes.length );
+    }
+
+    /**
+     * Create a reader for UTF-8 encoded JSON text in a range of a byte array.
+     * Token positions are byte offsets from the start of the range.
+     */
+    public JSONReader(byte[] bytes, int offset, int length) {
+        Utf8Lexer lexer = new Utf8Lexer();
+        lexer.reset( bytes, offset, length );
+        this.lexer = lexer;
+        this.source = null;
+        init();
+    }
+
+    private void init() {
+        stack[0] = S_DOCUMENT;
+        depth = 1;
+    }
+
+    /**
+     * @return The kind of the next token, without consuming it.
+     */
+    public Token peek() throws IOException, ParseException {
+        switch( peekType() ) {
+        case AbstractLexer.T_LEFT_BRACE:    return Token.BeginObject;
+        case AbstractLexer.T_RIGHT_BRACE:   return Token.EndObject;
+        case AbstractLexer.T_LEFT_SQUARE:   return Token.BeginArray;
+        case AbstractLexer.T_RIGHT_SQUARE:  return Token.EndArray;
+        case AbstractLexer.T_STRING:        return stack[depth - 1] == S_OBJECT ? Token.Name : Token.String;
+        case AbstractLexer.T_LONG:
+        case AbstractLexer.T_DOUBLE:        return Token.Number;
+        case AbstractLexer.T_TRUE:
+        case AbstractLexer.T_FALSE:         return Token.Boolean;
+        case AbstractLexer.T_NULL:          return Token.Null;
+        default:                            return Token.EndDocument;
+        }
+    }
+
+    /**
+     * @return true if the current object or array has another entry or element.
+     */
+    public boolean hasNext() throws IOException, ParseException {
+        int type = peekType();
+        return type != AbstractLexer.T_RIGHT_BRACE && type != AbstractLexer.T_RIGHT_SQUARE && type != AbstractLexer.T_EOF;
+    }
+
+    /**
+     * Consume the next token, whatever its kind. The value of a name or primitive is discarded.
+     * @return The kind of the token consumed.
+     */
+    public Token nextToken() throws IOException, ParseException {
+        Token token = peek();
+        switch( peeked ) {
+        case AbstractLexer.T_LEFT_BRACE:
+        case AbstractLexer.T_LEFT_SQUARE:
+            beginContainer();
+            break;
+        case AbstractLexer.T_RIGHT_BRACE:
+        case AbstractLexer.T_RIGHT_SQUARE:
+            endContainer();
+            break;
+        case AbstractLexer.T_EOF:
+            break;
+        default:
+            consume();
+        }
+        return token;
+    }
+
+    /**
+     * Consume the beginning of an object.
+     */
+    public void beginObject() throws IOException, ParseException {
+        expect( AbstractLexer.T_LEFT_BRACE, Token.BeginObject );
+        beginContainer();
+    }
+
+    /**
+     * Consume the end of an object.
+     */
+    public void endObject() throws IOException, ParseException {
+        expect( AbstractLexer.T_RIGHT_BRACE, Token.EndObject );
+        endContainer();
+    }
+
+    /**
+     * Consume the beginning of an array.
+     */
+    public void beginArray() throws IOException, ParseException {
+        expect( AbstractLexer.T_LEFT_SQUARE, Token.BeginArray );
+        beginContainer();
+    }
+
+    /**
+     * Consume the end of an array.
+     */
+    public void endArray() throws IOException, ParseException {
+        expect( AbstractLexer.T_RIGHT_SQUARE, Token.EndArray );
+        endContainer();
+    }
+
+    /**
+     * Consume the name of an object entry.
+     */
+    public String nextName() throws IOException, ParseException {
+        if( peek() != Token.Name ) {
+            throw unexpected( Token.Name );
+        }
+        String name = lexer.stringValue();
+        consume();
+        return name;
+    }
+
+    /**
+     * Consume a string value. A number value is returned as its text.
+     */
+    public String nextString() throws IOException, ParseException {
+        Token token = peek();
+        String value;
+        if( token == Token.String ) {
+            value = lexer.stringValue();
+        }
+        else if( token == Token.Number ) {
+            value = new String( lexer.digits, 0, lexer.digitsLength );
+        }
+        else {
+            throw unexpected( Token.String );
+        }
+        consume();
+        return value;
+    }
+
+    /**
+     * Consume a number value as a long.
+     * @throws NumberFormatException If the number has a fractional part, or is out of range.
+     */
+    public long nextLong() throws IOException, ParseException {
+        long value;
+        switch( peekType() ) {
+        case AbstractLexer.T_LONG:
+            value = lexer.longValue;
+            break;
+        case AbstractLexer.T_DOUBLE:
+            double d = lexer.doubleValue;
+            value = (long)d;
+            if( value != d || d == 0x1p63 ) {
+                throw new NumberFormatException("Not a long: "+new String( lexer.digits, 0, lexer.digitsLength ));
+            }
+            break;
+        default:
+            throw unexpected( Token.Number );
+        }
+        consume();
+        return value;
+    }
+
+    /**
+     * Consume a number value as a double.
+     */
+    public double nextDouble() throws IOException, ParseException {
+        double value;
+        switch( peekType() ) {
+        case AbstractLexer.T_LONG:
+            value = lexer.longValue;
+            break;
+        case AbstractLexer.T_DOUBLE:
+            value = lexer.doubleValue;
+            break;
+        default:
+            throw unexpected( Token.Number );
+        }
+        consume();
+        return value;
+    }
+
+    /**
+     * Consume a true or false value.
+     */
+    public boolean nextBoolean() throws IOException, ParseException {
+        int type = peekType();
+        if( type != AbstractLexer.T_TRUE && type != AbstractLexer.T_FALSE ) {
+            throw unexpected( Token.Boolean );
+        }
+        consume();
+        return type == AbstractLexer.T_TRUE;
+    }
+
+    /**
+     * Consume a null value.
+     */
+    public void nextNull() throws IOException, ParseException {
+        expect( AbstractLexer.T_NULL, Token.Null );
+        consume();
+    }
+
+    /**
+     * Skip the next value. If the next token is the name of an object entry, then the name and
+     * the entry's value are skipped. An object or array is skipped by counting its brackets,
+     * without decoding the strings and numbers within it; so its contents are only checked for
+     * balanced brackets.
+     */
+    public void skipValue() throws IOException, ParseException {
+        lexer.skipValues = true;
+        try {
+            int type = peekType();
+            if( type == AbstractLexer.T_STRING && stack[depth - 1] == S_OBJECT ) {
+                consume();
+                type = peekType();
+            }
+            switch( type ) {
+            case AbstractLexer.T_LEFT_BRACE:
+            case AbstractLexer.T_LEFT_SQUARE:
+                peeked = NONE;
+                if( !lexer.skipContainer() ) {
+                    throw unexpectedToken( AbstractLexer.T_EOF );
+                }
+                valueConsumed();
+                break;
+            case AbstractLexer.T_RIGHT_BRACE:
+            case AbstractLexer.T_RIGHT_SQUARE:
+            case AbstractLexer.T_EOF:
+                throw unexpected( null );
+            default:
+                consume();
+            }
+        }
+        finally {
+            lexer.skipValues = false;
+        }
+    }
+
+    /**
+     * @return The position of the beginning of the current token.
+     */
+    public int getPosition() {
+        return lexer.getPosition();
+    }
+
+    /**
+     * Close the reader's input.
+     */
+    @Override
+    public void close() throws IOException {
+        lexer.yyrelease();
+        if( source != null ) {
+            source.close();
+        }
+    }
+
+    /**
+     * Scan the next token, if not already scanned, and check that it may occur at this point.
+     * Commas between values and colons after names are skipped, as by JSONParser.
+     * @return The lexer token type of the next token.
+     */
+    private int peekType() throws IOException, ParseException {
+        if( peeked != NONE ) {
+            return peeked;
+        }
+        int state = stack[depth - 1];
+        int type = lexer.next();
+        switch( state ) {
+        case S_DOCUMENT:
+            if( !isValueStart( type ) ) {
+                throw unexpectedToken( type );
+            }
+            break;
+        case S_DOCUMENT_END:
+            if( type != AbstractLexer.T_EOF ) {
+                throw unexpectedToken( type );
+            }
+            break;
+        case S_OBJECT:
+            while( type == AbstractLexer.T_COMMA ) {
+                type = lexer.next();
+            }
+            if( type != AbstractLexer.T_STRING && type != AbstractLexer.T_RIGHT_BRACE ) {
+                throw unexpectedToken( type );
+            }
+            break;
+        case S_NAME:
+            while( type == AbstractLexer.T_COLON ) {
+                type = lexer.next();
+            }
+            if( !isValueStart( type ) ) {
+                throw unexpectedToken( type );
+            }
+            break;
+        case S_ARRAY:
+            while( type == AbstractLexer.T_COMMA ) {
+                type = lexer.next();
+            }
+            if( type != AbstractLexer.T_RIGHT_SQUARE && !isValueStart( type ) ) {
+                throw unexpectedToken( type );
+            }
+            break;
+        }
+        peeked = type;
+        return type;
+    }
+
+    private static boolean isValueStart(int type) {
+        return type == AbstractLexer.T_LEFT_BRACE || type == AbstractLexer.T_LEFT_SQUARE || type >= AbstractLexer.T_STRING;
+    }
+
+    private void expect(int type, Token token) throws IOException, ParseException {
+        if( peekType() != type ) {
+            throw unexpected( token );
+        }
+    }
+
+    /**
+     * Consume the peeked name or primitive value.
+     */
+    private void consume() {
+        peeked = NONE;
+        if( stack[depth - 1] == S_OBJECT ) {
+            stack[depth - 1] = S_NAME;
+        }
+        else {
+            valueConsumed();
+        }
+    }
+
+    /**
+     * Update the current state after a complete value has been consumed.
+     */
+    private void valueConsumed() {
+        switch( stack[depth - 1] ) {
+        case S_DOCUMENT:
+            stack[depth - 1] = S_DOCUMENT_END;
+            break;
+        case S_NAME:
+            stack[depth - 1] = S_OBJECT;
+            break;
+        }
+    }
+
+    private void beginContainer() {
+        int state = peeked == AbstractLexer.T_LEFT_BRACE ? S_OBJECT : S_ARRAY;
+        peeked = NONE;
+        if( depth == stack.length ) {
+            int[] newStack = new int[depth * 2];
+            System.arraycopy( stack, 0, newStack, 0, depth );
+            stack = newStack;
+        }
+        stack[depth++] = state;
+    }
+
+    private void endContainer() {
+        peeked = NONE;
+        depth--;
+        valueConsumed();
+    }
+
+    /**
+     * Create the exception for a token which isn't valid at this point.
+     */
+    private ParseException unexpectedToken(int type) {
+        Yytoken token;
+        if( type >= AbstractLexer.T_STRING ) {
+            token = new Yytoken( Yytoken.TYPE_VALUE, lexer.skipValues ? null : lexer.value( type ) );
+        }
+        else {
+            token = new Yytoken( type, null );
+        }
+        return new ParseException( lexer.getPosition(), ParseException.ERROR_UNEXPECTED_TOKEN, token );
+    }
+
+    /**
+     * Create the exception for a call which expects a different kind of token.
+     */
+    private IllegalStateException unexpected(Token expected) throws IOException, ParseException {
+        String message = expected != null ? "Expected "+expected+" but was "+peek() : "Unexpected "+peek();
+        return new IllegalStateException( message+" at position "+getPosition() );
+    }
+}
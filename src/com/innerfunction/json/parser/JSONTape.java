@@ -0,0 +1,468 @@
+package com.innerfunction.json.parser;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * A parsed JSON document, held as its UTF-8 encoded text and a structural index of the text.
+ *
+ * The document is scanned once, without decoding its strings or numbers, to build a tape with
+ * one long entry for each value and object key. Each entry records the kind of token and its
+ * offset in the text; the entry for an object or array also records the position of its end on
+ * the tape, and the entry for the end records the number of entries or elements. So the size of
+ * an array is known, and a value can be skipped, without visiting its contents.
+ *
+ * The document's objects and arrays are read through read-only views of the tape, which are
+ * JSONAware Maps and Lists. Strings and numbers are only decoded when a view's value is read, and
+ * the views of nested objects and arrays are only created when reached. A document which isn't
+ * read takes little more memory than its text; this suits caches of many documents which are
+ * mostly read.
+ *
+ * The views hold the same values as the containers of a whole document parse, and are read with
+ * the same methods; but getJSONObject() and getJSONArray(), which must return a JSONObject or
+ * JSONArray, return a copy of a nested view. Copy a view into a JSONObject or JSONArray to modify
+ * it. Views are not thread-safe, as values are decoded and cached when first read.
+ *
+ * The grammar, error positions and errors are the same as for a whole document parse of the same
+ * bytes by {@link JSONParser}, except that errors are reported at byte offsets of the text.
+ */
+public class JSONTape {
+
+    /** Tape entry types. */
+    static final int OBJECT = 1;
+    static final int ARRAY  = 2;
+    static final int END    = 3;
+    static final int STRING = 4;
+    static final int LONG   = 5;
+    static final int DOUBLE = 6;
+    static final int TRUE   = 7;
+    static final int FALSE  = 8;
+    static final int NULL   = 9;
+
+    /**
+     * Layout of a tape entry: the type in the top 4 bits, then a 28 bit payload, then the token's
+     * offset in the text. The payload of an object or array entry is the tape index of its end;
+     * of an end entry, the number of entries or elements; of a string, the offset of its closing
+     * quote from its opening quote; and of a number, its length.
+     */
+    private static final int TYPE_SHIFT = 60;
+    private static final int PAYLOAD_SHIFT = 32;
+    private static final int MAX_PAYLOAD = (1 << 28) - 1;
+
+    /** Marks that the first token of the next value hasn't been found. */
+    private static final int NONE = Integer.MIN_VALUE;
+
+    /** Lexers used to scan and decode documents, one for each thread. */
+    private static final ThreadLocal<Utf8Lexer> lexers = new ThreadLocal<Utf8Lexer>() {
+        @Override
+        protected Utf8Lexer initialValue() {
+            return new Utf8Lexer();
+        }
+    };
+
+    /** The document's text. */
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+    /** The tape; offsets are relative to the start of the text. */
+    private long[] tape;
+    private int tapeLength;
+    /** The top level value, if an object or array; once its view has been created. */
+    private Object value;
+
+    private JSONTape(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Parse UTF-8 encoded JSON text. The byte array is kept by the document, and mustn't be
+     * modified while the document is in use.
+     */
+    public static JSONTape parse(byte[] bytes) throws ParseException {
+        return parse( bytes, 0, bytes.length );
+    }
+
+    /**
+     * Parse UTF-8 encoded JSON text from a range of a byte array. The byte array is kept by the
+     * document, and mustn't be modified while the document is in use. Error positions are byte
+     * offsets from the start of the range.
+     */
+    public static JSONTape parse(byte[] bytes, int offset, int length) throws ParseException {
+        if( offset < 0 || length < 0 || offset + length > bytes.length ) {
+            throw new IndexOutOfBoundsException();
+        }
+        JSONTape document = new JSONTape( bytes, offset, length );
+        document.build();
+        return document;
+    }
+
+    /**
+     * Parse JSON text from a string, which is held by the document in UTF-8 encoded form.
+     * Error positions are offsets in the UTF-8 encoding of the string.
+     */
+    public static JSONTape parse(String s) throws ParseException {
+        try {
+            return parse( s.getBytes("UTF-8") );
+        }
+        catch(UnsupportedEncodingException e) {
+            // UTF-8 is always supported.
+            throw new ParseException( -1, ParseException.ERROR_UNEXPECTED_EXCEPTION, e );
+        }
+    }
+
+    /**
+     * @return The document's top level value: a read-only Map or List view, or a primitive value.
+     */
+    public Object getValue() {
+        if( value == null ) {
+            value = value( 0 );
+        }
+        return value;
+    }
+
+    /**
+     * Scan the text and build its tape.
+     */
+    private void build() throws ParseException {
+        tape = new long[Math.max( length / 8, 16 )];
+        int[] containers = new int[32];
+        int[] counts = new int[32];
+        int depth = 0;
+        Utf8Lexer lexer = lexers.get();
+        lexer.reset( bytes, offset, length );
+        lexer.skipValues = true;
+        try {
+            int type = lexer.next();
+            while( true ) {
+                // type is the first token of a value.
+                switch( type ) {
+                case AbstractLexer.T_LEFT_BRACE:
+                case AbstractLexer.T_LEFT_SQUARE:
+                    if( depth == containers.length ) {
+                        int[] newContainers = new int[depth * 2];
+                        System.arraycopy( containers, 0, newContainers, 0, depth );
+                        containers = newContainers;
+                        int[] newCounts = new int[depth * 2];
+                        System.arraycopy( counts, 0, newCounts, 0, depth );
+                        counts = newCounts;
+                    }
+                    containers[depth] = tapeLength;
+                    counts[depth++] = 0;
+                    append( type == AbstractLexer.T_LEFT_BRACE ? OBJECT : ARRAY, 0, lexer.getPosition() );
+                    break;
+                default:
+                    appendPrimitive( lexer, type );
+                }
+                // Find the first token of the next value, closing containers as they end.
+                type = NONE;
+                while( depth > 0 && type == NONE ) {
+                    int container = containers[depth - 1];
+                    type = lexer.next();
+                    if( type( container ) == OBJECT ) {
+                        switch( type ) {
+                        case AbstractLexer.T_COMMA:
+                            type = NONE;
+                            break;
+                        case AbstractLexer.T_STRING:
+                            appendPrimitive( lexer, type );
+                            do {
+                                type = lexer.next();
+                            }
+                            while( type == AbstractLexer.T_COLON );
+                            counts[depth - 1]++;
+                            break;
+                        case AbstractLexer.T_RIGHT_BRACE:
+                            close( container, counts[--depth], lexer.getPosition() );
+                            type = NONE;
+                            break;
+                        default:
+                            throw unexpectedToken( lexer, type );
+                        }
+                    }
+                    else {
+                        switch( type ) {
+                        case AbstractLexer.T_COMMA:
+                            type = NONE;
+                            break;
+                        case AbstractLexer.T_RIGHT_SQUARE:
+                            close( container, counts[--depth], lexer.getPosition() );
+                            type = NONE;
+                            break;
+                        default:
+                            counts[depth - 1]++;
+                        }
+                    }
+                }
+                if( depth == 0 && type == NONE ) {
+                    break;
+                }
+            }
+            type = lexer.next();
+            if( type != AbstractLexer.T_EOF ) {
+                throw unexpectedToken( lexer, type );
+            }
+        }
+        catch(IOException e) {
+            // Actually it will never happen.
+            throw new ParseException( -1, ParseException.ERROR_UNEXPECTED_EXCEPTION, e );
+        }
+        finally {
+            lexer.skipValues = false;
+            lexer.yyrelease();
+        }
+        if( tape.length > tapeLength ) {
+            long[] newTape = new long[tapeLength];
+            System.arraycopy( tape, 0, newTape, 0, tapeLength );
+            tape = newTape;
+        }
+    }
+
+    /**
+     * Append the entry for a string, number or literal token; or report any other token.
+     */
+    private void appendPrimitive(Utf8Lexer lexer, int type) throws ParseException {
+        switch( type ) {
+        case AbstractLexer.T_STRING:
+            append( STRING, lexer.getPosition() - lexer.stringStart, lexer.stringStart );
+            break;
+        case AbstractLexer.T_LONG:
+            if( lexer.digitsLength > 18 ) {
+                // Report integers which overflow a long, as a whole document parse does.
+                lexer.numberToken( false );
+            }
+            append( LONG, lexer.digitsLength, lexer.getPosition() );
+            break;
+        case AbstractLexer.T_DOUBLE:
+            append( DOUBLE, lexer.digitsLength, lexer.getPosition() );
+            break;
+        case AbstractLexer.T_TRUE:
+            append( TRUE, 0, lexer.getPosition() );
+            break;
+        case AbstractLexer.T_FALSE:
+            append( FALSE, 0, lexer.getPosition() );
+            break;
+        case AbstractLexer.T_NULL:
+            append( NULL, 0, lexer.getPosition() );
+            break;
+        default:
+            throw unexpectedToken( lexer, type );
+        }
+    }
+
+    private void append(int type, int payload, int position) {
+        if( payload > MAX_PAYLOAD ) {
+            throw new IllegalArgumentException("Document too large for a tape, at position "+position);
+        }
+        if( tapeLength == tape.length ) {
+            long[] newTape = new long[tapeLength * 2];
+            System.arraycopy( tape, 0, newTape, 0, tapeLength );
+            tape = newTape;
+        }
+        tape[tapeLength++] = ((long)type << TYPE_SHIFT) | ((long)payload << PAYLOAD_SHIFT) | position;
+    }
+
+    /**
+     * Append the end of a container, and link the container's entry to it.
+     */
+    private void close(int container, int count, int position) {
+        int end = tapeLength;
+        append( END, count, position );
+        if( end > MAX_PAYLOAD ) {
+            throw new IllegalArgumentException("Document too large for a tape, at position "+position);
+        }
+        tape[container] |= (long)end << PAYLOAD_SHIFT;
+    }
+
+    /**
+     * Create the exception for an unexpected token. The token's value isn't decoded by the scan,
+     * so a value token is scanned again to report its value.
+     */
+    private ParseException unexpectedToken(Utf8Lexer lexer, int type) throws ParseException {
+        int position = lexer.getPosition();
+        Yytoken token;
+        if( type >= AbstractLexer.T_STRING ) {
+            int start = type == AbstractLexer.T_STRING ? lexer.stringStart : position;
+            Utf8Lexer valueLexer = new Utf8Lexer();
+            valueLexer.reset( bytes, offset + start, length - start );
+            token = new Yytoken( Yytoken.TYPE_VALUE, valueLexer.value( scan( valueLexer ) ) );
+        }
+        else {
+            token = new Yytoken( type, null );
+        }
+        return new ParseException( position, ParseException.ERROR_UNEXPECTED_TOKEN, token );
+    }
+
+    private static int scan(Utf8Lexer lexer) throws ParseException {
+        try {
+            return lexer.next();
+        }
+        catch(IOException e) {
+            // Actually it will never happen.
+            throw new ParseException( -1, ParseException.ERROR_UNEXPECTED_EXCEPTION, e );
+        }
+    }
+
+    /**
+     * @return The type of the entry at a tape index.
+     */
+    int type(int index) {
+        return (int)(tape[index] >>> TYPE_SHIFT);
+    }
+
+    private int payload(int index) {
+        return (int)(tape[index] >>> PAYLOAD_SHIFT) & MAX_PAYLOAD;
+    }
+
+    private int position(int index) {
+        return (int)tape[index];
+    }
+
+    /**
+     * @return The tape index of the entry following the value at a tape index.
+     */
+    int skip(int index) {
+        int type = type( index );
+        return type == OBJECT || type == ARRAY ? payload( index ) + 1 : index + 1;
+    }
+
+    /**
+     * @return The number of entries of the object, or elements of the array, at a tape index.
+     */
+    int count(int index) {
+        return payload( payload( index ) );
+    }
+
+    /**
+     * Decode the value at a tape index. A new view is returned for an object or array.
+     */
+    Object value(int index) {
+        switch( type( index ) ) {
+        case OBJECT:
+            return new TapeObject( this, index );
+        case ARRAY:
+            return new TapeArray( this, index );
+        case TRUE:
+            return Boolean.TRUE;
+        case FALSE:
+            return Boolean.FALSE;
+        case NULL:
+            return null;
+        default:
+            Utf8Lexer lexer = lexers.get();
+            try {
+                return lexer.value( rescan( lexer, index ) );
+            }
+            finally {
+                lexer.yyrelease();
+            }
+        }
+    }
+
+    /**
+     * Decode the string at a tape index.
+     */
+    String string(int index) {
+        Utf8Lexer lexer = lexers.get();
+        try {
+            rescan( lexer, index );
+            return lexer.stringValue();
+        }
+        finally {
+            lexer.yyrelease();
+        }
+    }
+
+    /**
+     * Scan the string or number token at a tape index again, decoding its value.
+     */
+    private int rescan(Utf8Lexer lexer, int index) {
+        int start = position( index );
+        int tokenLength = type( index ) == STRING ? payload( index ) + 1 : payload( index );
+        lexer.reset( bytes, offset + start, tokenLength );
+        try {
+            return scan( lexer );
+        }
+        catch(ParseException e) {
+            // The token has already been scanned without error.
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Compare the string at a tape index with a key. Plain ASCII characters are compared with the
+     * text directly; the string is only decoded if it contains escapes or non-ASCII characters.
+     */
+    boolean keyEquals(int index, String key) {
+        int start = offset + position( index ) + 1;
+        int end = start + payload( index ) - 1;
+        // No string decodes to more characters than it has bytes.
+        int keyLength = key.length();
+        if( end - start < keyLength ) {
+            return false;
+        }
+        byte[] b = bytes;
+        for( int i = 0; i < keyLength; i++ ) {
+            int ch = b[start + i];
+            if( ch < 0 || ch == '\\' ) {
+                return key.equals( string( index ) );
+            }
+            if( ch != key.charAt( i ) ) {
+                return false;
+            }
+        }
+        return end - start == keyLength;
+    }
+
+    /**
+     * Compare the strings at two tape indexes.
+     */
+    boolean keyEquals(int index1, int index2) {
+        int start1 = offset + position( index1 ) + 1, length1 = payload( index1 ) - 1;
+        int start2 = offset + position( index2 ) + 1, length2 = payload( index2 ) - 1;
+        byte[] b = bytes;
+        if( length1 == length2 ) {
+            int i = 0;
+            while( i < length1 && b[start1 + i] == b[start2 + i] ) {
+                i++;
+            }
+            if( i == length1 ) {
+                return true;
+            }
+        }
+        // Strings with different bytes can only be equal if either has escapes or non-ASCII characters.
+        if( isPlain( start1, length1 ) && isPlain( start2, length2 ) ) {
+            return false;
+        }
+        return string( index1 ).equals( string( index2 ) );
+    }
+
+    private boolean isPlain(int start, int length) {
+        byte[] b = bytes;
+        for( int i = start; i < start + length; i++ ) {
+            if( b[i] < 0 || b[i] == '\\' ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The hash code of the string at a tape index, as returned by String.hashCode().
+     */
+    int keyHash(int index) {
+        int start = offset + position( index ) + 1;
+        int end = start + payload( index ) - 1;
+        byte[] b = bytes;
+        int hash = 0;
+        for( int i = start; i < end; i++ ) {
+            int ch = b[i];
+            if( ch < 0 || ch == '\\' ) {
+                return string( index ).hashCode();
+            }
+            hash = 31 * hash + ch;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,129 @@
+package com.innerfunction.json.parser;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The parts of a document selected by a set of key paths, for a projected parse.
+ * Key paths use the same dotted syntax as {@link com.innerfunction.json.JSONAware#resolve(String)};
+ * a path component selects either the object entry with that key, or the array element at
+ * that index. Each node of the projection describes the selected parts of one value.
+ */
+class KeyPathProjection {
+
+    /** True if the whole of the value is selected. */
+    private boolean all;
+    /** The selected object entries, by key. */
+    private final Map<String,KeyPathProjection> entries = new HashMap<String,KeyPathProjection>();
+    /** The selected array elements, sorted by index; with the projection of each in elements. */
+    private int[] indexes = new int[0];
+    private KeyPathProjection[] elements = new KeyPathProjection[0];
+
+    /**
+     * Compile a set of key paths into a projection of the top level value.
+     */
+    static KeyPathProjection compile(Set<String> keyPaths) {
+        KeyPathProjection projection = new KeyPathProjection();
+        for( String keyPath : keyPaths ) {
+            KeyPathProjection node = projection;
+            for( String key : keyPath.split("\\.", -1 ) ) {
+                node = node.add( key );
+            }
+            node.all = true;
+        }
+        return projection;
+    }
+
+    /**
+     * Add a path component to this node.
+     * @return The projection of the selected entry or element.
+     */
+    private KeyPathProjection add(String key) {
+        KeyPathProjection child = entries.get( key );
+        if( child == null ) {
+            child = new KeyPathProjection();
+            entries.put( key, child );
+            int index = parseIndex( key );
+            if( index >= 0 ) {
+                int i = Arrays.binarySearch( indexes, index );
+                if( i < 0 ) {
+                    i = -i - 1;
+                    int count = indexes.length;
+                    int[] newIndexes = new int[count + 1];
+                    KeyPathProjection[] newElements = new KeyPathProjection[count + 1];
+                    System.arraycopy( indexes, 0, newIndexes, 0, i );
+                    System.arraycopy( elements, 0, newElements, 0, i );
+                    System.arraycopy( indexes, i, newIndexes, i + 1, count - i );
+                    System.arraycopy( elements, i, newElements, i + 1, count - i );
+                    newIndexes[i] = index;
+                    newElements[i] = child;
+                    indexes = newIndexes;
+                    elements = newElements;
+                }
+                else {
+                    // Keys such as "1" and "01" select the same element.
+                    child = elements[i];
+                    entries.put( key, child );
+                }
+            }
+        }
+        return child;
+    }
+
+    /**
+     * @return true if the whole of the value is selected.
+     */
+    boolean isAll() {
+        return all;
+    }
+
+    /**
+     * Find the projection of an object entry. As with JSONObject's key path resolution, a key
+     * containing dots also matches the path formed by its components.
+     * @return The projection, or null if the entry isn't selected.
+     */
+    KeyPathProjection entry(String key) {
+        KeyPathProjection child = entries.get( key );
+        if( child == null && key.indexOf( '.' ) >= 0 ) {
+            child = this;
+            for( String component : key.split("\\.", -1 ) ) {
+                child = child.entries.get( component );
+                if( child == null ) {
+                    break;
+                }
+            }
+        }
+        return child;
+    }
+
+    /**
+     * Find the projection of an array element.
+     * @return The projection, or null if the element isn't selected.
+     */
+    KeyPathProjection element(int index) {
+        int i = Arrays.binarySearch( indexes, index );
+        return i >= 0 ? elements[i] : null;
+    }
+
+    /**
+     * @return The number of array elements up to and including the last selected element.
+     */
+    int elementCount() {
+        return indexes.length > 0 ? indexes[indexes.length - 1] + 1 : 0;
+    }
+
+    /**
+     * Parse an array index in the same way as JSONArray.get(String).
+     * @return The index, or -1 if the key isn't an array index.
+     */
+    private static int parseIndex(String key) {
+        try {
+            return Math.max( Integer.parseInt( key ), -1 );
+        }
+        catch(NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.innerfunction.json.parser;
+
+import java.io.IOException;
+
+/**
+ * A source of tokens for the JSON parser's state machine.
+ *
+ * @see Yylex
+ * @see Utf8Lexer
+ */
+interface Lexer {
+
+    /**
+     * Scan the next token from the input.
+     * @return The next token, or null at the end of the input.
+     */
+    public Yytoken yylex() throws IOException, ParseException;
+
+    /**
+     * @return The position of the beginning of the current token.
+     */
+    public int getPosition();
+
+    /**
+     * Tell the lexer whether the next string token is expected to be an object key, so that
+     * its value is taken from the key table rather than the value table.
+     */
+    public void setKeyExpected(boolean keyExpected);
+
+    /**
+     * Release the current input, and any buffer space grown by an oversized document.
+     * The position of the last token remains available.
+     */
+    public void yyrelease();
+
+}
@@ -0,0 +1,302 @@
+package com.innerfunction.json.parser;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Decodes the text of JSON numbers, without creating strings for the common cases.
+ *
+ * Integers are parsed with an overflow checked loop over their digits. Decimals whose
+ * significant digits fit in 53 bits, with a decimal exponent of at most 22, are converted with a
+ * single multiplication or division by an exactly representable power of ten (Clinger's fast
+ * path); other decimals with at most 19 significant digits are converted with the Eisel-Lemire
+ * algorithm, using a 128 bit approximation of the power of ten. Both give the correctly rounded
+ * result. The few numbers for which the approximation can't decide the rounding, or which have
+ * more significant digits, are parsed by Double.parseDouble.
+ */
+final class NumberDecoder {
+
+    /** The largest integer such that it and all smaller integers are exactly representable as doubles. */
+    static final long MAX_EXACT_MANTISSA = 1L << 53;
+    /** The powers of ten which are exactly representable as doubles. */
+    static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    /** The maximum number of significant digits which are accumulated exactly in a long. */
+    private static final int MAX_DIGITS = 19;
+    /** Decimal exponents beyond this are out of range for any double; see PowersOfTen. */
+    private static final int MAX_EXPONENT = 100000;
+
+    private NumberDecoder() {
+    }
+
+    /**
+     * Parse an integer, with the same range as Long.parseLong.
+     * @throws NumberFormatException If the integer overflows a long.
+     */
+    static long parseLong(char[] d, int offset, int length) {
+        // Accumulate negatively, as Long.parseLong does, so that Long.MIN_VALUE is in range.
+        boolean negative = d[offset] == '-';
+        int i = negative ? offset + 1 : offset;
+        int end = offset + length;
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multmin = limit / 10;
+        long result = 0;
+        for( ; i < end; i++ ) {
+            int digit = d[i] - '0';
+            if( result < multmin ) {
+                throw new NumberFormatException("For input string: \""+new String( d, offset, length )+"\"");
+            }
+            result *= 10;
+            if( result < limit + digit ) {
+                throw new NumberFormatException("For input string: \""+new String( d, offset, length )+"\"");
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * @return true if an integer is in the range of a long.
+     */
+    static boolean isLong(char[] d, int offset, int length) {
+        boolean negative = d[offset] == '-';
+        int i = negative ? offset + 1 : offset;
+        int end = offset + length;
+        while( i < end - 1 && d[i] == '0' ) {
+            i++;
+        }
+        int count = end - i;
+        if( count != MAX_DIGITS ) {
+            return count < MAX_DIGITS;
+        }
+        String limit = negative ? "9223372036854775808" : "9223372036854775807";
+        for( int n = 0; n < MAX_DIGITS; n++ ) {
+            char ch = d[i + n], limitCh = limit.charAt( n );
+            if( ch != limitCh ) {
+                return ch < limitCh;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse a decimal number, with the same result as Double.parseDouble.
+     */
+    static double parseDouble(char[] d, int offset, int length) {
+        int end = offset + length;
+        boolean negative = d[offset] == '-';
+        int i = negative ? offset + 1 : offset;
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean fraction = false;
+        for( ; i < end; i++ ) {
+            char ch = d[i];
+            if( ch == '.' ) {
+                fraction = true;
+            }
+            else if( ch == 'e' || ch == 'E' ) {
+                break;
+            }
+            else {
+                if( mantissa != 0 || ch != '0' ) {
+                    if( ++digits > MAX_DIGITS ) {
+                        return Double.parseDouble( new String( d, offset, length ) );
+                    }
+                    mantissa = mantissa * 10 + (ch - '0');
+                }
+                if( fraction ) {
+                    exponent--;
+                }
+            }
+        }
+        if( i < end ) {
+            // Exponent; i is at the 'e'.
+            boolean negativeExponent = d[++i] == '-';
+            if( d[i] == '-' || d[i] == '+' ) {
+                i++;
+            }
+            int value = 0;
+            for( ; i < end; i++ ) {
+                value = value * 10 + (d[i] - '0');
+                if( value > MAX_EXPONENT ) {
+                    return Double.parseDouble( new String( d, offset, length ) );
+                }
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if( mantissa == 0 ) {
+            return negative ? -0.0 : 0.0;
+        }
+        double result;
+        // A 19 digit mantissa may exceed Long.MAX_VALUE; it's then negative, but exact as an unsigned long.
+        if( mantissa > 0 && mantissa <= MAX_EXACT_MANTISSA && exponent > -POWERS_OF_TEN.length && exponent < POWERS_OF_TEN.length ) {
+            result = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -result : result;
+        }
+        if( exponent < PowersOfTen.MIN_EXPONENT ) {
+            return negative ? -0.0 : 0.0;
+        }
+        if( exponent > PowersOfTen.MAX_EXPONENT ) {
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        long bits = eiselLemire( mantissa, exponent );
+        if( bits < 0 ) {
+            return Double.parseDouble( new String( d, offset, length ) );
+        }
+        result = Double.longBitsToDouble( bits );
+        return negative ? -result : result;
+    }
+
+    /**
+     * @return true if all the digits of a number's significand are zeros.
+     */
+    static boolean isZero(char[] d, int offset, int length) {
+        for( int i = offset, end = offset + length; i < end; i++ ) {
+            char ch = d[i];
+            if( ch == 'e' || ch == 'E' ) {
+                break;
+            }
+            if( ch >= '1' && ch <= '9' ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the value of an integer, as reported by the lexers.
+     * @param bigNumbers - If true, an integer which overflows a long is returned as a BigInteger;
+     * otherwise a NumberFormatException is thrown.
+     * @return A Long or BigInteger.
+     */
+    static Number integerValue(char[] d, int offset, int length, boolean bigNumbers) {
+        if( bigNumbers && length >= MAX_DIGITS && !isLong( d, offset, length ) ) {
+            return new BigInteger( new String( d, offset, length ) );
+        }
+        return Long.valueOf( parseLong( d, offset, length ) );
+    }
+
+    /**
+     * Get the value of a decimal number, as reported by the lexers.
+     * @param bigNumbers - If true, a number too large or too small in magnitude to be represented
+     * by a double is returned as a BigDecimal; otherwise it is infinite or zero.
+     * @return A Double or BigDecimal.
+     */
+    static Number decimalValue(char[] d, int offset, int length, boolean bigNumbers) {
+        double value = parseDouble( d, offset, length );
+        if( bigNumbers && isOutOfRange( value, d, offset, length ) ) {
+            return new BigDecimal( new String( d, offset, length ) );
+        }
+        return Double.valueOf( value );
+    }
+
+    /**
+     * @return true if a number's value as a double is infinite, or zero though the number isn't.
+     */
+    static boolean isOutOfRange(double value, char[] d, int offset, int length) {
+        return Double.isInfinite( value ) || (value == 0 && !isZero( d, offset, length ));
+    }
+
+    /**
+     * Convert a decimal number, with a non-zero significand of at most 19 digits and an exponent
+     * in the range of PowersOfTen, to the bits of the correctly rounded positive double.
+     * @return The bits, or -1 if the result can't be decided cheaply, or is subnormal or infinite.
+     */
+    private static long eiselLemire(long mantissa, int exponent) {
+        int index = exponent - PowersOfTen.MIN_EXPONENT;
+        int clz = Long.numberOfLeadingZeros( mantissa );
+        mantissa <<= clz;
+        long exponent2 = ((217706L * exponent) >> 16) + 64 + 1023 - clz;
+
+        long powerHi = PowersOfTen.HIGH[index];
+        long xHi = multiplyHigh( mantissa, powerHi );
+        long xLo = mantissa * powerHi;
+        if( (xHi & 0x1FF) == 0x1FF && unsignedLess( xLo + mantissa, mantissa ) ) {
+            // The truncated low half of the power may carry into the result; include it.
+            long powerLo = PowersOfTen.LOW[index];
+            long yHi = multiplyHigh( mantissa, powerLo );
+            long yLo = mantissa * powerLo;
+            long mergedHi = xHi, mergedLo = xLo + yHi;
+            if( unsignedLess( mergedLo, xLo ) ) {
+                mergedHi++;
+            }
+            if( (mergedHi & 0x1FF) == 0x1FF && mergedLo + 1 == 0 && unsignedLess( yLo + mantissa, mantissa ) ) {
+                return -1;
+            }
+            xHi = mergedHi;
+            xLo = mergedLo;
+        }
+
+        int msb = (int)(xHi >>> 63);
+        long result = xHi >>> (msb + 9);
+        exponent2 -= 1 ^ msb;
+        if( xLo == 0 && (xHi & 0x1FF) == 0 && (result & 3) == 1 ) {
+            // Exactly half way between two doubles.
+            return -1;
+        }
+        result += result & 1;
+        result >>>= 1;
+        if( (result >>> 53) > 0 ) {
+            result >>>= 1;
+            exponent2++;
+        }
+        if( exponent2 <= 0 || exponent2 >= 0x7FF ) {
+            return -1;
+        }
+        return (exponent2 << 52) | (result & 0x000FFFFFFFFFFFFFL);
+    }
+
+    /**
+     * @return The high 64 bits of the unsigned 128 bit product of two longs.
+     */
+    static long multiplyHigh(long x, long y) {
+        long x0 = x & 0xFFFFFFFFL, x1 = x >>> 32;
+        long y0 = y & 0xFFFFFFFFL, y1 = y >>> 32;
+        long w0 = x0 * y0;
+        long t = x1 * y0 + (w0 >>> 32);
+        long w1 = (t & 0xFFFFFFFFL) + x0 * y1;
+        return x1 * y1 + (t >>> 32) + (w1 >>> 32);
+    }
+
+    private static boolean unsignedLess(long a, long b) {
+        return (a + Long.MIN_VALUE) < (b + Long.MIN_VALUE);
+    }
+
+    /**
+     * 128 bit approximations of the powers of ten, truncated; each normalized so that its top bit
+     * is set. The table is computed when first needed, which is only for numbers outside of the
+     * fast path.
+     */
+    private static final class PowersOfTen {
+
+        static final int MIN_EXPONENT = -348;
+        static final int MAX_EXPONENT = 347;
+        static final long[] HIGH = new long[MAX_EXPONENT - MIN_EXPONENT + 1];
+        static final long[] LOW = new long[MAX_EXPONENT - MIN_EXPONENT + 1];
+
+        static {
+            BigInteger mask = BigInteger.ONE.shiftLeft( 64 ).subtract( BigInteger.ONE );
+            for( int e = MIN_EXPONENT; e <= MAX_EXPONENT; e++ ) {
+                BigInteger power;
+                if( e >= 0 ) {
+                    power = BigInteger.TEN.pow( e );
+                    int shift = power.bitLength() - 128;
+                    power = shift > 0 ? power.shiftRight( shift ) : power.shiftLeft( -shift );
+                }
+                else {
+                    BigInteger divisor = BigInteger.TEN.pow( -e );
+                    // 2^k / divisor has 128 or 129 bits; truncate to 128.
+                    power = BigInteger.ONE.shiftLeft( divisor.bitLength() + 127 ).divide( divisor );
+                    if( power.bitLength() > 128 ) {
+                        power = power.shiftRight( 1 );
+                    }
+                }
+                HIGH[e - MIN_EXPONENT] = power.shiftRight( 64 ).longValue();
+                LOW[e - MIN_EXPONENT] = power.and( mask ).longValue();
+            }
+        }
+    }
+}
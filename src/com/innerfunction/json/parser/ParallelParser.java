@@ -0,0 +1,276 @@
+package com.innerfunction.json.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Parses a document whose top level value is a large array or object, by parsing slices of the
+ * top level value's elements in parallel.
+ * The document is first scanned for the commas between the top level value's elements, which
+ * only requires strings and brackets to be tracked; the elements are grouped into slices of about
+ * SLICE_SIZE bytes, and each slice is submitted to an executor as soon as it is found, so slices
+ * are parsed while the rest of the document is scanned. The parsed elements are then added to
+ * the top level container in document order.
+ * Any document which doesn't look like a single array or object to the scan, or any slice which
+ * fails to parse, is parsed again sequentially, so that errors are reported exactly as they
+ * would be by a sequential parse.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+class ParallelParser {
+
+    /** The minimum size of a slice of elements, in bytes. */
+    static final int SLICE_SIZE = 1 << 20;
+    /** The size of the blocks a file is read in, for the scan. */
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    /** Scan states. */
+    private static final int S_BEFORE = 0;
+    private static final int S_IN_VALUE = 1;
+    private static final int S_AFTER = 2;
+    private static final int S_INVALID = 3;
+
+    private final JSONParser parser;
+    private final ContainerFactory containerFactory;
+    private final ExecutorService executor;
+    /** The input: either a range of a byte array, or a file from a position. */
+    private byte[] bytes;
+    private int offset;
+    private FileChannel channel;
+    private long base;
+
+    private int state = S_BEFORE;
+    /** True if the top level value is an object. */
+    private boolean isObject;
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    /** The document position of the start of the next slice. */
+    private long sliceStart;
+    /** The slices submitted so far, in document order. */
+    private final List<Future<List>> slices = new ArrayList<Future<List>>();
+
+    ParallelParser(JSONParser parser, ContainerFactory containerFactory, ExecutorService executor) {
+        this.parser = parser;
+        this.containerFactory = containerFactory;
+        this.executor = executor;
+    }
+
+    /**
+     * Parse a range of a byte array.
+     */
+    Object parse(byte[] bytes, int offset, int length) throws ParseException {
+        if( offset < 0 || length < 0 || offset + length > bytes.length ) {
+            throw new IndexOutOfBoundsException();
+        }
+        if( length < SLICE_SIZE * 2 ) {
+            return parser.parse( bytes, offset, length, containerFactory );
+        }
+        this.bytes = bytes;
+        this.offset = offset;
+        scan( bytes, offset, length, 0 );
+        try {
+            Object value = assemble();
+            if( value != null ) {
+                return value;
+            }
+        }
+        catch(IOException e) {
+            /*
+             * Actually it will never happen.
+             */
+            throw new ParseException( -1, ParseException.ERROR_UNEXPECTED_EXCEPTION, e );
+        }
+        return parser.parse( bytes, offset, length, containerFactory );
+    }
+
+    /**
+     * Parse a file, from the channel's position to its end. The channel's position is not modified.
+     */
+    Object parse(FileChannel channel) throws IOException, ParseException {
+        long position = channel.position();
+        long length = channel.size() - position;
+        if( length < SLICE_SIZE * 2 ) {
+            return parser.parse( channel, containerFactory );
+        }
+        this.channel = channel;
+        this.base = position;
+        ByteBuffer block = ByteBuffer.allocate( BLOCK_SIZE );
+        long scanned = 0;
+        while( scanned < length && state != S_INVALID ) {
+            block.clear();
+            int count = channel.read( block, position + scanned );
+            if( count < 0 ) {
+                break;
+            }
+            scan( block.array(), 0, count, scanned );
+            scanned += count;
+        }
+        Object value = assemble();
+        return value != null ? value : parser.parse( channel, containerFactory );
+    }
+
+    /**
+     * Scan a block of the document, and submit each slice of elements as it is found.
+     * @param position - The document position of the block's first byte.
+     */
+    private void scan(byte[] b, int off, int len, long position) {
+        long delta = position - off;
+        int end = off + len;
+        for( int i = off; i < end; i++ ) {
+            byte c = b[i];
+            if( inString ) {
+                if( escaped ) {
+                    escaped = false;
+                }
+                else if( c == '\\' ) {
+                    escaped = true;
+                }
+                else if( c == '"' ) {
+                    inString = false;
+                }
+                continue;
+            }
+            switch( state ) {
+            case S_BEFORE:
+                if( c == '[' || c == '{' ) {
+                    isObject = c == '{';
+                    depth = 1;
+                    sliceStart = i + delta + 1;
+                    state = S_IN_VALUE;
+                }
+                else if( !isSpace( c ) ) {
+                    state = S_INVALID;
+                }
+                break;
+            case S_IN_VALUE:
+                switch( c ) {
+                case '"':
+                    inString = true;
+                    break;
+                case '[': case '{':
+                    depth++;
+                    break;
+                case ']': case '}':
+                    if( --depth == 0 ) {
+                        // Mismatched brackets elsewhere are found by the slice parsers.
+                        if( (c == '}') != isObject ) {
+                            state = S_INVALID;
+                            return;
+                        }
+                        submit( i + delta );
+                        state = S_AFTER;
+                    }
+                    break;
+                case ',':
+                    if( depth == 1 && i + delta - sliceStart >= SLICE_SIZE ) {
+                        submit( i + delta );
+                    }
+                    break;
+                }
+                break;
+            case S_AFTER:
+                if( !isSpace( c ) ) {
+                    state = S_INVALID;
+                }
+                break;
+            default:
+                return;
+            }
+        }
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * Submit the slice from the current slice start to a document position.
+     */
+    private void submit(long sliceEnd) {
+        final long start = sliceStart;
+        final long length = sliceEnd - start;
+        sliceStart = sliceEnd + 1;
+        if( length > Integer.MAX_VALUE ) {
+            state = S_INVALID;
+            return;
+        }
+        slices.add( executor.submit( new Callable<List>() {
+            @Override
+            public List call() throws Exception {
+                ByteBuffer slice;
+                if( bytes != null ) {
+                    slice = ByteBuffer.wrap( bytes, offset + (int)start, (int)length );
+                }
+                else {
+                    slice = channel.map( MapMode.READ_ONLY, base + start, length );
+                }
+                return JSONParser.threadLocal().parseSlice( slice, isObject, containerFactory, parser );
+            }
+        }));
+    }
+
+    /**
+     * Wait for the slices to be parsed, and add their elements to the top level container.
+     * @return The top level container, or null if the document should be parsed sequentially.
+     */
+    private Object assemble() throws IOException, ParseException {
+        if( state != S_AFTER || inString ) {
+            cancel();
+            return null;
+        }
+        Object container = isObject ? parser.createObjectContainer( containerFactory ) : parser.createArrayContainer( containerFactory );
+        try {
+            for( Future<List> slice : slices ) {
+                List values = slice.get();
+                if( isObject ) {
+                    Map object = (Map)container;
+                    for( int i = 0; i < values.size(); i += 2 ) {
+                        object.put( values.get( i ), values.get( i + 1 ) );
+                    }
+                }
+                else {
+                    ((List)container).addAll( values );
+                }
+            }
+            return container;
+        }
+        catch(InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new ParseException( -1, ParseException.ERROR_UNEXPECTED_EXCEPTION, e );
+        }
+        catch(ExecutionException e) {
+            cancel();
+            Throwable cause = e.getCause();
+            if( cause instanceof ParseException || cause instanceof NumberFormatException ) {
+                // Parse sequentially to report the document's first error.
+                return null;
+            }
+            if( cause instanceof IOException ) {
+                throw (IOException)cause;
+            }
+            if( cause instanceof RuntimeException ) {
+                throw (RuntimeException)cause;
+            }
+            if( cause instanceof Error ) {
+                throw (Error)cause;
+            }
+            throw new ParseException( -1, ParseException.ERROR_UNEXPECTED_EXCEPTION, cause );
+        }
+    }
+
+    private void cancel() {
+        for( Future<List> slice : slices ) {
+            slice.cancel( false );
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.innerfunction.json.parser;
+
+import java.io.IOException;
+
+/**
+ * A content handler which receives primitive values and object entry keys without boxing.
+ *
+ * When the handler passed to one of the JSONParser stream processing methods implements this
+ * interface, the input is scanned by the parser's hand written lexers and the methods below
+ * are called in place of {@link ContentHandler#startObjectEntry(String)} and
+ * {@link ContentHandler#primitive(Object)}. No String, Long, Double or Boolean instances are
+ * created for the values, so a handler which doesn't allocate itself can process a document
+ * without any allocation once the parser's buffers have reached their working size.
+ *
+ * Character arrays passed to the handler belong to the parser and are only valid for the
+ * duration of the call; they must not be modified or retained.
+ *
+ * @see JSONParser#parse(java.io.Reader, ContentHandler, boolean)
+ */
+public interface PrimitiveContentHandler extends ContentHandler {
+
+    /**
+     * Receive notification of the beginning of a JSON object entry.
+     *
+     * @param key - A buffer containing the entry's key.
+     * @param offset - The offset of the key's first character in the buffer.
+     * @param length - The number of characters in the key.
+     *
+     * @return false if the handler wants to stop parsing after return.
+     * @throws ParseException
+     *
+     * @see ContentHandler#endObjectEntry
+     */
+    boolean startObjectEntry(char[] key, int offset, int length) throws ParseException, IOException;
+
+    /**
+     * Receive notification of a JSON string value.
+     *
+     * @param chars - A buffer containing the value.
+     * @param offset - The offset of the value's first character in the buffer.
+     * @param length - The number of characters in the value.
+     *
+     * @return false if the handler wants to stop parsing after return.
+     * @throws ParseException
+     */
+    boolean stringValue(char[] chars, int offset, int length) throws ParseException, IOException;
+
+    /**
+     * Receive notification of a JSON number without a fraction or exponent.
+     *
+     * @return false if the handler wants to stop parsing after return.
+     * @throws ParseException
+     */
+    boolean longValue(long value) throws ParseException, IOException;
+
+    /**
+     * Receive notification of a JSON number with a fraction or exponent.
+     *
+     * @return false if the handler wants to stop parsing after return.
+     * @throws ParseException
+     */
+    boolean doubleValue(double value) throws ParseException, IOException;
+
+    /**
+     * Receive notification of a JSON true or false value.
+     *
+     * @return false if the handler wants to stop parsing after return.
+     * @throws ParseException
+     */
+    boolean booleanValue(boolean value) throws ParseException, IOException;
+
+    /**
+     * Receive notification of a JSON null value.
+     *
+     * @return false if the handler wants to stop parsing after return.
+     * @throws ParseException
+     */
+    boolean nullValue() throws ParseException, IOException;
+
+}
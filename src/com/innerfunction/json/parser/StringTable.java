@@ -0,0 +1,139 @@
+package com.innerfunction.json.parser;
+
+/**
+ * A bounded table of canonical strings, used by the parser to return the same String instance
+ * for each occurrence of a repeated object key or string value.
+ * The table hashes a string's characters where the lexer found them, and returns the String in
+ * the table if it has the same characters, without allocating; otherwise it creates a String
+ * and keeps it in place of the one which was in its slot. Each hash code has a single slot, so
+ * the table never holds more than its size in strings, and strings longer than the table's
+ * maximum length are never kept.
+ *
+ * A table may be shared by parsers in different threads. Updates aren't synchronized, so a
+ * string may occasionally be replaced by a concurrent update; any String returned by the table
+ * always has the requested characters.
+ *
+ * @see JSONParser#setKeyTable(StringTable)
+ * @see JSONParser#setValueTable(StringTable)
+ * @see CanonicalContainerFactory
+ */
+public class StringTable {
+
+    /** The default number of slots. */
+    public static final int DEFAULT_SIZE = 1024;
+    /** The default maximum length of a string in the table. */
+    public static final int DEFAULT_MAX_LENGTH = 64;
+
+    private final String[] strings;
+    private final int mask;
+    private final int maxLength;
+
+    /**
+     * Create a table with the default size and maximum string length.
+     */
+    public StringTable() {
+        this( DEFAULT_SIZE, DEFAULT_MAX_LENGTH );
+    }
+
+    /**
+     * @param size - The number of slots in the table; rounded up to a power of two.
+     * @param maxLength - The maximum length of the strings kept in the table.
+     */
+    public StringTable(int size, int maxLength) {
+        if( size < 1 || size > 1 << 30 ) {
+            throw new IllegalArgumentException("Invalid string table size: "+size);
+        }
+        int capacity = Integer.highestOneBit( size );
+        if( capacity < size ) {
+            capacity <<= 1;
+        }
+        this.strings = new String[capacity];
+        this.mask = capacity - 1;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Get the canonical string for a range of characters.
+     */
+    public String get(char[] chars, int offset, int length) {
+        if( length > maxLength ) {
+            return new String( chars, offset, length );
+        }
+        int h = 0;
+        for( int i = offset, end = offset + length; i < end; i++ ) {
+            h = 31 * h + chars[i];
+        }
+        int slot = slot( h );
+        String s = strings[slot];
+        if( s != null && s.length() == length ) {
+            int i = 0;
+            while( i < length && s.charAt( i ) == chars[offset + i] ) {
+                i++;
+            }
+            if( i == length ) {
+                return s;
+            }
+        }
+        s = new String( chars, offset, length );
+        strings[slot] = s;
+        return s;
+    }
+
+    /**
+     * Get the canonical string for a range of a character sequence.
+     */
+    public String get(CharSequence chars, int offset, int length) {
+        if( length > maxLength ) {
+            return chars.subSequence( offset, offset + length ).toString();
+        }
+        int h = 0;
+        for( int i = offset, end = offset + length; i < end; i++ ) {
+            h = 31 * h + chars.charAt( i );
+        }
+        int slot = slot( h );
+        String s = strings[slot];
+        if( s != null && s.length() == length ) {
+            int i = 0;
+            while( i < length && s.charAt( i ) == chars.charAt( offset + i ) ) {
+                i++;
+            }
+            if( i == length ) {
+                return s;
+            }
+        }
+        s = chars.subSequence( offset, offset + length ).toString();
+        strings[slot] = s;
+        return s;
+    }
+
+    /**
+     * Get the canonical string for a string.
+     * @return The string in the table with the same characters, or s.
+     */
+    public String get(String s) {
+        if( s.length() > maxLength ) {
+            return s;
+        }
+        int slot = slot( s.hashCode() );
+        String t = strings[slot];
+        if( t != null && t.equals( s ) ) {
+            return t;
+        }
+        strings[slot] = s;
+        return s;
+    }
+
+    /**
+     * Remove all the strings from the table.
+     */
+    public void clear() {
+        for( int i = 0; i < strings.length; i++ ) {
+            strings[i] = null;
+        }
+    }
+
+    private int slot(int h) {
+        // Spread the high bits of the hash, which vary most for short strings, into the index.
+        return (h ^ (h >>> 16) ^ (h >>> 8)) & mask;
+    }
+}
@@ -0,0 +1,53 @@
+package com.innerfunction.json.parser;
+
+/**
+ * A read-only view of an array in a {@link JSONTape}.
+ * The array's size is read from the tape, and elements are decoded when first read.
+ */
+class TapeArray extends JSONArrayView {
+
+    private final JSONTape tape;
+    /** The tape index of the array. */
+    private final int index;
+    /** The tape indexes of the array's elements, once needed. */
+    private int[] elements;
+    /** The elements read so far. */
+    private Object[] values;
+
+    TapeArray(JSONTape tape, int index) {
+        this.tape = tape;
+        this.index = index;
+    }
+
+    @Override
+    public int size() {
+        return tape.count( index );
+    }
+
+    /**
+     * @return The element at an index, decoding it on first use.
+     */
+    @Override
+    public Object get(int idx) {
+        if( idx < 0 || idx >= size() ) {
+            throw new IndexOutOfBoundsException("Index: "+idx+", Size: "+size());
+        }
+        if( elements == null ) {
+            int count = tape.count( index );
+            int[] elements = new int[count];
+            int e = index + 1;
+            for( int n = 0; n < count; n++ ) {
+                elements[n] = e;
+                e = tape.skip( e );
+            }
+            this.elements = elements;
+            this.values = new Object[count];
+        }
+        Object value = values[idx];
+        if( value == null ) {
+            value = tape.value( elements[idx] );
+            values[idx] = value;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,253 @@
+package com.innerfunction.json.parser;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only view of an object in a {@link JSONTape}.
+ * Keys are compared with the document's text, and values are decoded when first read.
+ */
+@SuppressWarnings("rawtypes")
+class TapeObject extends JSONObjectView {
+
+    /** Objects with more entries than this are indexed by a hash table. */
+    private static final int MAX_UNINDEXED = 8;
+
+    private final JSONTape tape;
+    /** The tape index of the object. */
+    private final int index;
+    /** The tape indexes of the object's keys, in document order; the last of any duplicate keys is used. */
+    private int[] keys;
+    /** Hash table of positions in keys, plus one; zero for empty slots. */
+    private int[] table;
+    /** The values read so far, by position in keys. */
+    private Object[] values;
+
+    TapeObject(JSONTape tape, int index) {
+        this.tape = tape;
+        this.index = index;
+    }
+
+    /**
+     * Find the object's keys, on first use.
+     */
+    private int[] keys() {
+        if( keys == null ) {
+            int count = tape.count( index );
+            int[] keys = new int[count];
+            int i = index + 1;
+            for( int n = 0; n < count; n++ ) {
+                keys[n] = i;
+                i = tape.skip( i + 1 );
+            }
+            if( count > MAX_UNINDEXED ) {
+                keys = index( keys );
+            }
+            else {
+                keys = removeDuplicates( keys );
+            }
+            this.keys = keys;
+        }
+        return keys;
+    }
+
+    /**
+     * Build the hash table for a list of keys, and remove duplicate keys from the list.
+     */
+    private int[] index(int[] keys) {
+        int size = Integer.highestOneBit( keys.length * 2 - 1 ) * 2;
+        int[] table = new int[size];
+        int count = 0;
+        for( int n = 0; n < keys.length; n++ ) {
+            int slot = tape.keyHash( keys[n] ) & (size - 1);
+            while( table[slot] != 0 && !tape.keyEquals( keys[table[slot] - 1], keys[n] ) ) {
+                slot = (slot + 1) & (size - 1);
+            }
+            if( table[slot] != 0 ) {
+                // A duplicate key; the later entry replaces the earlier one.
+                keys[table[slot] - 1] = keys[n];
+            }
+            else {
+                keys[count] = keys[n];
+                table[slot] = ++count;
+            }
+        }
+        this.table = table;
+        return trim( keys, count );
+    }
+
+    private int[] removeDuplicates(int[] keys) {
+        int count = 0;
+        for( int n = 0; n < keys.length; n++ ) {
+            int m = 0;
+            while( m < count && !tape.keyEquals( keys[m], keys[n] ) ) {
+                m++;
+            }
+            keys[m] = keys[n];
+            if( m == count ) {
+                count++;
+            }
+        }
+        return trim( keys, count );
+    }
+
+    private static int[] trim(int[] keys, int count) {
+        if( count == keys.length ) {
+            return keys;
+        }
+        int[] newKeys = new int[count];
+        System.arraycopy( keys, 0, newKeys, 0, count );
+        return newKeys;
+    }
+
+    /**
+     * @return The position of a key in keys, or -1 if the object has no such key.
+     */
+    private int find(Object key) {
+        if( !(key instanceof String) ) {
+            return -1;
+        }
+        String name = (String)key;
+        int[] keys = keys();
+        if( table != null ) {
+            int size = table.length;
+            int slot = name.hashCode() & (size - 1);
+            while( table[slot] != 0 ) {
+                int n = table[slot] - 1;
+                if( tape.keyEquals( keys[n], name ) ) {
+                    return n;
+                }
+                slot = (slot + 1) & (size - 1);
+            }
+            return -1;
+        }
+        for( int n = 0; n < keys.length; n++ ) {
+            if( tape.keyEquals( keys[n], name ) ) {
+                return n;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The value of the entry at a position in keys, decoding it on first use.
+     */
+    private Object valueAt(int n) {
+        if( values == null ) {
+            values = new Object[keys.length];
+        }
+        Object value = values[n];
+        if( value == null ) {
+            value = tape.value( keys[n] + 1 );
+            values[n] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public int size() {
+        return keys().length;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int n = find( key );
+        return n < 0 ? null : valueAt( n );
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find( key ) >= 0;
+    }
+
+    @Override
+    public Set entrySet() {
+        return new AbstractSet() {
+            @Override
+            public Iterator iterator() {
+                return new EntryIterator();
+            }
+            @Override
+            public int size() {
+                return TapeObject.this.size();
+            }
+        };
+    }
+
+    /**
+     * Iterates over the object's entries in document order.
+     */
+    private class EntryIterator implements Iterator {
+
+        private final int[] keys = keys();
+        private int next;
+
+        @Override
+        public boolean hasNext() {
+            return next < keys.length;
+        }
+
+        @Override
+        public Object next() {
+            if( next == keys.length ) {
+                throw new NoSuchElementException();
+            }
+            return new Entry( next++ );
+        }
+
+        @Override
+        public void remove() {
+            throw readOnly();
+        }
+    }
+
+    private class Entry implements Map.Entry {
+
+        private final int n;
+        private final String key;
+
+        Entry(int n) {
+            this.n = n;
+            this.key = tape.string( keys[n] );
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+
+        @Override
+        public Object getValue() {
+            return valueAt( n );
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw readOnly();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if( !(obj instanceof Map.Entry) ) {
+                return false;
+            }
+            Map.Entry entry = (Map.Entry)obj;
+            Object value = getValue();
+            return key.equals( entry.getKey() ) && (value == null ? entry.getValue() == null : value.equals( entry.getValue() ));
+        }
+
+        @Override
+        public int hashCode() {
+            Object value = getValue();
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key+"="+getValue();
+        }
+    }
+}
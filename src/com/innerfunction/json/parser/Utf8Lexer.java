@@ -0,0 +1,775 @@
+package com.innerfunction.json.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Lexer for UTF-8 encoded JSON text.
+ * The input bytes are scanned directly, without first being decoded to characters; only the
+ * contents of string values are decoded. Byte arrays and heap byte buffers are scanned in place;
+ * direct byte buffers and input streams are read in blocks into a reusable buffer.
+ *
+ * Token positions are byte offsets from the start of the input; positions beyond the range of an
+ * int, in files of 2GB or more, are reported as Integer.MAX_VALUE. Malformed UTF-8 sequences within
+ * strings are replaced with U+FFFD, as an InputStreamReader would do.
+ *
+ * Input may also be pushed to the lexer in chunks, with {@link #feed(byte[], int, int)}. When the
+ * input pushed so far ends within a token, {@link #next()} returns T_MORE; the part of the token
+ * already scanned is kept, and scanning resumes from that point once more input is fed.
+ */
+class Utf8Lexer extends AbstractLexer {
+
+    /** Size of the read buffer used for streamed input. */
+    static final int BUFFER_SIZE = 8192;
+    /** Size of the windows in which files are mapped. */
+    static final int MAP_WINDOW_SIZE = 1 << 24;
+
+    private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+    private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+    private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+
+    /** Byte masks for testing the eight bytes of a long at once. */
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long QUOTES = ONES * '"';
+    private static final long BACKSLASHES = ONES * '\\';
+
+    /** Kinds of token which may be partly scanned when pushed input runs out. */
+    private static final int P_NONE = 0;
+    private static final int P_STRING = 1;
+    private static final int P_NUMBER = 2;
+
+    /**
+     * Thrown when pushed input runs out before the end of the input, and caught by next().
+     * A single instance is used, so it doesn't fill in a stack trace.
+     */
+    @SuppressWarnings("serial")
+    private static final class NeedInput extends IOException {
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+    private static final NeedInput NEED_INPUT = new NeedInput();
+
+    /** The bytes being scanned. */
+    private byte[] buf;
+    /** The current scan position within buf. */
+    private int pos;
+    /** The end of the valid bytes within buf. */
+    private int limit;
+    /** The input position of buf[0]. */
+    private long base;
+    /** A little-endian view of buf, used to read eight bytes at a time. */
+    private ByteBuffer words;
+    /** True if buf is the caller's array, which is retained for the document's lifetime. */
+    private boolean inPlace;
+    /** The read buffer for streamed input; kept between documents. */
+    private byte[] readBuffer;
+    /** Streamed input sources. */
+    private InputStream in;
+    private ByteBuffer src;
+    /** A file being mapped, the file position of the next window and the end of the file. */
+    private FileChannel channel;
+    private long mapPosition;
+    private long mapEnd;
+    /** True if input is pushed to the lexer; and whether the end of pushed input has been signalled. */
+    private boolean push;
+    private boolean ended;
+    /** True if the last call to next() returned T_MORE. */
+    private boolean waiting;
+    /** The kind of token being scanned, if it is incomplete. */
+    private int partial;
+    /** How far the scan of the current number has progressed. */
+    private int numberPhase;
+    private boolean numberIsDouble;
+    /** The input position of the opening quote of the current string token. */
+    int stringStart;
+
+    /**
+     * Reset the lexer to scan a range of a byte array in place.
+     */
+    void reset(byte[] bytes, int offset, int length) {
+        if( offset < 0 || length < 0 || offset + length > bytes.length ) {
+            throw new IndexOutOfBoundsException();
+        }
+        in = null;
+        src = null;
+        channel = null;
+        push = false;
+        inPlace = true;
+        buf = bytes;
+        pos = offset;
+        limit = offset + length;
+        base = -offset;
+        tokenPosition = 0;
+        partial = P_NONE;
+        numberPhase = 0;
+    }
+
+    /**
+     * Reset the lexer to scan the remaining bytes of a buffer.
+     * The buffer's position is not modified.
+     */
+    void reset(ByteBuffer buffer) {
+        if( buffer.hasArray() ) {
+            reset( buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining() );
+        }
+        else {
+            resetStreamed();
+            src = buffer.duplicate();
+        }
+    }
+
+    /**
+     * Reset the lexer to scan a file, from the channel's current position to its end.
+     * The file is memory mapped in windows as it is scanned, so files larger than 2GB can be
+     * scanned. The channel's position is not modified.
+     */
+    void reset(FileChannel channel) throws IOException {
+        resetStreamed();
+        this.channel = channel;
+        mapPosition = channel.position();
+        mapEnd = channel.size();
+    }
+
+    /**
+     * Reset the lexer to scan the bytes read from an input stream.
+     */
+    void reset(InputStream in) {
+        resetStreamed();
+        this.in = in;
+    }
+
+    private void resetStreamed() {
+        if( readBuffer == null ) {
+            readBuffer = new byte[BUFFER_SIZE];
+        }
+        in = null;
+        src = null;
+        channel = null;
+        push = false;
+        inPlace = false;
+        buf = readBuffer;
+        pos = limit = 0;
+        base = 0;
+        tokenPosition = 0;
+        partial = P_NONE;
+        numberPhase = 0;
+    }
+
+    /**
+     * Reset the lexer to scan input which is pushed to it in chunks.
+     */
+    void resetPush() {
+        resetStreamed();
+        push = true;
+        ended = false;
+        waiting = false;
+    }
+
+    /**
+     * Push a chunk of input to the lexer. If all earlier input has been scanned, then the chunk is
+     * scanned in place, and {@link #retain()} must be called before the caller reuses it; otherwise
+     * it is appended to the unscanned input in the read buffer.
+     */
+    void feed(byte[] bytes, int offset, int length) {
+        if( offset < 0 || length < 0 || offset + length > bytes.length ) {
+            throw new IndexOutOfBoundsException();
+        }
+        if( pos == limit ) {
+            base += pos - offset;
+            buf = bytes;
+            pos = offset;
+            limit = offset + length;
+        }
+        else {
+            makeRoom( length );
+            System.arraycopy( bytes, offset, buf, limit, length );
+            limit += length;
+        }
+    }
+
+    /**
+     * Push the remaining bytes of a buffer to the lexer. The buffer's position is moved to its limit.
+     * @see #feed(byte[], int, int)
+     */
+    void feed(ByteBuffer buffer) {
+        int length = buffer.remaining();
+        if( buffer.hasArray() ) {
+            feed( buffer.array(), buffer.arrayOffset() + buffer.position(), length );
+            buffer.position( buffer.limit() );
+        }
+        else {
+            makeRoom( length );
+            buffer.get( buf, limit, length );
+            limit += length;
+        }
+    }
+
+    /**
+     * Copy any unscanned bytes of a chunk which is being scanned in place to the read buffer.
+     */
+    void retain() {
+        if( buf != readBuffer ) {
+            int remaining = limit - pos;
+            if( readBuffer.length < remaining ) {
+                readBuffer = new byte[Math.max( remaining, readBuffer.length * 2 )];
+            }
+            System.arraycopy( buf, pos, readBuffer, 0, remaining );
+            base += pos;
+            buf = readBuffer;
+            pos = 0;
+            limit = remaining;
+        }
+    }
+
+    /**
+     * Move the unscanned bytes in the read buffer to its start, and make room for n more after them.
+     */
+    private void makeRoom(int n) {
+        retain();
+        int remaining = limit - pos;
+        if( pos > 0 ) {
+            System.arraycopy( buf, pos, buf, 0, remaining );
+            base += pos;
+            pos = 0;
+            limit = remaining;
+        }
+        if( buf.length - limit < n ) {
+            byte[] newBuffer = new byte[Math.max( limit + n, buf.length * 2 )];
+            System.arraycopy( buf, 0, newBuffer, 0, limit );
+            buf = readBuffer = newBuffer;
+        }
+    }
+
+    /**
+     * Signal the end of pushed input.
+     */
+    void end() {
+        ended = true;
+    }
+
+    /**
+     * @return true if the last token requested was incomplete, and more input must be pushed.
+     */
+    boolean isWaiting() {
+        return waiting;
+    }
+
+    @Override
+    public void yyrelease() {
+        super.yyrelease();
+        if( readBuffer != null && readBuffer.length > BUFFER_SIZE ) {
+            readBuffer = null;
+        }
+        in = null;
+        src = null;
+        channel = null;
+        buf = null;
+        words = null;
+        pos = limit = 0;
+    }
+
+    /**
+     * @return The input position of a position within buf.
+     */
+    private int position(int p) {
+        long position = base + p;
+        return position > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int)position;
+    }
+
+    /**
+     * Read more input into the read buffer, after the bytes from the current position.
+     * @return false if no more input is available.
+     */
+    private boolean fill() throws IOException {
+        if( push ) {
+            if( ended ) {
+                return false;
+            }
+            throw NEED_INPUT;
+        }
+        if( channel != null && (src == null || !src.hasRemaining()) ) {
+            mapWindow();
+        }
+        if( in == null && src == null ) {
+            return false;
+        }
+        // Move unread bytes to the start of the buffer.
+        int remaining = limit - pos;
+        if( pos > 0 ) {
+            System.arraycopy( buf, pos, buf, 0, remaining );
+            base += pos;
+            pos = 0;
+            limit = remaining;
+        }
+        if( limit == buf.length ) {
+            byte[] newBuffer = new byte[buf.length * 2];
+            System.arraycopy( buf, 0, newBuffer, 0, limit );
+            buf = readBuffer = newBuffer;
+        }
+        int count;
+        if( in != null ) {
+            do {
+                count = in.read( buf, limit, buf.length - limit );
+            }
+            while( count == 0 );
+        }
+        else {
+            count = Math.min( src.remaining(), buf.length - limit );
+            if( count == 0 ) {
+                count = -1;
+            }
+            else {
+                src.get( buf, limit, count );
+            }
+        }
+        if( count < 0 ) {
+            in = null;
+            src = null;
+            return false;
+        }
+        limit += count;
+        return true;
+    }
+
+    /**
+     * Map the next window of the file being scanned, or end the input at the end of the file.
+     */
+    private void mapWindow() throws IOException {
+        long size = Math.min( mapEnd - mapPosition, MAP_WINDOW_SIZE );
+        if( size <= 0 ) {
+            channel = null;
+            src = null;
+            return;
+        }
+        src = channel.map( FileChannel.MapMode.READ_ONLY, mapPosition, size );
+        mapPosition += size;
+    }
+
+    /**
+     * Ensure that at least n bytes are available from the current position.
+     * @return false if the end of the input is reached first.
+     */
+    private boolean ensure(int n) throws IOException {
+        while( limit - pos < n ) {
+            if( !fill() ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    int next() throws IOException, ParseException {
+        if( !push ) {
+            return scan();
+        }
+        try {
+            waiting = false;
+            return scan();
+        }
+        catch( NeedInput e ) {
+            waiting = true;
+            return T_MORE;
+        }
+    }
+
+    /**
+     * Scan the next token, or resume scanning a partly scanned token.
+     */
+    private int scan() throws IOException, ParseException {
+        switch( partial ) {
+        case P_STRING:
+            return scanString();
+        case P_NUMBER:
+            return scanNumber();
+        }
+        while( true ) {
+            if( pos == limit && !fill() ) {
+                tokenPosition = position( pos );
+                return T_EOF;
+            }
+            switch( buf[pos] ) {
+            case ' ': case '\t': case '\n': case '\r':
+                pos++;
+                continue;
+            case '{':
+                tokenPosition = position( pos++ );
+                return T_LEFT_BRACE;
+            case '}':
+                tokenPosition = position( pos++ );
+                return T_RIGHT_BRACE;
+            case '[':
+                tokenPosition = position( pos++ );
+                return T_LEFT_SQUARE;
+            case ']':
+                tokenPosition = position( pos++ );
+                return T_RIGHT_SQUARE;
+            case ',':
+                tokenPosition = position( pos++ );
+                return T_COMMA;
+            case ':':
+                tokenPosition = position( pos++ );
+                return T_COLON;
+            case '"':
+                stringStart = position( pos++ );
+                charsLength = 0;
+                partial = P_STRING;
+                return scanString();
+            case '-': case '0': case '1': case '2': case '3': case '4':
+            case '5': case '6': case '7': case '8': case '9':
+                return scanNumber();
+            case 't':
+                return scanLiteral( TRUE, T_TRUE );
+            case 'f':
+                return scanLiteral( FALSE, T_FALSE );
+            case 'n':
+                return scanLiteral( NULL, T_NULL );
+            default:
+                throw unexpectedChar();
+            }
+        }
+    }
+
+    /**
+     * Scan a string, from the character after its opening quote.
+     */
+    private int scanString() throws IOException, ParseException {
+        stringSource = null;
+        if( skipValues ) {
+            return skipString();
+        }
+        while( true ) {
+            // Copy the run of plain ASCII characters up to the next quote, escape or non-ASCII byte.
+            byte[] b = buf;
+            int start = pos, end = limit;
+            int p = findSpecial( b, start, end );
+            if( p < end && b[p] == '"' && charsLength == 0 && stringViews && inPlace ) {
+                // A plain ASCII string in the caller's array; leave it in place.
+                partial = P_NONE;
+                tokenPosition = position( p );
+                pos = p + 1;
+                stringChars = null;
+                stringSource = b;
+                stringOffset = start;
+                stringLength = p - start;
+                return T_STRING;
+            }
+            if( p > start ) {
+                growChars( p - start );
+                char[] c = chars;
+                int n = charsLength;
+                for( int i = start; i < p; i++ ) {
+                    c[n++] = (char)b[i];
+                }
+                charsLength = n;
+                pos = p;
+            }
+            if( p == end ) {
+                if( !fill() ) {
+                    // Unterminated string; report the end of the input.
+                    tokenPosition = position( pos );
+                    partial = P_NONE;
+                    return T_EOF;
+                }
+                continue;
+            }
+            int ch = b[p];
+            if( ch == '"' ) {
+                partial = P_NONE;
+                tokenPosition = position( pos++ );
+                stringChars = chars;
+                stringOffset = 0;
+                stringLength = charsLength;
+                return T_STRING;
+            }
+            if( ch == '\\' ) {
+                if( !scanEscape() ) {
+                    tokenPosition = position( pos );
+                    partial = P_NONE;
+                    return T_EOF;
+                }
+            }
+            else {
+                decodeMultibyte();
+            }
+        }
+    }
+
+    /**
+     * Find the end of a string, from the byte after its opening quote, without decoding it.
+     * Neither quotes nor backslashes occur within multi-byte UTF-8 sequences, and a backslash
+     * always escapes the character following it as far as finding the closing quote is concerned;
+     * so this ends the string at the same quote as a full scan.
+     */
+    private int skipString() throws IOException {
+        while( true ) {
+            byte[] b = buf;
+            int p = pos, end = limit;
+            while( (p = findSpecial( b, p, end )) < end ) {
+                int ch = b[p];
+                if( ch == '"' ) {
+                    partial = P_NONE;
+                    tokenPosition = position( p );
+                    pos = p + 1;
+                    stringChars = chars;
+                    stringOffset = stringLength = 0;
+                    return T_STRING;
+                }
+                if( ch == '\\' ) {
+                    if( p + 1 == end ) {
+                        break;
+                    }
+                    p++;
+                }
+                p++;
+            }
+            pos = p;
+            if( !fill() ) {
+                partial = P_NONE;
+                pos = limit;
+                tokenPosition = position( pos );
+                return T_EOF;
+            }
+        }
+    }
+
+    /**
+     * Find the first quote, backslash or non-ASCII byte in a range of bytes.
+     * Eight bytes are tested at a time, as a long: a byte of (w ^ QUOTES) is zero where w has a
+     * quote, and subtracting one from each byte of a word sets the high bit of its zero bytes.
+     * Borrows only propagate above a zero byte, so the lowest high bit of the combined masks
+     * marks the first byte found.
+     * @return The position of the byte, or end if there's no such byte.
+     */
+    private int findSpecial(byte[] b, int p, int end) {
+        if( end - p >= 8 ) {
+            ByteBuffer words = words( b );
+            do {
+                long w = words.getLong( p );
+                long q = w ^ QUOTES;
+                long e = w ^ BACKSLASHES;
+                long mask = (((q - ONES) & ~q) | ((e - ONES) & ~e) | w) & HIGH_BITS;
+                if( mask != 0 ) {
+                    return p + (Long.numberOfTrailingZeros( mask ) >> 3);
+                }
+                p += 8;
+            }
+            while( end - p >= 8 );
+        }
+        while( p < end ) {
+            int ch = b[p];
+            if( ch == '"' || ch == '\\' || ch < 0 ) {
+                break;
+            }
+            p++;
+        }
+        return p;
+    }
+
+    /**
+     * @return A little-endian view of a buffer.
+     */
+    private ByteBuffer words(byte[] b) {
+        ByteBuffer words = this.words;
+        if( words == null || words.array() != b ) {
+            words = ByteBuffer.wrap( b ).order( ByteOrder.LITTLE_ENDIAN );
+            this.words = words;
+        }
+        return words;
+    }
+
+    /**
+     * Decode an escape sequence, from its backslash. As with Yylex, a backslash which doesn't
+     * start a valid escape sequence is taken literally.
+     * @return false if the end of the input is reached first.
+     */
+    private boolean scanEscape() throws IOException {
+        if( !ensure( 2 ) ) {
+            pos = limit;
+            return false;
+        }
+        char ch = escapeValue( buf[pos + 1] );
+        if( ch != 0 ) {
+            appendChar( ch );
+            pos += 2;
+            return true;
+        }
+        if( buf[pos + 1] == 'u' && ensure( 6 ) ) {
+            int value = hexValue( buf[pos + 2], buf[pos + 3], buf[pos + 4], buf[pos + 5] );
+            if( value >= 0 ) {
+                appendChar( (char)value );
+                pos += 6;
+                return true;
+            }
+        }
+        appendChar( '\\' );
+        pos++;
+        return true;
+    }
+
+    /**
+     * Decode a multi-byte UTF-8 sequence, from its lead byte.
+     */
+    private void decodeMultibyte() throws IOException {
+        int lead = buf[pos] & 0xFF;
+        int count, min;
+        int cp;
+        if( lead >= 0xC2 && lead <= 0xDF ) {
+            count = 1; min = 0x80; cp = lead & 0x1F;
+        }
+        else if( lead >= 0xE0 && lead <= 0xEF ) {
+            count = 2; min = 0x800; cp = lead & 0x0F;
+        }
+        else if( lead >= 0xF0 && lead <= 0xF4 ) {
+            count = 3; min = 0x10000; cp = lead & 0x07;
+        }
+        else {
+            // A continuation byte or an invalid lead byte.
+            pos++;
+            appendChar( '\uFFFD' );
+            return;
+        }
+        ensure( count + 1 );
+        int i = 1;
+        for( ; i <= count && pos + i < limit; i++ ) {
+            int b = buf[pos + i];
+            if( (b & 0xC0) != 0x80 ) {
+                break;
+            }
+            cp = (cp << 6) | (b & 0x3F);
+        }
+        if( i <= count || cp < min || cp > 0x10FFFF || (cp >= 0xD800 && cp <= 0xDFFF) ) {
+            // Truncated or malformed sequence; replace the bytes consumed so far.
+            pos += i;
+            appendChar( '\uFFFD' );
+            return;
+        }
+        pos += i;
+        if( cp >= 0x10000 ) {
+            cp -= 0x10000;
+            growChars( 2 );
+            chars[charsLength++] = (char)(0xD800 + (cp >> 10));
+            chars[charsLength++] = (char)(0xDC00 + (cp & 0x3FF));
+        }
+        else {
+            appendChar( (char)cp );
+        }
+    }
+
+    /**
+     * Scan a number, using the same grammar as Yylex: an optionally negative integer, optionally
+     * followed by a fraction and then an exponent. A '.' or exponent marker which isn't followed
+     * by digits isn't part of the number. The scan is done in phases, so that it can be resumed
+     * when pushed input runs out; each phase falls through to the next.
+     */
+    @SuppressWarnings("fallthrough")
+    private int scanNumber() throws IOException, ParseException {
+        switch( numberPhase ) {
+        case 0:
+            tokenPosition = position( pos );
+            digitsLength = 0;
+            numberIsDouble = false;
+            if( buf[pos] == '-' ) {
+                if( !ensure( 2 ) || !isDigit( buf[pos + 1] ) ) {
+                    throw unexpectedChar();
+                }
+                appendDigit( '-' );
+                pos++;
+            }
+            partial = P_NUMBER;
+            numberPhase = 1;
+            // fall through
+        case 1:
+            // Integer digits.
+            scanDigits();
+            numberPhase = 2;
+            // fall through
+        case 2:
+            // Fraction.
+            if( ensure( 2 ) && buf[pos] == '.' && isDigit( buf[pos + 1] ) ) {
+                appendDigit( '.' );
+                pos++;
+                numberIsDouble = true;
+                numberPhase = 3;
+            }
+            else {
+                numberPhase = 4;
+            }
+            // fall through
+        case 3:
+            if( numberPhase == 3 ) {
+                scanDigits();
+                numberPhase = 4;
+            }
+            // fall through
+        case 4:
+            // Exponent.
+            if( ensure( 2 ) && (buf[pos] == 'e' || buf[pos] == 'E') ) {
+                int signLength = (buf[pos + 1] == '+' || buf[pos + 1] == '-') ? 1 : 0;
+                if( ensure( signLength + 2 ) && isDigit( buf[pos + signLength + 1] ) ) {
+                    for( int i = 0; i <= signLength; i++ ) {
+                        appendDigit( (char)buf[pos++] );
+                    }
+                    numberIsDouble = true;
+                    numberPhase = 5;
+                }
+            }
+            // fall through
+        case 5:
+            if( numberPhase == 5 ) {
+                scanDigits();
+            }
+        }
+        numberPhase = 0;
+        partial = P_NONE;
+        if( skipValues ) {
+            return numberIsDouble ? T_DOUBLE : T_LONG;
+        }
+        return numberToken( numberIsDouble );
+    }
+
+    private void scanDigits() throws IOException {
+        while( (pos < limit || fill()) && isDigit( buf[pos] ) ) {
+            appendDigit( (char)buf[pos++] );
+        }
+    }
+
+    /**
+     * Scan a literal. An incomplete literal is reported as an unexpected character at its start.
+     */
+    private int scanLiteral(byte[] literal, int type) throws IOException, ParseException {
+        if( ensure( literal.length ) ) {
+            int p = pos;
+            int i = 1;
+            while( i < literal.length && buf[p + i] == literal[i] ) {
+                i++;
+            }
+            if( i == literal.length ) {
+                tokenPosition = position( pos );
+                pos += literal.length;
+                return type;
+            }
+        }
+        throw unexpectedChar();
+    }
+
+    /**
+     * Create the exception for the character at the current position.
+     */
+    private ParseException unexpectedChar() throws IOException {
+        int position = position( pos );
+        int lead = buf[pos] & 0xFF;
+        if( lead < 0x80 ) {
+            return unexpectedChar( position, (char)lead );
+        }
+        charsLength = 0;
+        decodeMultibyte();
+        return unexpectedChar( position, chars[0] );
+    }
+}
@@ -0,0 +1,151 @@
+package com.innerfunction.json.parser;
+
+import java.util.List;
+import java.util.Map;
+
+import com.innerfunction.json.JSONArray;
+import com.innerfunction.json.JSONObject;
+
+/**
+ * A content handler which builds the value described by the events it receives.
+ * Containers are created and added to their parent in the same order as by JSONParser's
+ * whole document parse, so the same containers are built for a given document.
+ */
+class ValueBuilder implements ContentHandler {
+
+    private final ContainerFactory containerFactory;
+    /** The containers currently being built, and the key of the current entry of each object. */
+    private Object[] containers = new Object[32];
+    private String[] keys = new String[32];
+    private int depth;
+    /** The top level value. */
+    private Object value;
+    /** True once the top level value is complete. */
+    private boolean complete;
+
+    ValueBuilder(ContainerFactory containerFactory) {
+        this.containerFactory = containerFactory;
+    }
+
+    /**
+     * @return true if the top level value is complete.
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return The top level value, if complete; otherwise null.
+     */
+    Object getValue() {
+        return complete ? value : null;
+    }
+
+    @Override
+    public void startJSON() {
+        for( int i = 0; i < depth; i++ ) {
+            containers[i] = null;
+            keys[i] = null;
+        }
+        depth = 0;
+        value = null;
+        complete = false;
+    }
+
+    @Override
+    public void endJSON() {}
+
+    @Override
+    public boolean startObject() {
+        Map<?,?> object = null;
+        if( containerFactory != null ) {
+            object = containerFactory.createObjectContainer();
+        }
+        push( object != null ? object : new JSONObject() );
+        return true;
+    }
+
+    @Override
+    public boolean endObject() {
+        pop();
+        return true;
+    }
+
+    @Override
+    public boolean startObjectEntry(String key) {
+        keys[depth - 1] = key;
+        return true;
+    }
+
+    @Override
+    public boolean endObjectEntry() {
+        keys[depth - 1] = null;
+        return true;
+    }
+
+    @Override
+    public boolean startArray() {
+        List<?> array = null;
+        if( containerFactory != null ) {
+            array = containerFactory.creatArrayContainer();
+        }
+        push( array != null ? array : new JSONArray() );
+        return true;
+    }
+
+    @Override
+    public boolean endArray() {
+        pop();
+        return true;
+    }
+
+    @Override
+    public boolean primitive(Object value) {
+        add( value );
+        if( depth == 0 ) {
+            complete = true;
+        }
+        return true;
+    }
+
+    /**
+     * Add a value to the current container, or make it the top level value.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void add(Object value) {
+        if( depth == 0 ) {
+            this.value = value;
+        }
+        else {
+            Object container = containers[depth - 1];
+            if( container instanceof Map ) {
+                ((Map)container).put( keys[depth - 1], value );
+            }
+            else {
+                ((List)container).add( value );
+            }
+        }
+    }
+
+    private void push(Object container) {
+        add( container );
+        if( depth == containers.length ) {
+            Object[] newContainers = new Object[depth * 2];
+            System.arraycopy( containers, 0, newContainers, 0, depth );
+            containers = newContainers;
+            String[] newKeys = new String[depth * 2];
+            System.arraycopy( keys, 0, newKeys, 0, depth );
+            keys = newKeys;
+        }
+        containers[depth++] = container;
+    }
+
+    private void pop() {
+        depth--;
+        containers[depth] = null;
+        keys[depth] = null;
+        if( depth == 0 ) {
+            complete = true;
+        }
+    }
+}
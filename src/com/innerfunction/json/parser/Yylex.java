@@ -4,7 +4,9 @@ package com.innerfunction.json.parser;
 
 import android.annotation.SuppressLint;
 
-class Yylex {
+import com.innerfunction.json.JSONNumber;
+
+class Yylex implements Lexer {
 
   /** This character denotes the end of file */
   public static final int YYEOF = -1;
@@ -12,6 +14,9 @@ class Yylex {
   /** initial size of the lookahead buffer */
   private static final int ZZ_BUFFERSIZE = 16384;
 
+  /** largest string buffer capacity kept between documents */
+  private static final int ZZ_MAX_RETAINED_SB = 1024;
+
   /** lexical states */
   public static final int YYINITIAL = 0;
   public static final int STRING_BEGIN = 2;
@@ -269,12 +274,130 @@ private boolean zzAtBOL = true;
   private boolean zzAtEOF;
 
   /* user code: */
-private StringBuffer sb=new StringBuffer();
-
-int getPosition(){
+private StringBuilder sb=new StringBuilder();
+/** When set, number values are JSONNumbers holding the number's text, rather than being decoded. */
+boolean lazyNumbers;
+/** When set, numbers out of the range of a long or double are BigIntegers or BigDecimals. */
+boolean bigNumbers;
+/** Tables which canonicalize the values of object keys and of string values; or null. */
+StringTable keyTable;
+StringTable valueTable;
+/** True if the next string is expected to be an object key. */
+private boolean keyExpected;
+
+public int getPosition(){
 	return yychar;
 }
 
+public void setKeyExpected(boolean keyExpected){
+	this.keyExpected=keyExpected;
+}
+
+/**
+ * Scans the rest of a string, from the character after its opening quote.
+ * Rather than matching each run of unescaped characters as a separate token,
+ * the buffer is searched for the next quote or backslash and the run is copied
+ * in bulk; escapes are decoded by table lookup. A string without escapes is
+ * created directly from the buffer. As with the string rules of the scanner,
+ * the position of the token is that of its closing quote, and an invalid escape
+ * is taken literally.
+ * @return The string token, or null if the input ends first.
+ */
+private Yytoken zzScanString() throws java.io.IOException {
+	sb.setLength(0);
+	int p=zzMarkedPos;
+	while(true){
+		char[] buffer=zzBuffer;
+		int start=p;
+		int end=zzEndRead;
+		char ch=0;
+		while(p<end){
+			ch=buffer[p];
+			if(ch=='"' || ch=='\\')
+				break;
+			p++;
+		}
+		if(p<end && ch=='"'){
+			StringTable table=keyExpected ? keyTable : valueTable;
+			String value;
+			if(sb.length()==0){
+				value=table!=null ? table.get(buffer,start,p-start) : new String(buffer,start,p-start);
+			}
+			else{
+				sb.append(buffer,start,p-start);
+				value=table!=null ? table.get(sb,0,sb.length()) : sb.toString();
+			}
+			zzSkipTo(p);
+			zzMarkedPos=zzCurrentPos=p+1;
+			return new Yytoken(Yytoken.TYPE_VALUE, value);
+		}
+		sb.append(buffer,start,p-start);
+		if(p==end){
+			p=zzEnsure(p,1);
+			if(p==zzEndRead)
+				return zzEndOfString();
+			continue;
+		}
+		// An escape; read ahead enough for the longest one.
+		p=zzEnsure(p,6);
+		buffer=zzBuffer;
+		int available=zzEndRead-p;
+		if(available<2)
+			return zzEndOfString();
+		ch=AbstractLexer.escapeValue(buffer[p+1]);
+		if(ch!=0){
+			sb.append(ch);
+			p+=2;
+			continue;
+		}
+		if(buffer[p+1]=='u' && available>=6){
+			int value=AbstractLexer.hexValue(buffer[p+2],buffer[p+3],buffer[p+4],buffer[p+5]);
+			if(value>=0){
+				sb.append((char)value);
+				p+=6;
+				continue;
+			}
+		}
+		sb.append('\\');
+		p++;
+	}
+}
+
+/**
+ * Consumes the rest of the input, for a string which isn't terminated.
+ * @return null, for the end of the input.
+ */
+private Yytoken zzEndOfString(){
+	zzSkipTo(zzEndRead);
+	zzMarkedPos=zzCurrentPos=zzEndRead;
+	return null;
+}
+
+/**
+ * Discards the buffer contents before position p, which becomes the start of the
+ * current token.
+ */
+private void zzSkipTo(int p){
+	yychar+=p-zzStartRead;
+	zzStartRead=p;
+}
+
+/**
+ * Reads more input, if fewer than n characters follow position p of the buffer.
+ * The buffer contents before p are discarded.
+ * @return The position of p after any refill.
+ */
+private int zzEnsure(int p,int n) throws java.io.IOException {
+	while(zzEndRead-p<n && !zzAtEOF){
+		zzSkipTo(p);
+		zzCurrentPos=zzMarkedPos=zzEndRead;
+		if(zzRefill())
+			zzAtEOF=true;
+		p=zzStartRead;
+	}
+	return p;
+}
+
 
 
   /**
@@ -393,6 +516,7 @@ int getPosition(){
    * @param reader   the new input stream 
    */
   public final void yyreset(java.io.Reader reader) {
+    zzShrink();
     zzReader = reader;
     zzAtBOL  = true;
     zzAtEOF  = false;
@@ -403,6 +527,33 @@ int getPosition(){
   }
 
 
+  /**
+   * Releases the input stream and any buffer space grown by an oversized
+   * document, so that a reused scanner doesn't pin memory between documents.
+   * Unlike yyreset(), the position of the last token is retained.
+   */
+  public final void yyrelease() {
+    zzShrink();
+    zzReader = null;
+    zzEndRead = zzStartRead = 0;
+    zzCurrentPos = zzMarkedPos = 0;
+  }
+
+
+  /**
+   * Shrinks the lookahead and string buffers back to their initial size,
+   * if a previous document caused them to grow.
+   */
+  private void zzShrink() {
+    if (zzBuffer.length > ZZ_BUFFERSIZE) {
+      zzBuffer = new char[ZZ_BUFFERSIZE];
+    }
+    if (sb.capacity() > ZZ_MAX_RETAINED_SB) {
+      sb = new StringBuilder();
+    }
+  }
+
+
   /**
    * Returns the current lexical state.
    */
@@ -581,7 +732,7 @@ public Yytoken yylex() throws java.io.IOException, ParseException {
           }
         case 25: break;
         case 4: 
-          { sb = null; sb = new StringBuffer(); yybegin(STRING_BEGIN);
+          { return zzScanString();
           }
         case 26: break;
         case 16: 
@@ -609,7 +760,8 @@ public Yytoken yylex() throws java.io.IOException, ParseException {
           }
         case 32: break;
         case 21: 
-          { Double val=Double.valueOf(yytext()); return new Yytoken(Yytoken.TYPE_VALUE, val);
+          { if(lazyNumbers) return new Yytoken(Yytoken.TYPE_VALUE, new JSONNumber(zzBuffer, zzStartRead, zzMarkedPos-zzStartRead));
+            Number val=NumberDecoder.decimalValue(zzBuffer, zzStartRead, zzMarkedPos-zzStartRead, bigNumbers); return new Yytoken(Yytoken.TYPE_VALUE, val);
           }
         case 33: break;
         case 1: 
@@ -663,7 +815,8 @@ public Yytoken yylex() throws java.io.IOException, ParseException {
           }
         case 44: break;
         case 2: 
-          { Long val=Long.valueOf(yytext()); return new Yytoken(Yytoken.TYPE_VALUE, val);
+          { if(lazyNumbers) return new Yytoken(Yytoken.TYPE_VALUE, new JSONNumber(zzBuffer, zzStartRead, zzMarkedPos-zzStartRead));
+            Number val=NumberDecoder.integerValue(zzBuffer, zzStartRead, zzMarkedPos-zzStartRead, bigNumbers); return new Yytoken(Yytoken.TYPE_VALUE, val);
           }
         case 45: break;
         case 18: 
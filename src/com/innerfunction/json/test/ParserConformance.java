@@ -0,0 +1,332 @@
+package com.innerfunction.json.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import com.innerfunction.json.JSONValue;
+import com.innerfunction.json.parser.ContentHandler;
+import com.innerfunction.json.parser.JSONParser;
+import com.innerfunction.json.parser.ParseException;
+
+/**
+ * A conformance suite for the parser engines. Random documents, some of them mutated into
+ * invalid JSON, are parsed by the direct engine and from each kind of input, and each result is
+ * diffed against the state machine engine parsing the same document from a String.
+ *
+ * A result is the JSON text of the parsed value, or the type, position and unexpected object of
+ * the ParseException. Inputs which are read in chunks are read a few characters or bytes at a
+ * time, to exercise the lexers' buffer refills. Content handler parses are compared between the
+ * two engines given the same input, by their log of callbacks, with the parse stopped and
+ * resumed at random callbacks. Errors in a non-ASCII document parsed from bytes are positioned by
+ * byte rather than by character, so only their type is compared.
+ *
+ * Run from the command line, with the number of documents and the random seed as optional
+ * arguments:
+ * <pre>
+ *     java com.innerfunction.json.test.ParserConformance 50000 42
+ * </pre>
+ * The differences found are printed, and the exit status is 1 if there are any.
+ */
+public class ParserConformance {
+
+    /** The maximum number of differences printed. */
+    private static final int MAX_REPORTED = 20;
+
+    private static final String[] ATOMS = {
+        "0", "-1", "12", "007", "1.5", "-0.25e3", "1E+2", "1e-2", "true", "false", "null",
+        "\"a\"", "\"\\u00e9x\\n\\\"\"", "\"h\u00e9llo \u4e16\u754c \ud83d\ude00\"", "\"\"",
+        "9223372036854775807", "-9223372036854775808"
+    };
+
+    /** Characters inserted into documents to make them invalid. */
+    private static final String JUNK = "{}[],:\"\\ .e-+1xtnu\u00e9";
+
+    private final Random random;
+    private int compared;
+    private int differences;
+
+    public ParserConformance(long seed) {
+        this.random = new Random( seed );
+    }
+
+    public static void main(String[] args) throws Exception {
+        int documents = args.length > 0 ? Integer.parseInt( args[0] ) : 50000;
+        long seed = args.length > 1 ? Long.parseLong( args[1] ) : 42;
+        ParserConformance suite = new ParserConformance( seed );
+        suite.run( documents );
+        System.out.println("Compared "+suite.compared+" results, "+suite.differences+" differences");
+        if( suite.differences > 0 ) {
+            System.exit( 1 );
+        }
+    }
+
+    /**
+     * Generate and check a number of documents.
+     */
+    public void run(int documents) throws UnsupportedEncodingException {
+        for( int i = 0; i < documents; i++ ) {
+            check( mutate( generate( 0 ) ) );
+        }
+    }
+
+    /**
+     * @return The number of results which differed from the state machine's.
+     */
+    public int getDifferences() {
+        return differences;
+    }
+
+    /**
+     * Parse a document in each of the ways checked, and compare the results with those of the
+     * state machine engine.
+     */
+    public void check(final String s) throws UnsupportedEncodingException {
+        final byte[] bytes = s.getBytes("UTF-8");
+        boolean ascii = bytes.length == s.length();
+        String expected = result( new Callable<Object>() {
+            public Object call() throws Exception {
+                return new JSONParser( JSONParser.ENGINE_STATE_MACHINE ).parse( s );
+            }
+        });
+        for( final int engine : new int[]{ JSONParser.ENGINE_STATE_MACHINE, JSONParser.ENGINE_DIRECT } ) {
+            String name = engine == JSONParser.ENGINE_DIRECT ? "direct" : "state machine";
+            if( engine == JSONParser.ENGINE_DIRECT ) {
+                compare( s, name+" String", expected, result( new Callable<Object>() {
+                    public Object call() throws Exception {
+                        return new JSONParser( engine ).parse( s );
+                    }
+                }), true );
+            }
+            compare( s, name+" Reader", expected, result( new Callable<Object>() {
+                public Object call() throws Exception {
+                    return new JSONParser( engine ).parse( new ChunkedReader( s ) );
+                }
+            }), true );
+            compare( s, name+" byte[]", expected, result( new Callable<Object>() {
+                public Object call() throws Exception {
+                    return new JSONParser( engine ).parse( bytes );
+                }
+            }), ascii );
+            compare( s, name+" InputStream", expected, result( new Callable<Object>() {
+                public Object call() throws Exception {
+                    return new JSONParser( engine ).parse( new ChunkedInputStream( bytes ) );
+                }
+            }), ascii );
+            compare( s, name+" ByteBuffer", expected, result( new Callable<Object>() {
+                public Object call() throws Exception {
+                    ByteBuffer buffer = ByteBuffer.allocateDirect( bytes.length );
+                    buffer.put( bytes ).flip();
+                    return new JSONParser( engine ).parse( buffer );
+                }
+            }), ascii );
+        }
+        String expectedLog = log( s, null, JSONParser.ENGINE_STATE_MACHINE );
+        compare( s, "direct ContentHandler", expectedLog, log( s, null, JSONParser.ENGINE_DIRECT ), true );
+        compare( s, "direct ContentHandler bytes", log( s, bytes, JSONParser.ENGINE_STATE_MACHINE ),
+            log( s, bytes, JSONParser.ENGINE_DIRECT ), true );
+    }
+
+    private void compare(String s, String mode, String expected, String actual, boolean positions) {
+        compared++;
+        if( !positions && expected.startsWith("PE ") && actual.startsWith("PE ") ) {
+            expected = expected.replaceFirst("^(PE \\d+) -?\\d+", "$1 #");
+            actual = actual.replaceFirst("^(PE \\d+) -?\\d+", "$1 #");
+        }
+        if( !expected.equals( actual ) ) {
+            if( differences++ < MAX_REPORTED ) {
+                System.out.println( mode+": "+s+"\n  expected: "+expected+"\n  actual:   "+actual );
+            }
+        }
+    }
+
+    /**
+     * @return The JSON text of a parse's result, or a description of its exception.
+     */
+    private static String result(Callable<Object> parse) {
+        try {
+            return "OK "+JSONValue.toJSONString( parse.call() );
+        }
+        catch(ParseException e) {
+            return describe( e );
+        }
+        catch(Exception e) {
+            return "EX "+e.getClass().getName();
+        }
+    }
+
+    private static String describe(ParseException e) {
+        return "PE "+e.getErrorType()+" "+e.getPosition()+" "+e.getUnexpectedObject();
+    }
+
+    /**
+     * Parse a document with a content handler which stops the parse at random callbacks, and
+     * resume it until it ends.
+     * @param bytes - The document's bytes, to parse from an InputStream; or null to parse from a
+     * Reader.
+     * @return The log of the handler's callbacks, with a '|' where the parse was resumed.
+     */
+    private static String log(String s, byte[] bytes, int engine) {
+        final StringBuilder log = new StringBuilder();
+        // The same callbacks stop the parse for each engine.
+        final Random stops = new Random( s.hashCode() );
+        ContentHandler handler = new ContentHandler() {
+            private boolean proceed() {
+                return stops.nextInt( 4 ) != 0;
+            }
+            public void startJSON() {
+                log.append("SJ ");
+            }
+            public void endJSON() {
+                log.append("EJ ");
+            }
+            public boolean startObject() {
+                log.append("{ ");
+                return proceed();
+            }
+            public boolean endObject() {
+                log.append("} ");
+                return proceed();
+            }
+            public boolean startObjectEntry(String key) {
+                log.append("K:").append( key ).append(' ');
+                return proceed();
+            }
+            public boolean endObjectEntry() {
+                log.append("/K ");
+                return proceed();
+            }
+            public boolean startArray() {
+                log.append("[ ");
+                return proceed();
+            }
+            public boolean endArray() {
+                log.append("] ");
+                return proceed();
+            }
+            public boolean primitive(Object value) {
+                log.append("V:").append( value ).append(' ');
+                return proceed();
+            }
+        };
+        JSONParser parser = new JSONParser( engine );
+        try {
+            for( int i = 0; i < 1000; i++ ) {
+                int length = log.length();
+                log.append("| ");
+                // A resumed parse continues reading the input it was started with.
+                if( bytes != null ) {
+                    parser.parse( i == 0 ? new ByteArrayInputStream( bytes ) : null, handler, i > 0 );
+                }
+                else {
+                    parser.parse( i == 0 ? new StringReader( s ) : null, handler, i > 0 );
+                }
+                if( log.length() == length + 2 || log.lastIndexOf("EJ ") == log.length() - 3 ) {
+                    break;
+                }
+            }
+        }
+        catch(ParseException e) {
+            log.append( describe( e ) );
+        }
+        catch(Exception e) {
+            log.append("EX ").append( e.getClass().getName() );
+        }
+        return log.toString();
+    }
+
+    /**
+     * Generate a random document.
+     */
+    private String generate(int depth) {
+        int kind = random.nextInt( depth > 3 ? 1 : 3 );
+        if( kind == 0 ) {
+            return ATOMS[random.nextInt( ATOMS.length )];
+        }
+        StringBuilder sb = new StringBuilder();
+        int count = random.nextInt( 4 );
+        if( kind == 1 ) {
+            sb.append('[');
+            for( int i = 0; i < count; i++ ) {
+                if( i > 0 ) {
+                    sb.append(',');
+                }
+                sb.append( generate( depth + 1 ) );
+            }
+            sb.append(']');
+        }
+        else {
+            sb.append('{');
+            for( int i = 0; i < count; i++ ) {
+                if( i > 0 ) {
+                    sb.append(", ");
+                }
+                sb.append("\"k").append( random.nextInt( 5 ) ).append("\" : ").append( generate( depth + 1 ) );
+            }
+            sb.append('}');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Mutate two out of three documents, by deleting or inserting a character, or truncating.
+     */
+    private String mutate(String s) {
+        if( s.length() == 0 || random.nextInt( 3 ) == 0 ) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder( s );
+        int position = random.nextInt( sb.length() );
+        switch( random.nextInt( 3 ) ) {
+        case 0:
+            sb.deleteCharAt( position );
+            break;
+        case 1:
+            sb.insert( position, JUNK.charAt( random.nextInt( JUNK.length() ) ) );
+            break;
+        default:
+            sb.setLength( position );
+        }
+        // Replace a surrogate pair which has been split, as its UTF-8 encoding can't be compared.
+        try {
+            return new String( sb.toString().getBytes("UTF-8"), "UTF-8");
+        }
+        catch(UnsupportedEncodingException e) {
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * A reader which returns a few characters from each read.
+     */
+    private class ChunkedReader extends StringReader {
+
+        ChunkedReader(String s) {
+            super( s );
+        }
+
+        @Override
+        public int read(char[] chars, int offset, int length) throws IOException {
+            return super.read( chars, offset, Math.min( length, 1 + random.nextInt( 3 ) ) );
+        }
+    }
+
+    /**
+     * An input stream which returns a few bytes from each read.
+     */
+    private class ChunkedInputStream extends ByteArrayInputStream {
+
+        ChunkedInputStream(byte[] bytes) {
+            super( bytes );
+        }
+
+        @Override
+        public synchronized int read(byte[] bytes, int offset, int length) {
+            return super.read( bytes, offset, Math.min( length, 1 + random.nextInt( 3 ) ) );
+        }
+    }
+}
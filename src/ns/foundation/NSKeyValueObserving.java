@@ -75,7 +75,9 @@ public interface NSKeyValueObserving extends NSKeyValueCodingAdditions {
         return;
       }
       
-      KeyValueObservingProxy.proxyForObject(targetObject).sendNotificationsForKey(key, null, false);
+      KeyValueObservingProxy proxy = KeyValueObservingProxy.existingProxyForObject(targetObject);
+      if (proxy != null)
+        proxy.sendNotificationsForKey(key, null, false);
     }
 
     public static void didChangeValuesAtIndexForKey(NSObservable targetObject, EnumSet<Changes> change, NSSet<Integer> indexes, String key) {
@@ -83,7 +85,9 @@ public interface NSKeyValueObserving extends NSKeyValueCodingAdditions {
         return;
       }
 
-      KeyValueObservingProxy.proxyForObject(targetObject).sendNotificationsForKey(key, null, false);
+      KeyValueObservingProxy proxy = KeyValueObservingProxy.existingProxyForObject(targetObject);
+      if (proxy != null)
+        proxy.sendNotificationsForKey(key, null, false);
     }
 
     public static NSSet<String> keyPathsForValuesAffectingValueForKey(NSObservable targetObject, String key) {
@@ -103,7 +107,9 @@ public interface NSKeyValueObserving extends NSKeyValueCodingAdditions {
         return;
       
       KeyValueChange changeOptions = new KeyValueChange(Changes.Setting);
-      KeyValueObservingProxy.proxyForObject(targetObject).sendNotificationsForKey(key, changeOptions, true);
+      KeyValueObservingProxy proxy = KeyValueObservingProxy.existingProxyForObject(targetObject);
+      if (proxy != null)
+        proxy.sendNotificationsForKey(key, changeOptions, true);
     }
 
     public static void willChangeValuesAtIndexForKey(final NSObservable targetObject, final EnumSet<Changes> change, final NSSet<Integer> indexes, final String key) {
@@ -111,7 +117,9 @@ public interface NSKeyValueObserving extends NSKeyValueCodingAdditions {
         return;
 
       KeyValueChange changeOptions = new KeyValueChange(change, indexes);
-      KeyValueObservingProxy.proxyForObject(targetObject).sendNotificationsForKey(key, changeOptions, true);
+      KeyValueObservingProxy proxy = KeyValueObservingProxy.existingProxyForObject(targetObject);
+      if (proxy != null)
+        proxy.sendNotificationsForKey(key, changeOptions, true);
     }
 
     public static void observeValueForKeyPath(NSObserver observer, String keyPath, NSObservable targetObject, KeyValueChange changes, Object context) {
@@ -221,15 +229,33 @@ public interface NSKeyValueObserving extends NSKeyValueCodingAdditions {
       Object cacheKey = (object instanceof KeyValueObservingProxyCacheAware)
               ? ((KeyValueObservingProxyCacheAware)object).getNSKVProxyCacheKey()
               : object;
-      KeyValueObservingProxy proxy = _proxyCache.objectForKey( cacheKey );
-      
-      if (proxy != null) {
+      synchronized (_proxyCache) {
+        KeyValueObservingProxy proxy = _proxyCache.objectForKey( cacheKey );
+        
+        if (proxy != null) {
+          return proxy;
+        }
+        
+        proxy = new KeyValueObservingProxy(object);
+        _proxyCache.setObjectForKey(proxy, cacheKey);
         return proxy;
       }
-      
-      proxy = new KeyValueObservingProxy(object);
-      _proxyCache.setObjectForKey(proxy, cacheKey);
-      return proxy;
+    }
+    
+    /**
+     * INFU addition.
+     * Find the proxy for an object without creating one. An object without a proxy has no
+     * observers, so change notifications for it can be skipped; this avoids creating and
+     * caching a proxy for every object which is changed, e.g. for every container built by
+     * the JSON parser, and lets objects without observers be changed on any thread.
+     */
+    static KeyValueObservingProxy existingProxyForObject(Object object) {
+      Object cacheKey = (object instanceof KeyValueObservingProxyCacheAware)
+              ? ((KeyValueObservingProxyCacheAware)object).getNSKVProxyCacheKey()
+              : object;
+      synchronized (_proxyCache) {
+        return _proxyCache.objectForKey( cacheKey );
+      }
     }
     
     private KeyValueObservingProxy(Object object) {
@@ -311,8 +337,11 @@ public interface NSKeyValueObserving extends NSKeyValueCodingAdditions {
             NSKeyValueCoding.DefaultImplementation._removeKVOAdditionsForKey(_targetObject, keyPath);
           }
       }
-      if (_observersForKey.isEmpty())
-        _proxyCache.removeObjectForKey(_targetObject);
+      if (_observersForKey.isEmpty()) {
+        synchronized (_proxyCache) {
+          _proxyCache.removeObjectForKey(_targetObject);
+        }
+      }
     }
     
     @SuppressWarnings("unchecked")